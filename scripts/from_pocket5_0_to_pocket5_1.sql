@@ -0,0 +1,6 @@
+USE pocket5;
+
+-- optimistic locking of synced rows
+ALTER TABLE `fields` ADD COLUMN `version` bigint(20) NOT NULL DEFAULT 0 AFTER `deleted`;
+ALTER TABLE `group_fields` ADD COLUMN `version` bigint(20) NOT NULL DEFAULT 0 AFTER `deleted`;
+ALTER TABLE `groups` ADD COLUMN `version` bigint(20) NOT NULL DEFAULT 0 AFTER `deleted`;
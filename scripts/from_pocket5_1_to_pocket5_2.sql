@@ -0,0 +1,38 @@
+USE pocket5;
+
+-- login sessions shared by the nodes (server.session-store: jdbc)
+CREATE TABLE IF NOT EXISTS `sessions` (
+  `uuid` varchar(256) NOT NULL,
+  `device_id` bigint(20) NOT NULL,
+  `secret` varchar(256) NOT NULL,
+  `timestamp_last_update` bigint(20) NOT NULL,
+  PRIMARY KEY (`uuid`),
+  KEY `sessions_timestamp_last_update` (`timestamp_last_update`)
+) ENGINE=InnoDB;
+
+-- device/user/property changes broadcast to the nodes (server.invalidation-bus: jdbc)
+CREATE TABLE IF NOT EXISTS `invalidations` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `origin` varchar(36) NOT NULL,
+  `topic` varchar(16) NOT NULL,
+  `item_key` varchar(256) NOT NULL,
+  `timestamp_creation` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `invalidations_timestamp_creation` (`timestamp_creation`)
+) ENGINE=InnoDB;
+
+-- keyset order of the paged getData
+CREATE INDEX IF NOT EXISTS `fields_user_timestamp` ON `fields` (`user_id`, `timestamp_last_update`, `id`);
+CREATE INDEX IF NOT EXISTS `group_fields_user_timestamp` ON `group_fields` (`user_id`, `timestamp_last_update`, `id`);
+CREATE INDEX IF NOT EXISTS `groups_user_timestamp` ON `groups` (`user_id`, `timestamp_last_update`, `id`);
+
+-- subtree walk of a group
+CREATE INDEX IF NOT EXISTS `groups_user_parent` ON `groups` (`user_id`, `group_id`);
+
+-- content fingerprint of the rows, unchanged rows sent by persist are not written again
+ALTER TABLE `fields` ADD COLUMN IF NOT EXISTS `content_hash` bigint(20) DEFAULT NULL;
+ALTER TABLE `group_fields` ADD COLUMN IF NOT EXISTS `content_hash` bigint(20) DEFAULT NULL;
+ALTER TABLE `groups` ADD COLUMN IF NOT EXISTS `content_hash` bigint(20) DEFAULT NULL;
+
+-- moved by every write of a user's vault, a read replica serves the user once its copy reached the primary one
+ALTER TABLE `users` ADD COLUMN IF NOT EXISTS `sync_version` bigint(20) NOT NULL DEFAULT 0;
@@ -32,16 +32,19 @@ CREATE TABLE `fields` (
   `id` bigint(20) NOT NULL AUTO_INCREMENT,
   `timestamp_last_update` bigint(20) DEFAULT NULL,
   `deleted` bit(1) NOT NULL,
+  `version` bigint(20) NOT NULL DEFAULT 0,
   `group_field_id` bigint(20) NOT NULL,
   `is_hidden` bit(1) NOT NULL,
   `title` varchar(256) NOT NULL,
   `value` varchar(2048) NOT NULL,
   `group_id` bigint(20) DEFAULT NULL,
   `user_id` bigint(20) DEFAULT NULL,
+  `content_hash` bigint(20) DEFAULT NULL,
   `timestamp_creation` bigint(20) DEFAULT NULL,
   PRIMARY KEY (`id`),
   KEY `FKp0x6ck9vn979mwcmcrwg9p8vl` (`group_id`),
   KEY `FKevkcgfm2ljrikj9ffqgd29d6j` (`user_id`),
+  KEY `fields_user_timestamp` (`user_id`,`timestamp_last_update`,`id`),
   CONSTRAINT `FKevkcgfm2ljrikj9ffqgd29d6j` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`),
   CONSTRAINT `FKp0x6ck9vn979mwcmcrwg9p8vl` FOREIGN KEY (`group_id`) REFERENCES `groups` (`id`)
 ) ENGINE=InnoDB;
@@ -51,15 +54,18 @@ CREATE TABLE `fields` (
 CREATE TABLE `group_fields` (
   `id` bigint(20) NOT NULL AUTO_INCREMENT,
   `deleted` bit(1) NOT NULL,
+  `version` bigint(20) NOT NULL DEFAULT 0,
   `is_hidden` bit(1) NOT NULL,
   `title` varchar(256) NOT NULL,
   `group_id` bigint(20) DEFAULT NULL,
   `user_id` bigint(20) DEFAULT NULL,
   `timestamp_last_update` bigint(20) DEFAULT NULL,
+  `content_hash` bigint(20) DEFAULT NULL,
   `timestamp_creation` bigint(20) DEFAULT NULL,
   PRIMARY KEY (`id`),
   KEY `FK5cx8julu52s6rr8rgj58cfnwl` (`group_id`),
   KEY `FKn0m9p9hbw2jgsh7agcxxc2cl6` (`user_id`),
+  KEY `group_fields_user_timestamp` (`user_id`,`timestamp_last_update`,`id`),
   CONSTRAINT `FK5cx8julu52s6rr8rgj58cfnwl` FOREIGN KEY (`group_id`) REFERENCES `groups` (`id`),
   CONSTRAINT `FKn0m9p9hbw2jgsh7agcxxc2cl6` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`)
 ) ENGINE=InnoDB;
@@ -69,16 +75,20 @@ CREATE TABLE `group_fields` (
 CREATE TABLE `groups` (
   `id` bigint(20) NOT NULL AUTO_INCREMENT,
   `deleted` bit(1) NOT NULL,
+  `version` bigint(20) NOT NULL DEFAULT 0,
   `icon` varchar(256) NOT NULL,
   `note` varchar(255) DEFAULT NULL,
   `title` varchar(256) NOT NULL,
   `group_id` bigint(20) DEFAULT NULL,
   `user_id` bigint(20) DEFAULT NULL,
   `timestamp_last_update` bigint(20) DEFAULT NULL,
+  `content_hash` bigint(20) DEFAULT NULL,
   `timestamp_creation` bigint(20) DEFAULT NULL,
   PRIMARY KEY (`id`),
   KEY `FKeck94qxgkh97vnh6qcow1tvy` (`group_id`),
   KEY `FK4cygfv5el2o2v3hbkdkscfw5q` (`user_id`),
+  KEY `groups_user_timestamp` (`user_id`,`timestamp_last_update`,`id`),
+  KEY `groups_user_parent` (`user_id`,`group_id`),
   CONSTRAINT `FK4cygfv5el2o2v3hbkdkscfw5q` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`),
   CONSTRAINT `FKeck94qxgkh97vnh6qcow1tvy` FOREIGN KEY (`group_id`) REFERENCES `groups` (`id`)
 ) ENGINE=InnoDB;
@@ -96,6 +106,29 @@ CREATE TABLE `properties` (
   CONSTRAINT `FKjqrdpu6sewqivtihk05mcve52` FOREIGN KEY (`user_id`) REFERENCES `users` (`id`)
 ) ENGINE=InnoDB;
 
+-- pocket5.invalidations definition, device/user/property changes broadcast to the nodes (server.invalidation-bus: jdbc)
+
+CREATE TABLE `invalidations` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `origin` varchar(36) NOT NULL,
+  `topic` varchar(16) NOT NULL,
+  `item_key` varchar(256) NOT NULL,
+  `timestamp_creation` bigint(20) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `invalidations_timestamp_creation` (`timestamp_creation`)
+) ENGINE=InnoDB;
+
+-- pocket5.sessions definition, login sessions shared by the nodes (server.session-store: jdbc)
+
+CREATE TABLE `sessions` (
+  `uuid` varchar(256) NOT NULL,
+  `device_id` bigint(20) NOT NULL,
+  `secret` varchar(256) NOT NULL,
+  `timestamp_last_update` bigint(20) NOT NULL,
+  PRIMARY KEY (`uuid`),
+  KEY `sessions_timestamp_last_update` (`timestamp_last_update`)
+) ENGINE=InnoDB;
+
 -- pocket5.users definition
 
 CREATE TABLE `users` (
@@ -105,6 +138,7 @@ CREATE TABLE `users` (
   `passwd` varchar(256) NOT NULL,
   `status` tinyint(4) NOT NULL,
   `timestamp_creation` bigint(20) DEFAULT NULL,
+  `sync_version` bigint(20) NOT NULL DEFAULT 0,
   PRIMARY KEY (`id`),
   UNIQUE KEY `UK_6dotkott2kjsp8vw4d0m25fb7` (`email`)
 ) ENGINE=InnoDB;
@@ -0,0 +1,80 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.benchmarks;
+
+import it.salsi.pocket.security.ApiPath;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Request path validation, {@link ApiPath} against the split and regex check it replaced
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApiPathBenchmark {
+
+    private static final Pattern UUID_PATTERN = Pattern.compile(
+            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
+
+    private static final Pattern CRYPT_PATTERN = Pattern.compile(
+            "^[A-Za-z0-9_-]{10,2048}={0,2}$");
+
+    private static final String UUID = "12345678-1234-1234-1234-123456789abc";
+
+    /**
+     * A 2048 bit RSA token is 342 chars of URL safe base64 plus padding
+     */
+    private static final String CRYPT = "aB3_-".repeat(68) + "xy==";
+
+    @Param({"valid", "badUuid", "badCrypt", "longCrypt"})
+    public String input;
+
+    private String path;
+
+    @Setup
+    public void setup() {
+        path = switch (input) {
+            case "valid" -> "/api/v5/" + UUID + "/" + CRYPT;
+            case "badUuid" -> "/api/v5/" + UUID.replace('a', 'z') + "/" + CRYPT;
+            case "badCrypt" -> "/api/v5/" + UUID + "/" + CRYPT.replace('x', '$');
+            case "longCrypt" -> "/api/v5/" + UUID + "/" + "A".repeat(5000);
+            default -> throw new IllegalArgumentException(input);
+        };
+    }
+
+    @Benchmark
+    public ApiPath.Result apiPath() {
+        return ApiPath.validate(path);
+    }
+
+    @Benchmark
+    public boolean splitAndRegex() {
+        final var parts = path.split("/");
+        return parts.length >= 5
+                && UUID_PATTERN.matcher(parts[3]).matches()
+                && parts[4].length() <= 2048
+                && CRYPT_PATTERN.matcher(parts[4]).matches();
+    }
+}
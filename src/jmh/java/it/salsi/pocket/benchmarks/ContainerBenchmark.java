@@ -0,0 +1,145 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.benchmarks;
+
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.models.GroupField;
+import lombok.extern.java.Log;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link Container} encoding at several vault sizes, the count is the number of fields; the payload sizes
+ * are logged once per trial, gzip being what {@code server.compression} sends on the wire
+ */
+@Log
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ContainerBenchmark {
+
+    @Param({"100", "5000", "50000"})
+    public int fields;
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final CBORMapper cborMapper = CBORMapper.builder().build();
+
+    private Container container;
+    private byte[] json;
+    private byte[] cbor;
+
+    @Setup
+    public void setup() throws IOException {
+        container = vault(fields);
+        json = jsonMapper.writeValueAsBytes(container);
+        cbor = cborMapper.writeValueAsBytes(container);
+        log.info("Container of " + fields + " fields, bytes json:" + json.length + " json gzip:" + gzip(json).length
+                + " cbor:" + cbor.length + " cbor gzip:" + gzip(cbor).length);
+    }
+
+    @Benchmark
+    public byte[] jsonWrite() {
+        return jsonMapper.writeValueAsBytes(container);
+    }
+
+    @Benchmark
+    public byte[] jsonGzipWrite() throws IOException {
+        return gzip(jsonMapper.writeValueAsBytes(container));
+    }
+
+    @Benchmark
+    public byte[] cborWrite() {
+        return cborMapper.writeValueAsBytes(container);
+    }
+
+    @Benchmark
+    public byte[] cborGzipWrite() throws IOException {
+        return gzip(cborMapper.writeValueAsBytes(container));
+    }
+
+    @Benchmark
+    public Container jsonRead() {
+        return jsonMapper.readValue(json, Container.class);
+    }
+
+    @Benchmark
+    public Container cborRead() {
+        return cborMapper.readValue(cbor, Container.class);
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final var ret = new ByteArrayOutputStream(data.length / 4);
+        try (final var out = new GZIPOutputStream(ret)) {
+            out.write(data);
+        }
+        return ret.toByteArray();
+    }
+
+    /**
+     * A vault shaped like a real one: one group every 20 fields, one group field every 5
+     */
+    static Container vault(final int size) {
+        final var groups = new ArrayList<Group>(size / 20 + 1);
+        final var groupFields = new ArrayList<GroupField>(size / 5 + 1);
+        final var fields = new ArrayList<Field>(size);
+        for (int i = 0; i < size; i++) {
+            final long id = i + 1;
+            if (i % 20 == 0) {
+                final var group = new Group();
+                group.setId(id);
+                group.setServerId(id);
+                group.setTitle("group " + i);
+                group.setIcon("icon");
+                group.setTimestampLastUpdate(1700000000L + i);
+                groups.add(group);
+            }
+            if (i % 5 == 0) {
+                final var groupField = new GroupField();
+                groupField.setId(id);
+                groupField.setServerId(id);
+                groupField.setGroupId(groups.getLast().getId());
+                groupField.setTitle("label " + i);
+                groupField.setTimestampLastUpdate(1700000000L + i);
+                groupFields.add(groupField);
+            }
+            final var field = new Field();
+            field.setId(id);
+            field.setServerId(id);
+            field.setGroupId(groups.getLast().getId());
+            field.setGroupFieldId(groupFields.getLast().getId());
+            field.setTitle("label " + i);
+            field.setValue("U2FsdGVkX1+encrypted/value/" + i);
+            field.setTimestampLastUpdate(1700000000L + i);
+            fields.add(field);
+        }
+        return new Container(1700000000L, null, null, groups, groupFields, fields);
+    }
+}
@@ -0,0 +1,94 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.benchmarks;
+
+import it.salsi.commons.CommonsException;
+import it.salsi.commons.utils.Crypto;
+import it.salsi.pocket.security.EncoderHelper;
+import it.salsi.pocket.security.RSAHelper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+
+/**
+ * Per request crypto: token decrypt, password hashing and field value AES
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SecurityBenchmark {
+
+    private static final String PASSWD = "benchmark_password";
+    private static final String VALUE = "a field value of a typical length";
+
+    private RSAHelper rsaHelper;
+    private String token;
+    private EncoderHelper encoderHelper;
+    private Crypto crypto;
+    private byte[] encrypted;
+
+    @Setup
+    public void setup() throws CommonsException {
+        rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+        token = Base64.getEncoder()
+                .encodeToString(rsaHelper.encrypt("1|secret|1700000000|user@pocket.local|passwd".getBytes(StandardCharsets.UTF_8)))
+                .replace('+', '-')
+                .replace('/', '_');
+
+        encoderHelper = new EncoderHelper();
+        ReflectionTestUtils.setField(encoderHelper, "aesCrbIv", "1234567890123456");
+        crypto = encoderHelper.getCrypto(PASSWD);
+        encrypted = crypto.encrypt(VALUE);
+    }
+
+    @Benchmark
+    public String rsaDecrypt() throws CommonsException {
+        return rsaHelper.decryptFromURLBase64(token);
+    }
+
+    @Benchmark
+    public String encode() {
+        return encoderHelper.encode(PASSWD);
+    }
+
+    @Benchmark
+    public Crypto getCrypto() throws CommonsException {
+        return encoderHelper.getCrypto(PASSWD);
+    }
+
+    @Benchmark
+    public byte[] aesEncrypt() throws CommonsException {
+        return crypto.encrypt(VALUE);
+    }
+
+    @Benchmark
+    public byte[] aesDecrypt() throws CommonsException {
+        return crypto.decrypt(encrypted);
+    }
+}
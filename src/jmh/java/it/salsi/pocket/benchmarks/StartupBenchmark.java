@@ -0,0 +1,96 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.benchmarks;
+
+import it.salsi.pocket.client.PocketApiClient;
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.EncoderHelper;
+import it.salsi.pocket.security.RSAHelper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+
+/**
+ * Cold start to the first successful {@code getData} over HTTP: context refresh, startup tasks, provisioning
+ * of one device and the request itself. Every fork is a fresh JVM measured once, raise {@code -f} for more samples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(3)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+public class StartupBenchmark {
+
+    private static final String PASSWD = "passwd";
+
+    private RSAHelper rsaHelper;
+    private ConfigurableApplicationContext context;
+
+    @Setup(Level.Iteration)
+    public void setup() throws Exception {
+        rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Benchmark
+    public int firstGetData() throws Exception {
+        context = EmbeddedH2.start("startup", "server.port=0");
+
+        final var user = context.getBean(UserRepository.class)
+                .save(new User("startup", "startup@pocket.local", context.getBean(EncoderHelper.class).encode(PASSWD)));
+        var device = new Device(user);
+        device.setUuid(UUID.randomUUID().toString());
+        device.setPublicKey(rsaHelper.getPublicKeyString());
+        device.setPrivateKey(rsaHelper.getPrivateKeyString());
+        device = context.getBean(DeviceRepository.class).save(device);
+
+        final var plain = device.getId() + "|secret|0|" + user.getEmail() + "|" + PASSWD;
+        final var crypt = Base64.getEncoder()
+                .encodeToString(rsaHelper.encrypt(plain.getBytes(StandardCharsets.UTF_8)))
+                .replace('+', '-')
+                .replace('/', '_');
+
+        final var client = new PocketApiClient("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+        final var response = client.getData(device.getUuid(), crypt);
+        if (!response.isSuccess()) {
+            throw new IllegalStateException("getData failed: " + response);
+        }
+        return response.getStatusCode();
+    }
+}
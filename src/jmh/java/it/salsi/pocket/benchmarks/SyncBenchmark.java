@@ -0,0 +1,150 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.benchmarks;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.controllers.GroupController;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BaseController.store}, {@code delete} and {@code getAll} against the embedded H2, through
+ * {@link GroupController}. Stores and deletes run in a rolled back transaction so every invocation sees
+ * the same table. Run with {@code -prof gc} for the allocations per call:
+ * {@code mvn -P benchmarks -DskipTests verify -Djmh.args="SyncBenchmark -prof gc"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SyncBenchmark {
+
+    private static final long NOW = 1700000000L;
+
+    @Param({"100", "1000"})
+    public int elements;
+
+    private ConfigurableApplicationContext context;
+    private GroupController groupController;
+    private TransactionTemplate transactionTemplate;
+    private String uuid;
+    private List<Long> serverIds;
+
+    @Setup
+    public void setup() {
+        context = EmbeddedH2.start("sync" + elements);
+        groupController = context.getBean(GroupController.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        final var user = new User("benchmark", "benchmark@pocket.local", "passwd");
+        user.setStatus(User.Status.ACTIVE);
+        final var device = new Device(context.getBean(UserRepository.class).save(user));
+        device.setPublicKey("");
+        device.setPrivateKey("");
+        uuid = context.getBean(DeviceRepository.class).save(device).getUuid();
+
+        final var stored = new ArrayList<Group>(elements);
+        transactionTemplate.executeWithoutResult(status -> store(groups(), stored));
+        serverIds = stored.stream().map(Group::getServerId).toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int store() {
+        final var ret = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            final var groups = groups();
+            return store(groups, new ArrayList<>(groups.size()));
+        });
+        return ret == null ? 0 : ret;
+    }
+
+    @Benchmark
+    public int delete() {
+        final var ret = transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            final var groups = deleted();
+            try {
+                return groupController.delete(uuid, NOW, groups, new ArrayList<>(groups.size()));
+            } finally {
+                groupController.clean();
+            }
+        });
+        return ret == null ? 0 : ret;
+    }
+
+    @Benchmark
+    public List<Group> getAll() {
+        return groupController.getAll(uuid, 0L);
+    }
+
+    private int store(final List<Group> groups, final ArrayList<Group> ret) {
+        try {
+            return groupController.store(uuid, NOW, groups, ret);
+        } finally {
+            groupController.clean();
+        }
+    }
+
+    private List<Group> groups() {
+        final var ret = new ArrayList<Group>(elements);
+        for (int i = 0; i < elements; i++) {
+            final var group = new Group();
+            group.setId(i + 1L);
+            group.setTitle("group " + i);
+            group.setIcon("icon");
+            ret.add(group);
+        }
+        return ret;
+    }
+
+    /**
+     * The stored groups flagged as deleted, as a client sends them
+     */
+    private List<Group> deleted() {
+        final var ret = new ArrayList<Group>(serverIds.size());
+        for (int i = 0; i < serverIds.size(); i++) {
+            final var group = new Group();
+            group.setId(i + 1L);
+            group.setServerId(serverIds.get(i));
+            group.setTitle("group " + i);
+            group.setIcon("icon");
+            group.setDeleted(true);
+            ret.add(group);
+        }
+        return ret;
+    }
+}
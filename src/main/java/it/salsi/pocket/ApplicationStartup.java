@@ -21,16 +21,27 @@
 package it.salsi.pocket;
 
 import it.salsi.commons.CommonsException;
+import it.salsi.pocket.core.StartupGraph;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.security.RSAHelper;
 import it.salsi.pocket.services.*;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import tools.jackson.databind.json.JsonMapper;
+
+import javax.crypto.Cipher;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.util.List;
+import java.util.logging.Level;
 
 
 @Log
@@ -38,27 +49,34 @@ import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandl
 public record ApplicationStartup(@NotNull DatabaseManager databaseManager,
                                  @NotNull PropertiesManager propertiesManager,
                                  @NotNull UserManager userManager,
-                                 @NotNull IpcSocketManager ipcSocketManager) implements ApplicationListener<ApplicationReadyEvent> {
+                                 @NotNull IpcSocketManager ipcSocketManager,
+                                 @NotNull JsonMapper jsonMapper) implements ApplicationListener<ApplicationReadyEvent> {
 
     public ApplicationStartup(@Autowired @NotNull final DatabaseManager databaseManager,
                               @Autowired @NotNull final PropertiesManager propertiesManager,
                               @Autowired @NotNull final UserManager userManager,
-                              @Autowired @NotNull final IpcSocketManager ipcSocketManager
+                              @Autowired @NotNull final IpcSocketManager ipcSocketManager,
+                              @Autowired @NotNull final JsonMapper jsonMapper
     ) {
         this.databaseManager = databaseManager;
         this.propertiesManager = propertiesManager;
         this.userManager = userManager;
         this.ipcSocketManager = ipcSocketManager;
+        this.jsonMapper = jsonMapper;
     }
 
 
     @Override
     public void onApplicationEvent(@NotNull final ApplicationReadyEvent applicationReadyEvent) {
         try {
-            userManager.checkAll();
-            databaseManager.init();
-            propertiesManager.checkAll();
-            ipcSocketManager.start();
+            // the database version is read before checkAll stores the mandatory defaults
+            new StartupGraph()
+                    .add("users", userManager::checkAll)
+                    .add("database", databaseManager::init, "users")
+                    .add("properties", propertiesManager::checkAll, "database")
+                    .add("ipc", ipcSocketManager::start)
+                    .add("warmup", this::warmUp)
+                    .run();
         } catch (CommonsException e) {
             log.warning(e.getLocalizedMessage());
         }
@@ -66,11 +84,32 @@ public record ApplicationStartup(@NotNull DatabaseManager databaseManager,
 
     @EventListener
     public void handleContextRefresh(final @NotNull ContextRefreshedEvent event) {
+        if (!log.isLoggable(Level.FINE)) {
+            return;
+        }
         final var applicationContext = event.getApplicationContext();
         final var requestMappingHandlerMapping = applicationContext
                 .getBean("requestMappingHandlerMapping", RequestMappingHandlerMapping.class);
         final var map = requestMappingHandlerMapping
                 .getHandlerMethods();
-        map.forEach((key, value) -> log.info(key + " "+ value));
+        map.forEach((key, value) -> log.fine(key + " "+ value));
+    }
+
+    /**
+     * Loads the JCA providers and the {@link Container} serializer the first getData needs
+     */
+    private void warmUp() throws CommonsException {
+        try {
+            Cipher.getInstance(RSAHelper.CIPHER_TRANSFORMATION);
+            KeyFactory.getInstance(RSAHelper.ALGORITHM);
+        } catch (final GeneralSecurityException e) {
+            throw new CommonsException(e);
+        }
+        jsonMapper.writeValueAsString(new Container(0L, null, null, List.of(), List.of(), List.of()));
+    }
+
+    @EventListener
+    public void handleContextClosed(final @NotNull ContextClosedEvent event) {
+        ipcSocketManager.stop();
     }
 }
@@ -24,10 +24,15 @@ import it.salsi.commons.CommonsException;
 import it.salsi.pocket.security.EncoderHelper;
 import it.salsi.pocket.security.RSAHelper;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.http.converter.autoconfigure.ServerHttpMessageConvertersCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.http.converter.cbor.JacksonCborHttpMessageConverter;
+import tools.jackson.dataformat.cbor.CBORMapper;
 
 @Configuration
+@ImportRuntimeHints(NativeHints.class)
 public class Config {
 
     @NotNull
@@ -42,4 +47,20 @@ public class Config {
         return new RSAHelper(RSAHelper.ALGORITHM, RSAHelper.KEY_SIZE);
     }
 
+    /**
+     * Compact binary encoding of {@link it.salsi.pocket.models.Container}, selected by the client with
+     * {@code Accept: application/cbor} (or {@code Content-Type} on upload); JSON remains the default
+     */
+    @NotNull
+    @Bean
+    public CBORMapper cborMapper() {
+        return CBORMapper.builder().build();
+    }
+
+    @NotNull
+    @Bean
+    public ServerHttpMessageConvertersCustomizer cborConvertersCustomizer(@NotNull final CBORMapper cborMapper) {
+        return builder -> builder.withCborConverter(new JacksonCborHttpMessageConverter(cborMapper));
+    }
+
 }
@@ -21,8 +21,11 @@
 package it.salsi.pocket.configs;
 
 
+import it.salsi.commons.CommonsException;
+import it.salsi.pocket.security.RateLimiter;
 import it.salsi.pocket.services.CacheManager;
-//import it.salsi.pocket.services.DatabaseManager;
+import it.salsi.pocket.services.DatabaseManager;
+import it.salsi.pocket.services.InvalidationBus;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -38,28 +41,44 @@ import org.springframework.scheduling.annotation.Scheduled;
 @EnableScheduling
 public class CronConfig {
 
-    //@NotNull
-    //private final DatabaseManager databaseManager;
+    @NotNull
+    private final DatabaseManager databaseManager;
 
     @NotNull
     private final CacheManager cacheManager;
 
+    @NotNull
+    private final RateLimiter rateLimiter;
+
+    @NotNull
+    private final InvalidationBus invalidationBus;
+
     public CronConfig(
-            //@Autowired @NotNull final DatabaseManager databaseManager,
-            @Autowired @NotNull final CacheManager cacheManager
+            @Autowired @NotNull final DatabaseManager databaseManager,
+            @Autowired @NotNull final CacheManager cacheManager,
+            @Autowired @NotNull final RateLimiter rateLimiter,
+            @Autowired @NotNull final InvalidationBus invalidationBus
     ) {
-        //this.databaseManager = databaseManager;
+        this.databaseManager = databaseManager;
         this.cacheManager = cacheManager;
+        this.rateLimiter = rateLimiter;
+        this.invalidationBus = invalidationBus;
     }
 
 
     @Scheduled(cron = "${server.services-cron}")
     final public void servicesCron() {
-//        try {
-//            databaseManager.cleanOldData();
-//        } catch (CommonsException e) {
-//            log.severe(e.getMessage());
-//        }
         cacheManager.invalidate();
+        rateLimiter.evictIdle();
+        invalidationBus.purge();
+    }
+
+    @Scheduled(cron = "${server.clean-data.cron:0 30 3 * * ?}")
+    final public void cleanDataCron() {
+        try {
+            databaseManager.cleanOldData();
+        } catch (CommonsException e) {
+            log.severe(e.getMessage());
+        }
     }
 }
@@ -36,6 +36,7 @@ import org.springframework.web.context.request.WebRequest;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.stream.Collectors;
 
 @Log
@@ -159,6 +160,26 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
     }
 
+    /**
+     * Work queue of the reactive sync scheduler is full
+     */
+    @ExceptionHandler(RejectedExecutionException.class)
+    public @NotNull ResponseEntity<Map<String, Object>> handleRejectedExecutionException(
+            @NotNull final RejectedExecutionException ex,
+            @NotNull final WebRequest request) {
+        log.warning("Rejected execution: " + ex.getMessage());
+
+        final var errorResponse = new HashMap<String, Object>();
+        errorResponse.put("timestamp", Instant.now().toString());
+        errorResponse.put("status", HttpStatus.SERVICE_UNAVAILABLE.value());
+        errorResponse.put("error", "Service Unavailable");
+        errorResponse.put("message", "Server busy, retry later");
+        errorResponse.put("path", request.getDescription(false).replace("uri=", ""));
+
+        log.warning("Returning error response: " + HttpStatus.SERVICE_UNAVAILABLE + " - RejectedExecutionException");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(errorResponse);
+    }
+
     @ExceptionHandler(Exception.class)
     public @NotNull ResponseEntity<Map<String, Object>> handleGenericException(
             @NotNull final Exception ex,
@@ -0,0 +1,69 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import it.salsi.commons.CommonsException;
+import it.salsi.commons.messages.Success;
+import it.salsi.pocket.models.*;
+import it.salsi.pocket.services.ChangeNotifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * What a GraalVM native image cannot find by static analysis: types Jackson binds by reflection behind
+ * {@code ResponseEntity<?>}, in server sent events or on the IPC socket, and the resources loaded by name.
+ * <p>
+ * Hibernate entities are already covered by the Spring Data JPA AOT processing; they are listed here as
+ * well because {@link Container} exposes them to Jackson. Cipher, key factory and digest lookups in
+ * {@code it.salsi.commons.utils.Crypto} and {@code security} go through JCA, which the image builder
+ * registers on its own.
+ */
+public final class NativeHints implements RuntimeHintsRegistrar {
+
+    static final Class<?>[] BINDINGS = {
+            Container.class, Group.class, GroupField.class, Field.class,
+            Device.class, User.class, Property.class, Success.class, ChangeNotifier.ChangeEvent.class
+    };
+
+    static final String DEVICE_EXTENDED = "it.salsi.pocket.services.IpcSocketManagerImpl$DeviceExtended";
+
+    static final String[] RESOURCES = {"banner.txt", "logback-spring.xml"};
+
+    @Override
+    public void registerHints(@NotNull final RuntimeHints hints, @Nullable final ClassLoader classLoader) {
+        new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(), BINDINGS);
+
+        hints.reflection()
+                .registerType(TypeReference.of(DEVICE_EXTENDED),
+                        MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                        MemberCategory.ACCESS_DECLARED_FIELDS,
+                        MemberCategory.INVOKE_PUBLIC_METHODS)
+                .registerType(CommonsException.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+
+        for (final var resource : RESOURCES) {
+            hints.resources().registerPattern(resource);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Scheduler of the {@code /rx/} endpoints: RSA decrypt, password hash and JPA calls are blocking, they run
+ * on a bounded pool so a burst queues up (and past {@code server.rx.queue-size} is refused with 503)
+ * instead of taking every request thread
+ */
+@Log
+@Configuration
+public class ReactiveConfig {
+
+    public static final String SYNC_SCHEDULER = "syncScheduler";
+
+    @NotNull
+    @Bean(name = SYNC_SCHEDULER, destroyMethod = "dispose")
+    public Scheduler syncScheduler(@Value("${server.rx.threads:0}") final int threads,
+                                   @Value("${server.rx.queue-size:10000}") final int queueSize) {
+        final var size = threads > 0 ? threads : Schedulers.DEFAULT_BOUNDED_ELASTIC_SIZE;
+        log.info(() -> "Reactive sync scheduler threads:" + size + " queue:" + queueSize);
+        return Schedulers.newBoundedElastic(size, queueSize, "pocket-rx");
+    }
+}
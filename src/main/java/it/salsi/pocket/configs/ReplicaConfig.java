@@ -0,0 +1,74 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.jdbc.autoconfigure.DataSourceProperties;
+import org.springframework.context.annotation.*;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+
+/**
+ * Replaces the auto-configured {@link DataSource} with a {@link ReplicaRoutingDataSource} when
+ * {@code server.replica.urls} lists at least one replica
+ */
+@Log
+@Configuration
+@Conditional(ReplicaConfig.OnReplicas.class)
+public class ReplicaConfig {
+
+    /**
+     * Urls are not quoted into an expression, they may contain quotes themselves
+     */
+    static final class OnReplicas implements Condition {
+        @Override
+        public boolean matches(@NotNull final ConditionContext context, @NotNull final AnnotatedTypeMetadata metadata) {
+            return StringUtils.hasText(context.getEnvironment().getProperty("server.replica.urls"));
+        }
+    }
+
+    @NotNull
+    @Bean
+    @Primary
+    public ReplicaRoutingDataSource dataSource(@NotNull final DataSourceProperties properties,
+                                               @Value("${server.replica.urls}") @NotNull final String urls,
+                                               @Value("${server.replica.username:}") @NotNull final String username,
+                                               @Value("${server.replica.password:}") @NotNull final String password) {
+        final var primary = properties.initializeDataSourceBuilder().build();
+        final var replicas = Arrays.stream(urls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> (DataSource) DataSourceBuilder.create()
+                        .driverClassName(properties.determineDriverClassName())
+                        .url(url)
+                        .username(username)
+                        .password(password)
+                        .build())
+                .toList();
+        log.info("Read replicas: " + replicas.size());
+        return new ReplicaRoutingDataSource(primary, replicas);
+    }
+}
@@ -0,0 +1,76 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Primary database plus read only replicas, connections come from the primary unless taken inside
+ * {@link #on(int, Supplier)}.
+ * <p>
+ * Routing is decided when a connection is acquired: repository calls made inside {@code on} open their own
+ * transaction and go to the replica, a transaction already running on the thread keeps its primary connection.
+ */
+public final class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final ThreadLocal<Integer> REPLICA = new ThreadLocal<>();
+
+    @Getter
+    @NotNull
+    private final List<DataSource> replicas;
+
+    public ReplicaRoutingDataSource(@NotNull final DataSource primary, @NotNull final List<DataSource> replicas) {
+        this.replicas = List.copyOf(replicas);
+        final var targets = new HashMap<Object, Object>();
+        for (int i = 0; i < this.replicas.size(); i++) {
+            targets.put(i, this.replicas.get(i));
+        }
+        setDefaultTargetDataSource(primary);
+        setTargetDataSources(targets);
+        setLenientFallback(false);
+        initialize();
+    }
+
+    /**
+     * Run {@code query} with the connections of replica {@code index}
+     */
+    public <T> T on(final int index, @NotNull final Supplier<T> query) {
+        final var previous = REPLICA.get();
+        REPLICA.set(index);
+        try {
+            return query.get();
+        } finally {
+            REPLICA.set(previous);
+        }
+    }
+
+    @Override
+    protected @Nullable Object determineCurrentLookupKey() {
+        return REPLICA.get();
+    }
+}
@@ -19,7 +19,10 @@
 
 package it.salsi.pocket.configs;
 
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.core.SyncCursor;
 import it.salsi.pocket.security.AuthFilter;
+import it.salsi.pocket.services.IdempotencyStore;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
@@ -181,11 +184,13 @@ public class SecurityConfig {
                     "Accept",
                     "Origin",
                     "Access-Control-Request-Method",
-                    "Access-Control-Request-Headers"));
+                    "Access-Control-Request-Headers",
+                    IdempotencyStore.HEADER));
 
             configuration.setAllowCredentials(true);
 
-            configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Total-Count"));
+            configuration.setExposedHeaders(Arrays.asList("Authorization", "Content-Type", "X-Total-Count",
+                    SyncCursor.HEADER, SessionController.REPLAYED_HEADER));
         } else {
             configuration.addAllowedOriginPattern("*");
             configuration.addAllowedMethod("*");
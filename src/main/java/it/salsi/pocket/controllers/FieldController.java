@@ -37,6 +37,7 @@ import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Setter
 @Log
@@ -44,10 +45,10 @@ import java.util.Optional;
 public final class FieldController extends BaseController<Field, FieldRepository> {
 
     @Nullable
-    private Map<Long, Long> groupMapId = null;
+    private Supplier<Map<Long, Long>> groupMapId = null;
 
     @Nullable
-    private Map<Long, Long> groupFieldMapId = null;
+    private Supplier<Map<Long, Long>> groupFieldMapId = null;
 
     private @NotNull final FieldRepository repository;
     private @NotNull final DeviceRepository deviceRepository;
@@ -65,8 +66,9 @@ public final class FieldController extends BaseController<Field, FieldRepository
 
         setOnStore((@NotNull final var field) -> {
 
-            if(groupMapId != null && field.getServerGroupId() == 0 && groupMapId.containsKey(field.getGroupId())) {
-                field.setServerGroupId(groupMapId.get(field.getGroupId()));
+            final var groupMap = groupMapId != null ? groupMapId.get() : null;
+            if(groupMap != null && field.getServerGroupId() == 0 && groupMap.containsKey(field.getGroupId())) {
+                field.setServerGroupId(groupMap.get(field.getGroupId()));
             }
 
             var tmp = field.getGroupId();
@@ -87,8 +89,9 @@ public final class FieldController extends BaseController<Field, FieldRepository
                 );
             });
 
-            if(groupFieldMapId != null && field.getServerGroupFieldId() == 0 && groupFieldMapId.containsKey(field.getGroupFieldId())) {
-                field.setServerGroupFieldId(groupFieldMapId.get(field.getGroupFieldId()));
+            final var groupFieldMap = groupFieldMapId != null ? groupFieldMapId.get() : null;
+            if(groupFieldMap != null && field.getServerGroupFieldId() == 0 && groupFieldMap.containsKey(field.getGroupFieldId())) {
+                field.setServerGroupFieldId(groupFieldMap.get(field.getGroupFieldId()));
             }
 
             tmp = field.getGroupFieldId();
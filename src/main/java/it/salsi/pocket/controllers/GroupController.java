@@ -22,18 +22,23 @@ package it.salsi.pocket.controllers;
 import it.salsi.commons.CommonsException;
 import it.salsi.commons.utils.Crypto;
 import it.salsi.pocket.core.BaseController;
+import it.salsi.pocket.models.Device;
 import it.salsi.pocket.models.Group;
 import it.salsi.pocket.models.User;
 import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.FieldRepository;
+import it.salsi.pocket.repositories.GroupFieldRepository;
 import it.salsi.pocket.repositories.GroupRepository;
 import it.salsi.pocket.repositories.UserRepository;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -41,25 +46,51 @@ import java.util.Optional;
 @Service
 public final class GroupController extends BaseController<Group, GroupRepository> {
 
+    /**
+     * Client to server group id map of the persist running on the current thread
+     */
     @NotNull
-    private final Map<Long, Long> mapId = new HashMap<>();
+    private final ThreadLocal<Map<Long, Long>> mapId = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * Server ids of the groups deleted by the persist running on the current thread, waiting for {@link #cascade}
+     */
+    @NotNull
+    private final ThreadLocal<List<Long>> deletedRoots = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Levels walked by the delete cascade, far beyond any real folder tree, it only stops a cycle
+     */
+    private static final int CASCADE_DEPTH_MAX = 1000;
+
+    /**
+     * Group ids bound to one bulk update
+     */
+    private static final int CASCADE_CHUNK = 1000;
 
     private @NotNull final GroupRepository repository;
     private @NotNull final DeviceRepository deviceRepository;
+    private @NotNull final GroupFieldRepository groupFieldRepository;
+    private @NotNull final FieldRepository fieldRepository;
 
     public GroupController(
             @Autowired @NotNull final GroupRepository repository,
             @Autowired @NotNull final DeviceRepository deviceRepository,
-            @Autowired @NotNull final UserRepository userRepository
+            @Autowired @NotNull final UserRepository userRepository,
+            @Autowired @NotNull final GroupFieldRepository groupFieldRepository,
+            @Autowired @NotNull final FieldRepository fieldRepository
     ) {
         super(repository, deviceRepository, userRepository);
         this.repository = repository;
         this.deviceRepository = deviceRepository;
+        this.groupFieldRepository = groupFieldRepository;
+        this.fieldRepository = fieldRepository;
 
         setOnStore( (@NotNull final var group) -> {
 
-            if(group.getServerGroupId() == 0 && mapId.containsKey(group.getGroupId())) {
-                group.setServerGroupId(mapId.get(group.getGroupId()));
+            final var map = mapId.get();
+            if(group.getServerGroupId() == 0 && map.containsKey(group.getGroupId())) {
+                group.setServerGroupId(map.get(group.getGroupId()));
             }
 
             final var tmp = group.getGroupId();
@@ -85,25 +116,102 @@ public final class GroupController extends BaseController<Group, GroupRepository
 
     }
 
+    @Override
     public void clean() {
-        mapId.clear();
+        super.clean();
+        mapId.remove();
+        deletedRoots.remove();
     }
 
     @NotNull
     public Map<Long, Long> getMapId() {
-        return mapId;
+        return mapId.get();
     }
 
     public void add(long id, long serverId) {
-        if(!mapId.containsKey(id)) {
-            mapId.put(id, serverId);
-        }
+        mapId.get().putIfAbsent(id, serverId);
     }
 
     public void add(final @NotNull Group group) {
         add(group.getId(), group.getServerId());
     }
 
+    /**
+     * Live groups of the subtree rooted at {@code groupId} ({@code 0} for the top level), parents first,
+     * ids switched like {@link #getAll}
+     *
+     * @param depth levels below the root, {@code 0} for the root alone
+     */
+    @NotNull
+    public List<Group> getSubtree(@NotNull final String token, final long groupId, final int depth) {
+        final var device = deviceRepository.findByUuid(token);
+        if (device.isEmpty()
+                || device.get().getStatus() != Device.Status.ACTIVE
+                || device.get().getUser().getStatus() != User.Status.ACTIVE) {
+            return List.of();
+        }
+
+        final var ids = repository.findSubtree(device.get().getUser().getId(), groupId, depth);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        final var byId = new HashMap<Long, Group>(ids.size());
+        repository.findAllById(ids).forEach(group -> byId.put(group.getId(), group));
+
+        final var ret = new ArrayList<Group>(ids.size());
+        for (final var id : ids) {
+            Optional.ofNullable(byId.get(id)).ifPresent(ret::add);
+        }
+        ret.forEach(Group::switchId);
+        return ret;
+    }
+
+    /**
+     * Marks the groups flagged by the client, the rows below them are left to {@link #cascade}
+     */
+    @Override
+    public int delete(@NotNull final String uuid, @NotNull final Long now,
+            @Nullable final List<Group> elements, @NotNull final ArrayList<Group> ret, final boolean echoIds) {
+        final var size = ret.size();
+        final var count = super.delete(uuid, now, elements, ret, echoIds);
+        ret.subList(size, ret.size()).forEach(root -> deletedRoots.get().add(root.getServerId()));
+        return count;
+    }
+
+    /**
+     * Marks everything below the groups deleted by this persist: the subtree is read with one recursive query
+     * and its groups, group fields and fields are soft deleted by three bulk updates per {@link #CASCADE_CHUNK}
+     * groups, so the client only has to send the root of a deleted folder. Runs once every section of the
+     * upload is stored, rows moved out of the folder in the same sync are no longer below it.
+     * Rows marked by the cascade are not echoed, devices get them with their next getData.
+     *
+     * @return rows marked
+     */
+    public int cascade(@NotNull final String uuid, @NotNull final Long now) {
+        final var roots = deletedRoots.get();
+        if (roots.isEmpty()) {
+            return 0;
+        }
+        final var device = deviceRepository.findByUuid(uuid);
+        if (device.isEmpty()) {
+            return 0;
+        }
+
+        final var user = device.get().getUser();
+        final var ids = repository.findSubtreeIds(user.getId(), roots, CASCADE_DEPTH_MAX);
+        var marked = 0;
+        for (int i = 0; i < ids.size(); i += CASCADE_CHUNK) {
+            final var chunk = ids.subList(i, Math.min(ids.size(), i + CASCADE_CHUNK));
+            marked += repository.softDeleteByGroups(user, chunk, now);
+            marked += groupFieldRepository.softDeleteByGroups(user, chunk, now);
+            marked += fieldRepository.softDeleteByGroups(user, chunk, now);
+        }
+        final var total = marked;
+        log.fine(() -> "Delete cascade, uuid:" + uuid + " roots:" + roots.size() + " groups:" + ids.size() + " rows:" + total);
+        roots.clear();
+        return total;
+    }
+
     @Override
     public void changePasswd(@NotNull final User user, @NotNull final Crypto aesOld, @NotNull final Crypto aesNew, long now) throws CommonsException {
         for(var it : repository.findByUser(user)) {
@@ -38,17 +38,21 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 @Setter
 @Log
 @Service
 public final class GroupFieldController extends BaseController<GroupField, GroupFieldRepository> {
 
+    /**
+     * Client to server group field id map of the persist running on the current thread
+     */
     @NotNull
-    private final Map<Long, Long> mapId = new HashMap<>();
+    private final ThreadLocal<Map<Long, Long>> mapId = ThreadLocal.withInitial(HashMap::new);
 
     @Nullable
-    private Map<Long, Long> groupMapId = null;
+    private Supplier<Map<Long, Long>> groupMapId = null;
 
     private @NotNull final GroupFieldRepository repository;
     private @NotNull final DeviceRepository deviceRepository;
@@ -65,8 +69,9 @@ public final class GroupFieldController extends BaseController<GroupField, Group
 
         setOnStore((@NotNull final var groupField)  -> {
 
-            if(groupMapId != null &&  groupField.getServerGroupId() == 0 && groupMapId.containsKey(groupField.getGroupId())) {
-                groupField.setServerGroupId(groupMapId.get(groupField.getGroupId()));
+            final var groupMap = groupMapId != null ? groupMapId.get() : null;
+            if(groupMap != null &&  groupField.getServerGroupId() == 0 && groupMap.containsKey(groupField.getGroupId())) {
+                groupField.setServerGroupId(groupMap.get(groupField.getGroupId()));
             }
 
             final var tmp = groupField.getGroupId();
@@ -92,19 +97,19 @@ public final class GroupFieldController extends BaseController<GroupField, Group
     }
 
 
+    @Override
     public void clean() {
-        mapId.clear();
+        super.clean();
+        mapId.remove();
     }
 
     @NotNull
     public Map<Long, Long> getMapId() {
-        return mapId;
+        return mapId.get();
     }
 
     public void add(long id, long serverId) {
-        if(!mapId.containsKey(id)) {
-            mapId.put(id, serverId);
-        }
+        mapId.get().putIfAbsent(id, serverId);
     }
 
     public void add(final @NotNull GroupField groupField) {
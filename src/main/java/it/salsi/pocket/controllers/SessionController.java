@@ -21,33 +21,56 @@ package it.salsi.pocket.controllers;
 
 import it.salsi.commons.CommonsException;
 import it.salsi.commons.messages.Success;
-import it.salsi.pocket.models.Container;
-import it.salsi.pocket.models.Device;
-import it.salsi.pocket.models.User;
+import it.salsi.pocket.core.BaseController;
+import it.salsi.pocket.core.BaseModel;
+import it.salsi.pocket.core.ContainerReader;
+import it.salsi.pocket.core.Spool;
+import it.salsi.pocket.core.SyncCursor;
+import it.salsi.pocket.core.SyncMetrics;
+import it.salsi.pocket.models.*;
 import it.salsi.pocket.repositories.DeviceRepository;
 import it.salsi.pocket.repositories.UserRepository;
 import it.salsi.pocket.security.EncoderHelper;
 import it.salsi.pocket.security.RSAHelper;
+import it.salsi.pocket.security.SessionMac;
 import it.salsi.pocket.services.CacheManager;
+import it.salsi.pocket.services.ChangeNotifier;
 import it.salsi.pocket.services.CacheManager.CacheRecord;
+import it.salsi.pocket.services.IdempotencyStore;
+import it.salsi.pocket.services.ReplicaRouter;
+import jakarta.persistence.EntityManager;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.PostMapping;
-
+import org.springframework.web.server.ContentTooLargeException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Clock;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.StreamSupport;
 
 import static it.salsi.pocket.Constant.DIVISOR;
 import static it.salsi.pocket.controllers.SessionController.ErrorCode.*;
+import static it.salsi.pocket.core.SyncMetrics.Operation.*;
+import static it.salsi.pocket.core.SyncMetrics.Stage.*;
 import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
 import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
 
@@ -55,7 +78,7 @@ import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
 @Service
 public class SessionController {
 
-    enum ErrorCode {
+    public enum ErrorCode {
 
         USER_NOT_FOUND(600),
         WRONG_SIZE_TOKEN(601),
@@ -67,6 +90,10 @@ public class SessionController {
         CACHE_NOT_FOND(607),
         SECRET_EMPTY(608),
         TIMESTAMP_LAST_NOT_PARSABLE(609),
+        VERSION_CONFLICT(610),
+        CURSOR_NOT_VALID(611),
+        REQUEST_IN_PROGRESS(612),
+        IDEMPOTENCY_KEY_MISMATCH(613),
         OK(200);
 
         ErrorCode(int code) {
@@ -74,6 +101,18 @@ public class SessionController {
         }
 
         public final int code;
+
+        /**
+         * Codes answered to a caller that could not prove who it is
+         */
+        public static boolean isAuthFailure(final int code) {
+            return code == USER_NOT_FOUND.code
+                    || code == WRONG_SIZE_TOKEN.code
+                    || code == DEVICE_ID_NOT_MATCH.code
+                    || code == SECRET_NOT_MATCH.code
+                    || code == PASSWD_ERROR.code
+                    || code == CURSOR_NOT_VALID.code;
+        }
     }
 
     private final @NotNull UserRepository userRepository;
@@ -83,11 +122,39 @@ public class SessionController {
     private final @NotNull FieldController fieldController;
     private final @NotNull EncoderHelper encoderHelper;
     private final @NotNull CacheManager cacheManager;
+    private final @NotNull ContainerReader containerReader;
+    private final @NotNull TransactionTemplate transactionTemplate;
+    private final @NotNull SyncMetrics syncMetrics;
+    private final @NotNull ReplicaRouter replicaRouter;
+    private final @NotNull ChangeNotifier changeNotifier;
+    private final @NotNull IdempotencyStore idempotencyStore;
+    private final @NotNull EntityManager entityManager;
+
+    public static final String EVENTS_MAC_LABEL = "events";
+
+    /**
+     * Set on a persist answer taken from the {@link IdempotencyStore}
+     */
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    /**
+     * Sent with {@link #ECHO_IDS} on a persist, the answer carries only the ids, parent ids, version and deleted
+     * flag of the written rows
+     */
+    public static final String ECHO_HEADER = "X-Pocket-Echo";
+
+    public static final String ECHO_IDS = "ids";
 
     @Value("${server.check-timestamp-last-update}")
     @Nullable
     private Boolean checkTimestampLastUpdate;
 
+    @Value("${server.sync-page-size-max:5000}")
+    private int maxPageSize = 5000;
+
+    @Value("${server.subtree-depth-max:32}")
+    private int maxSubtreeDepth = 32;
+
     public SessionController(
             @Autowired @NotNull final UserRepository userRepository,
             @Autowired @NotNull final DeviceRepository deviceRepository,
@@ -95,32 +162,61 @@ public class SessionController {
             @Autowired @NotNull final GroupFieldController groupFieldController,
             @Autowired @NotNull final FieldController fieldController,
             @Autowired @NotNull final EncoderHelper encoderHelper,
-            @Autowired @NotNull final CacheManager cacheManager) {
+            @Autowired @NotNull final CacheManager cacheManager,
+            @Autowired @NotNull final ContainerReader containerReader,
+            @Autowired @NotNull final PlatformTransactionManager transactionManager,
+            @Autowired @NotNull final SyncMetrics syncMetrics,
+            @Autowired @NotNull final ReplicaRouter replicaRouter,
+            @Autowired @NotNull final ChangeNotifier changeNotifier,
+            @Autowired @NotNull final IdempotencyStore idempotencyStore,
+            @Autowired @NotNull final EntityManager entityManager) {
         this.userRepository = userRepository;
         this.deviceRepository = deviceRepository;
         this.groupController = groupController;
         this.groupFieldController = groupFieldController;
-        this.groupFieldController.setGroupMapId(groupController.getMapId());
+        this.groupFieldController.setGroupMapId(groupController::getMapId);
         this.fieldController = fieldController;
-        this.fieldController.setGroupMapId(groupController.getMapId());
-        this.fieldController.setGroupFieldMapId(groupFieldController.getMapId());
+        this.fieldController.setGroupMapId(groupController::getMapId);
+        this.fieldController.setGroupFieldMapId(groupFieldController::getMapId);
         this.encoderHelper = encoderHelper;
         this.cacheManager = cacheManager;
+        this.containerReader = containerReader;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.syncMetrics = syncMetrics;
+        this.replicaRouter = replicaRouter;
+        this.changeNotifier = changeNotifier;
+        this.idempotencyStore = idempotencyStore;
+        this.entityManager = entityManager;
     }
 
     public @NotNull ResponseEntity<Container> getData(@NotNull final String uuid,
             @NotNull final String crypt,
             @NotNull final String remoteIP) throws CommonsException {
+        return getData(uuid, crypt, remoteIP, null);
+    }
+
+    /**
+     * @param pageSize when set, only the first page of at most {@code pageSize} elements is returned, the
+     *                 {@link SyncCursor#HEADER} of the response leads to the next one through {@link #getPage}
+     */
+    public @NotNull ResponseEntity<Container> getData(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final String remoteIP,
+            @Nullable final Integer pageSize) throws CommonsException {
+        return syncMetrics.call(GET_DATA, () -> doGetData(uuid, crypt, remoteIP, pageSize));
+    }
+
+    private @NotNull ResponseEntity<Container> doGetData(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final String remoteIP,
+            @Nullable final Integer pageSize) throws CommonsException {
 
         final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
 
         long timestampLastUpdate = 0;
         Optional<User> optUser = Optional.empty();
         Device device = null;
-        RSAHelper rsaHelper = null;
-        if (cacheManager.has(uuid)) {
-            cacheManager.rm(uuid);
-        }
+        cacheManager.rm(uuid);
 
         final var optDevice = deviceRepository.findByUuid(uuid);
         if (optDevice.isEmpty()) {
@@ -128,11 +224,12 @@ public class SessionController {
         }
 
         device = optDevice.get();
-        rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
-        rsaHelper.loadPublicKey(Base64.getDecoder().decode(device.getPublicKey()));
-        rsaHelper.loadPrivateKey(Base64.getDecoder().decode(device.getPrivateKey()));
-
-        final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        final var decryptSplit = syncMetrics.stage(GET_DATA, DECRYPT, () -> {
+            rsaHelper.loadPublicKey(Base64.getDecoder().decode(optDevice.get().getPublicKey()));
+            rsaHelper.loadPrivateKey(Base64.getDecoder().decode(optDevice.get().getPrivateKey()));
+            return rsaHelper.decryptFromURLBase64(crypt);
+        }).split("[" + DIVISOR.value + "]");
         if (decryptSplit.length != 5) {
             return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
         }
@@ -149,123 +246,430 @@ public class SessionController {
         try {
             timestampLastUpdate = Long.parseLong(decryptSplit[2]);
         } catch (final NumberFormatException e) {
-            System.err.println(e.getMessage());
+            log.warning(() -> "Timestamp last update not parsable, uuid:" + uuid + " " + e.getMessage());
             return ResponseEntity.status(TIMESTAMP_LAST_NOT_PARSABLE.code).build();
         }
 
-        optUser = userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4]));
+        optUser = syncMetrics.stage(GET_DATA, USER_LOOKUP,
+                () -> userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4])));
         if (optUser.isEmpty()) {
             return ResponseEntity.status(USER_NOT_FOUND.code).build();
         }
 
+        // last write to the vault on the primary, by any device of the user, a replica must have reached it
+        final long watermark = userRepository.findSyncVersion(optUser.get().getId());
+
         device.setAddress(remoteIP);
         device.setTimestampLastLogin(now);
         device.setTimestampLastUpdate(now);
-        device = deviceRepository.save(device);
+        final var saved = deviceRepository.save(device);
 
-        cacheManager.add(new CacheRecord(
+        final var record = new CacheRecord(
                 uuid,
                 secret,
-                device,
+                saved,
                 rsaHelper,
-                now));
+                now);
+        cacheManager.add(record);
 
-        return ResponseEntity.ok(
-                new Container(
+        final var user = optUser.get();
+        final var since = timestampLastUpdate;
+        if (pageSize != null) {
+            final var cursor = SyncCursor.first(since, now, watermark, Math.clamp(pageSize, 1, maxPageSize));
+            return syncMetrics.stage(GET_DATA, QUERY, () -> page(uuid, user.getId(), record.getMacKey(), cursor, user, saved));
+        }
+        return ResponseEntity.ok(syncMetrics.stage(GET_DATA, QUERY, () ->
+                replicaRouter.read(user.getId(), watermark, () -> new Container(
                         now,
-                        optUser.get(),
-                        device,
-                        groupController.getAll(uuid, timestampLastUpdate),
-                        groupFieldController.getAll(uuid, timestampLastUpdate),
-                        fieldController.getAll(uuid, timestampLastUpdate)));
+                        user,
+                        saved,
+                        groupController.getAll(uuid, since),
+                        groupFieldController.getAll(uuid, since),
+                        fieldController.getAll(uuid, since)))));
+    }
+
+    /**
+     * Next page of a paged getData. The cursor is only accepted while the session that issued it is alive,
+     * a new login or a logout ends the paging and the client starts over with getData.
+     */
+    public @NotNull ResponseEntity<Container> getPage(@NotNull final String uuid,
+            @NotNull final String cursor) throws CommonsException {
+        return syncMetrics.call(GET_PAGE, () -> doGetPage(uuid, cursor));
+    }
+
+    private @NotNull ResponseEntity<Container> doGetPage(@NotNull final String uuid,
+            @NotNull final String cursor) throws CommonsException {
+
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isEmpty()) {
+            return ResponseEntity.status(CACHE_NOT_FOND.code).build();
+        }
+
+        final var record = cacheRecord.get();
+        final var optCursor = syncMetrics.stage(GET_PAGE, DECRYPT, () -> SyncCursor.decode(cursor, record.getMacKey()));
+        if (optCursor.isEmpty()) {
+            return ResponseEntity.status(CURSOR_NOT_VALID.code).build();
+        }
+
+        return syncMetrics.stage(GET_PAGE, QUERY, () ->
+                page(uuid, record.getDevice().getUser().getId(), record.getMacKey(), optCursor.get(), null, null));
+    }
+
+    /**
+     * Fill a page from {@code cursor} on, moving on to the next section when one is exhausted
+     */
+    private @NotNull ResponseEntity<Container> page(@NotNull final String uuid,
+            @NotNull final Long userId,
+            @NotNull final SecretKeySpec key,
+            @NotNull final SyncCursor cursor,
+            @Nullable final User user,
+            @Nullable final Device device) {
+        final var groups = new ArrayList<Group>();
+        final var groupFields = new ArrayList<GroupField>();
+        final var fields = new ArrayList<Field>();
+
+        final var next = replicaRouter.read(userId, cursor.watermark(), () -> {
+            var ret = cursor;
+            var size = 0;
+            while (ret != null && size < cursor.pageSize()) {
+                final var limit = cursor.pageSize() - size;
+                ret = switch (ret.section()) {
+                    case SyncCursor.GROUPS -> fill(groupController, uuid, ret, limit, groups);
+                    case SyncCursor.GROUP_FIELDS -> fill(groupFieldController, uuid, ret, limit, groupFields);
+                    default -> fill(fieldController, uuid, ret, limit, fields);
+                };
+                size = groups.size() + groupFields.size() + fields.size();
+            }
+            return ret;
+        });
+
+        final var container = new Container(cursor.snapshot(), user, device, groups, groupFields, fields);
+        if (next == null) {
+            return ResponseEntity.ok(container);
+        }
+        return ResponseEntity.ok().header(SyncCursor.HEADER, next.encode(key)).body(container);
+    }
+
+    @Nullable
+    private static <T extends BaseModel<T>> SyncCursor fill(@NotNull final BaseController<T, ?> controller,
+            @NotNull final String uuid,
+            @NotNull final SyncCursor cursor,
+            final int limit,
+            @NotNull final List<T> into) {
+        final var page = controller.getPage(uuid, cursor, limit);
+        into.addAll(page);
+        if (page.size() < limit) {
+            return cursor.nextSection();
+        }
+        // ids are already switched, the server id is the keyset position
+        final var last = page.getLast();
+        return cursor.after(last.getTimestampLastUpdate(), last.getServerId());
+    }
+
+    /**
+     * Server sent events announcing the data stored by the other devices of the user, see {@link ChangeNotifier}.
+     * Authenticated like {@link #macHeartbeat}, {@code mac} signs {@code uuid|deviceId|events}.
+     */
+    public @NotNull ResponseEntity<SseEmitter> events(@NotNull final String uuid,
+            @NotNull final String mac) {
+
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isEmpty()) {
+            return ResponseEntity.status(CACHE_NOT_FOND.code).build();
+        }
+
+        final var record = cacheRecord.get();
+        final var message = uuid + DIVISOR.value + record.getDevice().getId() + DIVISOR.value + EVENTS_MAC_LABEL;
+        if (!SessionMac.verify(record.getMacKey(), message, mac)) {
+            return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+        }
+
+        return ResponseEntity.ok(changeNotifier.subscribe(uuid, record.getDevice().getUser().getId()));
+    }
+
+    /**
+     * One group with its group fields and fields, and the groups below it down to {@code depth} levels
+     * ({@code 0} the group alone, negative or over {@code server.subtree-depth-max} capped to it);
+     * {@code groupId} {@code 0} starts from the top level groups.
+     * Authenticated like {@link #macHeartbeat}, {@code mac} signs {@code uuid|deviceId|timestampLastUpdate|groupId|depth}
+     * with the current session timestamp, so a captured request stops working once the session moves on, and
+     * {@code depth} as sent, {@code -1} when omitted. The session timestamp is not moved.
+     */
+    public @NotNull ResponseEntity<Container> getSubtree(@NotNull final String uuid,
+            final long groupId,
+            final int depth,
+            @NotNull final String mac) throws CommonsException {
+        return syncMetrics.call(GET_SUBTREE, () -> doGetSubtree(uuid, groupId, depth, mac));
+    }
+
+    private @NotNull ResponseEntity<Container> doGetSubtree(@NotNull final String uuid,
+            final long groupId,
+            final int depth,
+            @NotNull final String mac) throws CommonsException {
+
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isEmpty()) {
+            return ResponseEntity.status(CACHE_NOT_FOND.code).build();
+        }
+
+        final var record = cacheRecord.get();
+        final var message = uuid + DIVISOR.value + record.getDevice().getId() + DIVISOR.value + record.getTimestampLastUpdate()
+                + DIVISOR.value + groupId + DIVISOR.value + depth;
+        if (!syncMetrics.stage(GET_SUBTREE, DECRYPT, () -> SessionMac.verify(record.getMacKey(), message, mac))) {
+            return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+        }
+
+        final var levels = depth < 0 ? maxSubtreeDepth : Math.min(depth, maxSubtreeDepth);
+        return ResponseEntity.ok(syncMetrics.stage(GET_SUBTREE, QUERY, () -> {
+            final var groups = groupController.getSubtree(uuid, groupId, levels);
+            // ids are switched, the server ids are in serverId
+            final var groupIds = groups.stream().map(Group::getServerId).toList();
+            return new Container(
+                    record.getTimestampLastUpdate(),
+                    null,
+                    null,
+                    groups,
+                    groupFieldController.getByGroups(uuid, groupIds),
+                    fieldController.getByGroups(uuid, groupIds));
+        }));
     }
 
     public @NotNull ResponseEntity<Container> persist(@NotNull final String uuid,
             @NotNull final String crypt,
-            @NotNull final Container container,
+            @NotNull final InputStream body,
+            @Nullable final String contentType,
             @NotNull final String remoteIP) throws CommonsException {
+        return persist(uuid, crypt, body, contentType, remoteIP, null);
+    }
+
+    /**
+     * @param idempotencyKey client id of the request ({@link IdempotencyStore#HEADER}): a retry of a persist
+     *                       that succeeded gets the same answer without writing again, a retry of one still
+     *                       running gets {@link ErrorCode#REQUEST_IN_PROGRESS}, the key sent with another body
+     *                       {@link ErrorCode#IDEMPOTENCY_KEY_MISMATCH}
+     */
+    public @NotNull ResponseEntity<Container> persist(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final InputStream body,
+            @Nullable final String contentType,
+            @NotNull final String remoteIP,
+            @Nullable final String idempotencyKey) throws CommonsException {
+        return persist(uuid, crypt, body, contentType, remoteIP, idempotencyKey, false);
+    }
+
+    /**
+     * @param echoIds the answer carries the {@link it.salsi.pocket.core.BaseModel#echo()} of the written rows,
+     *                asked with {@link #ECHO_HEADER}; otherwise the whole rows, content included
+     */
+    public @NotNull ResponseEntity<Container> persist(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final InputStream body,
+            @Nullable final String contentType,
+            @NotNull final String remoteIP,
+            @Nullable final String idempotencyKey,
+            final boolean echoIds) throws CommonsException {
+        return syncMetrics.call(PERSIST,
+                () -> doPersist(uuid, crypt, body, contentType, remoteIP, idempotencyKey, echoIds));
+    }
+
+    private @NotNull ResponseEntity<Container> doPersist(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final InputStream body,
+            @Nullable final String contentType,
+            @NotNull final String remoteIP,
+            @Nullable final String idempotencyKey,
+            final boolean echoIds) throws CommonsException {
         final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
 
-        long timestampLastUpdate = 0;
-        Optional<User> optUser = Optional.empty();
-        Device device = null;
-        CacheRecord record = null;
-        if (cacheManager.has(uuid)) {
-            final var cacheRecord = cacheManager.get(uuid);
-            if (cacheRecord.isPresent()) {
-                record = cacheRecord.get();
-                device = record.getDevice();
-                final var rsaHelper = record.getRsaHelper();
-
-                final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
-                if (decryptSplit.length != 5) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
-                }
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isEmpty()) {
+            return ResponseEntity.status(CACHE_NOT_FOND.code).build();
+        }
+        final var record = cacheRecord.get();
+        final var device = record.getDevice();
+        final var rsaHelper = record.getRsaHelper();
 
-                if (Long.parseLong(decryptSplit[0]) != device.getId()) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
-                }
+        final var decryptSplit = syncMetrics.stage(PERSIST, DECRYPT, () -> rsaHelper.decryptFromURLBase64(crypt)).split("[" + DIVISOR.value + "]");
+        if (decryptSplit.length != 5) {
+            cacheManager.rm(record);
+            return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
+        }
 
-                if (!decryptSplit[1].equals(record.getSecret())) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
-                }
+        if (Long.parseLong(decryptSplit[0]) != device.getId()) {
+            cacheManager.rm(record);
+            return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
+        }
 
-                if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
-                    timestampLastUpdate = Long.parseLong(decryptSplit[2]);
-                    if (timestampLastUpdate != device.getTimestampLastUpdate()) {
-                        cacheManager.rm(record);
-                        return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
-                    }
-                }
+        if (!decryptSplit[1].equals(record.getSecret())) {
+            cacheManager.rm(record);
+            return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+        }
 
-                optUser = userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4]));
-                if (optUser.isEmpty()) {
-                    return ResponseEntity.status(USER_NOT_FOUND.code).build();
+        if (idempotencyKey != null
+                && (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyStore.KEY_MAX_LENGTH)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // off the network and checked before the transaction, which so holds a connection only for the writes
+        final var in = idempotencyKey == null ? null : new DigestInputStream(body, sha256());
+        final Spool spool;
+        try {
+            spool = syncMetrics.stage(PERSIST, READ, () -> containerReader.spool(in == null ? body : in, contentType));
+        } catch (final ContentTooLargeException e) {
+            log.warning("Persist payload too large, uuid:" + uuid);
+            return ResponseEntity.status(HttpStatus.CONTENT_TOO_LARGE).build();
+        }
+        try (spool) {
+            if (idempotencyKey == null) {
+                return write(uuid, now, record, decryptSplit, spool, contentType, remoteIP, echoIds);
+            }
+
+            // before the timestamp check: a retry carries the timestamp the first attempt has already moved
+            final var claim = idempotencyStore.claim(uuid, idempotencyKey, hash(in));
+            switch (claim.state()) {
+                case DONE -> {
+                    log.fine(() -> "Persist replayed, uuid:" + uuid + " key:" + idempotencyKey);
+                    return ResponseEntity.ok().header(REPLAYED_HEADER, "true").body(claim.container());
                 }
+                case IN_PROGRESS -> {
+                    return ResponseEntity.status(REQUEST_IN_PROGRESS.code).build();
+                }
+                case MISMATCH -> {
+                    log.warning("Idempotency key reused with another body, uuid:" + uuid + " key:" + idempotencyKey);
+                    return ResponseEntity.status(IDEMPOTENCY_KEY_MISMATCH.code).build();
+                }
+                case NEW -> {
+                }
+            }
 
+            ResponseEntity<Container> ret = null;
+            try {
+                return ret = write(uuid, now, record, decryptSplit, spool, contentType, remoteIP, echoIds);
+            } finally {
+                if (ret != null && ret.getStatusCode().value() == OK.code && ret.getBody() != null) {
+                    idempotencyStore.complete(uuid, idempotencyKey, ret.getBody());
+                } else {
+                    idempotencyStore.release(uuid, idempotencyKey);
+                }
             }
-        } else {
-            return ResponseEntity.status(CACHE_NOT_FOND.code).build();
         }
+    }
 
-        if (device == null) {
-            return ResponseEntity.status(DEVICE_NOT_FOUND.code).build();
+    /**
+     * Hash of the whole body, the bytes after the container the parser left unread included
+     */
+    private static byte @NotNull [] hash(@NotNull final DigestInputStream in) {
+        try {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
         }
+        return in.getMessageDigest().digest();
+    }
 
-        groupController.clean();
+    @NotNull
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Second half of a persist, once the session token has been verified
+     */
+    private @NotNull ResponseEntity<Container> write(@NotNull final String uuid,
+            final long now,
+            @NotNull final CacheRecord record,
+            @NotNull final String @NotNull [] decryptSplit,
+            @NotNull final Spool spool,
+            @Nullable final String contentType,
+            @NotNull final String remoteIP,
+            final boolean echoIds) throws CommonsException {
+        Device device = record.getDevice();
+
+        if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
+            final var timestampLastUpdate = Long.parseLong(decryptSplit[2]);
+            if (timestampLastUpdate != device.getTimestampLastUpdate()) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
+            }
+        }
 
-        final var groups = groupController.store(uuid, now, container.groups());
-        final var groupFields = groupFieldController.store(uuid, now, container.groupFields());
-        final var fields = fieldController.store(uuid, now, container.fields());
+        final Optional<User> optUser = syncMetrics.stage(PERSIST, USER_LOOKUP,
+                () -> userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4])));
+        if (optUser.isEmpty()) {
+            return ResponseEntity.status(USER_NOT_FOUND.code).build();
+        }
 
-        final var groupsDeleted = groupController.delete(uuid, now, container.groups());
-        final var groupFieldsDeleted = groupFieldController.delete(uuid, now, container.groupFields());
-        final var fieldsDeleted = fieldController.delete(uuid, now, container.fields());
+        // stored and deleted elements, or their echoes, one array-backed list per section
+        final var groups = new ArrayList<Group>();
+        final var groupFields = new ArrayList<GroupField>();
+        final var fields = new ArrayList<Field>();
 
-        if (StreamSupport.stream(groups.spliterator(), false).findFirst().isPresent()
-                || StreamSupport.stream(groupFields.spliterator(), false).findFirst().isPresent()
-                || StreamSupport.stream(fields.spliterator(), false).findFirst().isPresent()
-                || StreamSupport.stream(groupsDeleted.spliterator(), false).findFirst().isPresent()
-                || StreamSupport.stream(groupFieldsDeleted.spliterator(), false).findFirst().isPresent()
-                || StreamSupport.stream(fieldsDeleted.spliterator(), false).findFirst().isPresent()) {
-            device.setAddress(remoteIP);
-            device.setTimestampLastUpdate(now);
-            device = deviceRepository.save(device);
-            System.out.println(device.toString());
+        // the whole sync is one transaction: a version conflict rolls back every write
+        final var current = device;
+        try {
+            device = syncMetrics.stage(PERSIST, WRITE, () -> transactionTemplate.execute(status -> {
+                try {
+                    containerReader.read(spool, contentType,
+                            batch -> {
+                                groupController.store(uuid, now, batch, groups, echoIds);
+                                groupController.delete(uuid, now, batch, groups, echoIds);
+                                // flushed by store and delete: the entities of a batch are not kept for the next
+                                entityManager.clear();
+                            },
+                            batch -> {
+                                groupFieldController.store(uuid, now, batch, groupFields, echoIds);
+                                groupFieldController.delete(uuid, now, batch, groupFields, echoIds);
+                                entityManager.clear();
+                            },
+                            batch -> {
+                                fieldController.store(uuid, now, batch, fields, echoIds);
+                                fieldController.delete(uuid, now, batch, fields, echoIds);
+                                entityManager.clear();
+                            });
+                } catch (final CommonsException e) {
+                    throw new IllegalStateException(e);
+                }
+                // after every section: a row moved out of a deleted folder in this sync keeps its new place
+                groupController.cascade(uuid, now);
+
+                if (!groups.isEmpty() || !groupFields.isEmpty() || !fields.isEmpty()) {
+                    current.setAddress(remoteIP);
+                    current.setTimestampLastUpdate(now);
+                    userRepository.incrementSyncVersion(optUser.get().getId());
+                    final var saved = deviceRepository.save(current);
+                    log.fine(() -> "Persist stored, device:" + saved);
+                    return saved;
+                }
+                return current;
+            }));
+        } catch (final OptimisticLockingFailureException e) {
+            log.warning("Persist version conflict, uuid:" + uuid + " " + e.getMessage());
+            return ResponseEntity.status(VERSION_CONFLICT.code).build();
+        } finally {
+            groupController.clean();
+            groupFieldController.clean();
+            fieldController.clean();
         }
 
-        record.setTimestampLastUpdate(now);
+        // moved only by a write: when every row was skipped the next token still carries the old one
+        final long timestampLastUpdate = device.getTimestampLastUpdate();
+        record.setTimestampLastUpdate(timestampLastUpdate);
+        cacheManager.update(record);
+        if (!groups.isEmpty() || !groupFields.isEmpty() || !fields.isEmpty()) {
+            changeNotifier.changed(optUser.get().getId(), now, uuid);
+        }
         return ResponseEntity.ok(
                 new Container(
-                        now,
+                        timestampLastUpdate,
                         optUser.get(),
                         device,
-                        concat(groups, groupsDeleted),
-                        concat(groupFields, groupFieldsDeleted),
-                        concat(fields, fieldsDeleted)));
+                        groups,
+                        groupFields,
+                        fields));
     }
 
     @PostMapping("/{uuid}/{crypt}")
@@ -273,6 +677,13 @@ public class SessionController {
             @NotNull final String crypt,
             @NotNull final Boolean changePasswdDataOnServer,
             @NotNull final String remoteIP) throws CommonsException {
+        return syncMetrics.call(CHANGE_PASSWD, () -> doChangePasswd(uuid, crypt, changePasswdDataOnServer, remoteIP));
+    }
+
+    private @NotNull ResponseEntity<Boolean> doChangePasswd(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final Boolean changePasswdDataOnServer,
+            @NotNull final String remoteIP) throws CommonsException {
         final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
 
         long timestampLastUpdate = 0;
@@ -280,47 +691,45 @@ public class SessionController {
         Device device = null;
         String oldPasswd = null;
         String newPasswd = null;
-        RSAHelper rsaHelper = null;
-        if (cacheManager.has(uuid)) {
-            final var cacheRecord = cacheManager.get(uuid);
-            if (cacheRecord.isPresent()) {
-                var record = cacheRecord.get();
-                device = record.getDevice();
-                rsaHelper = record.getRsaHelper();
-
-                final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
-                if (decryptSplit.length != 6) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
-                }
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isPresent()) {
+            var record = cacheRecord.get();
+            device = record.getDevice();
+            final var recordRsaHelper = record.getRsaHelper();
+
+            final var decryptSplit = syncMetrics.stage(CHANGE_PASSWD, DECRYPT, () -> recordRsaHelper.decryptFromURLBase64(crypt)).split("[" + DIVISOR.value + "]");
+            if (decryptSplit.length != 6) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
+            }
 
-                if (Long.parseLong(decryptSplit[0]) != device.getId()) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
-                }
+            if (Long.parseLong(decryptSplit[0]) != device.getId()) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
+            }
 
-                if (!decryptSplit[1].equals(record.getSecret())) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
-                }
+            if (!decryptSplit[1].equals(record.getSecret())) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+            }
 
-                if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
-                    timestampLastUpdate = Long.parseLong(decryptSplit[2]);
-                    if (timestampLastUpdate != device.getTimestampLastUpdate()) {
-                        cacheManager.rm(record);
-                        return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
-                    }
+            if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
+                timestampLastUpdate = Long.parseLong(decryptSplit[2]);
+                if (timestampLastUpdate != device.getTimestampLastUpdate()) {
+                    cacheManager.rm(record);
+                    return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
                 }
+            }
 
-                oldPasswd = decryptSplit[4];
-
-                optUser = userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(oldPasswd));
-                if (optUser.isEmpty()) {
-                    return ResponseEntity.status(USER_NOT_FOUND.code).build();
-                }
+            oldPasswd = decryptSplit[4];
 
-                newPasswd = decryptSplit[5];
+            optUser = syncMetrics.stage(CHANGE_PASSWD, USER_LOOKUP,
+                    () -> userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4])));
+            if (optUser.isEmpty()) {
+                return ResponseEntity.status(USER_NOT_FOUND.code).build();
             }
+
+            newPasswd = decryptSplit[5];
         } else {
             return ResponseEntity.status(CACHE_NOT_FOND.code).build();
         }
@@ -335,19 +744,30 @@ public class SessionController {
 
         final var user = optUser.get();
 
-        if (changePasswdDataOnServer) {
-            final var aesOld = encoderHelper.getCrypto(oldPasswd);
-            final var aesNew = encoderHelper.getCrypto(newPasswd);
-            groupController.changePasswd(user, aesOld, aesNew, now);
-            groupFieldController.changePasswd(user, aesOld, aesNew, now);
-            fieldController.changePasswd(user, aesOld, aesNew, now);
-        }
+        final var aesOld = changePasswdDataOnServer ? encoderHelper.getCrypto(oldPasswd) : null;
+        final var aesNew = changePasswdDataOnServer ? encoderHelper.getCrypto(newPasswd) : null;
+        final var current = device;
+        final var passwd = encoderHelper.encode(newPasswd);
+
+        // one transaction: the re-encrypted rows are managed, so flushed, and stored with the new password or not at all
+        syncMetrics.stage(CHANGE_PASSWD, WRITE, () -> transactionTemplate.execute(status -> {
+            if (aesOld != null && aesNew != null) {
+                try {
+                    groupController.changePasswd(user, aesOld, aesNew, now);
+                    groupFieldController.changePasswd(user, aesOld, aesNew, now);
+                    fieldController.changePasswd(user, aesOld, aesNew, now);
+                } catch (final CommonsException e) {
+                    throw new IllegalStateException(e);
+                }
+                userRepository.incrementSyncVersion(user.getId());
+            }
 
-        device.setAddress(remoteIP);
-        deviceRepository.save(device);
+            current.setAddress(remoteIP);
+            deviceRepository.save(current);
 
-        user.setPasswd(encoderHelper.encode(newPasswd));
-        userRepository.save(user);
+            user.setPasswd(passwd);
+            return userRepository.save(user);
+        }));
 
         cacheManager.rm(uuid);
         return ResponseEntity.ok(true);
@@ -360,43 +780,41 @@ public class SessionController {
         long timestampLastUpdate;
         Optional<User> optUser;
         Device device = null;
-        if (cacheManager.has(uuid)) {
-            cacheRecord = cacheManager.get(uuid);
-            if (cacheRecord.isPresent()) {
-                var record = cacheRecord.get();
-                device = record.getDevice();
-                final var rsaHelper = record.getRsaHelper();
-
-                final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
-                if (decryptSplit.length != 5) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
-                }
-
-                if (Long.parseLong(decryptSplit[0]) != device.getId()) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
-                }
+        cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isPresent()) {
+            var record = cacheRecord.get();
+            device = record.getDevice();
+            final var rsaHelper = record.getRsaHelper();
+
+            final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
+            if (decryptSplit.length != 5) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
+            }
 
-                if (!decryptSplit[1].equals(record.getSecret())) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
-                }
+            if (Long.parseLong(decryptSplit[0]) != device.getId()) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
+            }
 
-                if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
-                    timestampLastUpdate = Long.parseLong(decryptSplit[2]);
-                    if (timestampLastUpdate != device.getTimestampLastUpdate()) {
-                        cacheManager.rm(record);
-                        return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
-                    }
-                }
+            if (!decryptSplit[1].equals(record.getSecret())) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+            }
 
-                optUser = userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4]));
-                if (optUser.isEmpty()) {
-                    return ResponseEntity.status(USER_NOT_FOUND.code).build();
+            if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
+                timestampLastUpdate = Long.parseLong(decryptSplit[2]);
+                if (timestampLastUpdate != device.getTimestampLastUpdate()) {
+                    cacheManager.rm(record);
+                    return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
                 }
+            }
 
+            optUser = userRepository.findByEmailAndPasswd(decryptSplit[3], encoderHelper.encode(decryptSplit[4]));
+            if (optUser.isEmpty()) {
+                return ResponseEntity.status(USER_NOT_FOUND.code).build();
             }
+
         } else {
             return ResponseEntity.status(CACHE_NOT_FOND.code).build();
         }
@@ -416,6 +834,12 @@ public class SessionController {
     public @NotNull ResponseEntity<?> heartbeat(@NotNull final String uuid,
             @NotNull final String crypt,
             @NotNull final String remoteIP) throws CommonsException {
+        return syncMetrics.call(HEARTBEAT, () -> doHeartbeat(uuid, crypt, remoteIP));
+    }
+
+    private @NotNull ResponseEntity<?> doHeartbeat(@NotNull final String uuid,
+            @NotNull final String crypt,
+            @NotNull final String remoteIP) throws CommonsException {
 
         final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
 
@@ -423,39 +847,38 @@ public class SessionController {
         long timestampLastUpdate;
         Device device = null;
 
-        if (cacheManager.has(uuid)) {
-            cacheRecord = cacheManager.get(uuid);
-            if (cacheRecord.isPresent()) {
-                var record = cacheRecord.get();
-                device = record.getDevice();
-                final var rsaHelper = record.getRsaHelper();
+        cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isPresent()) {
+            var record = cacheRecord.get();
+            device = record.getDevice();
+            final var rsaHelper = record.getRsaHelper();
 
-                final var decryptSplit = rsaHelper.decryptFromURLBase64(crypt).split("[" + DIVISOR.value + "]");
-                if (decryptSplit.length != 3) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
-                }
+            final var decryptSplit = syncMetrics.stage(HEARTBEAT, DECRYPT, () -> rsaHelper.decryptFromURLBase64(crypt)).split("[" + DIVISOR.value + "]");
+            if (decryptSplit.length != 3) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(WRONG_SIZE_TOKEN.code).build();
+            }
 
-                if (Long.parseLong(decryptSplit[0]) != device.getId()) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
-                }
+            if (Long.parseLong(decryptSplit[0]) != device.getId()) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(DEVICE_ID_NOT_MATCH.code).build();
+            }
 
-                if (!decryptSplit[1].equals(record.getSecret())) {
-                    cacheManager.rm(record);
-                    return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
-                }
+            if (!decryptSplit[1].equals(record.getSecret())) {
+                cacheManager.rm(record);
+                return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
+            }
 
-                if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
-                    timestampLastUpdate = Long.parseLong(decryptSplit[2]);
-                    if (timestampLastUpdate != record.getTimestampLastUpdate()) {
-                        cacheManager.rm(record);
-                        return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
-                    }
+            if (checkTimestampLastUpdate != null && checkTimestampLastUpdate) {
+                timestampLastUpdate = Long.parseLong(decryptSplit[2]);
+                if (timestampLastUpdate != record.getTimestampLastUpdate()) {
+                    cacheManager.rm(record);
+                    return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
                 }
-
-                record.setTimestampLastUpdate(now);
             }
+
+            record.setTimestampLastUpdate(now);
+            cacheManager.update(record);
         } else {
             return ResponseEntity.ok(
                     new Container(
@@ -488,18 +911,43 @@ public class SessionController {
                         List.of()));
     }
 
-    private static <T> @NotNull List<T> concat(@NotNull Iterable<? extends T> a, Iterable<? extends T> b) {
-        var merged = new LinkedList<T>();
+    /**
+     * Keep-alive authenticated by {@link SessionMac} instead of an RSA token: {@code mac} signs
+     * {@code uuid|deviceId|timestampLastUpdate} with the key of the cached session.
+     * A wrong MAC does not drop the session, anyone knowing the uuid could otherwise log it out.
+     */
+    public @NotNull ResponseEntity<?> macHeartbeat(@NotNull final String uuid,
+            final long timestampLastUpdate,
+            @NotNull final String mac) throws CommonsException {
+        return syncMetrics.call(HEARTBEAT, () -> doMacHeartbeat(uuid, timestampLastUpdate, mac));
+    }
 
-        for (T item : a) {
-            merged.add(item);
+    private @NotNull ResponseEntity<?> doMacHeartbeat(@NotNull final String uuid,
+            final long timestampLastUpdate,
+            @NotNull final String mac) throws CommonsException {
+
+        final var cacheRecord = cacheManager.get(uuid);
+        if (cacheRecord.isEmpty()) {
+            return ResponseEntity.ok(new Container(0L, null, null, List.of(), List.of(), List.of()));
+        }
+
+        final var record = cacheRecord.get();
+        final var message = uuid + DIVISOR.value + record.getDevice().getId() + DIVISOR.value + timestampLastUpdate;
+        if (!syncMetrics.stage(HEARTBEAT, DECRYPT, () -> SessionMac.verify(record.getMacKey(), message, mac))) {
+            return ResponseEntity.status(SECRET_NOT_MATCH.code).build();
         }
 
-        for (T item : b) {
-            merged.add(item);
+        // the session stays: a MAC over an old timestamp is what a replayed heartbeat carries,
+        // dropping the session would let whoever captured one log the device out
+        if (checkTimestampLastUpdate != null && checkTimestampLastUpdate
+                && timestampLastUpdate != record.getTimestampLastUpdate()) {
+            return ResponseEntity.status(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code).build();
         }
 
-        return merged;
+        final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
+        record.setTimestampLastUpdate(now);
+        cacheManager.update(record);
+        return ResponseEntity.ok(new Container(now, null, null, List.of(), List.of(), List.of()));
     }
 
     static public @NotNull String getClientIP(@NotNull final HttpServletRequest request) {
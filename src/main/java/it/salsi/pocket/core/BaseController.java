@@ -24,8 +24,6 @@ import it.salsi.commons.utils.Crypto;
 import it.salsi.pocket.controllers.GroupController;
 import it.salsi.pocket.controllers.GroupFieldController;
 import it.salsi.pocket.models.Device;
-import it.salsi.pocket.models.Group;
-import it.salsi.pocket.models.GroupField;
 import it.salsi.pocket.models.User;
 import it.salsi.pocket.repositories.DeviceRepository;
 import it.salsi.pocket.repositories.UserRepository;
@@ -34,9 +32,14 @@ import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -59,6 +62,30 @@ public abstract class BaseController<T extends BaseModel, Y extends BaseReposito
     @Nullable
     private BaseController.OnStore<T> onStore;
 
+    /**
+     * Working lists of a batch, cleared and reused by the next batch of the thread and dropped by {@link #clean()}
+     */
+    private static final class Scratch<T> {
+        private final ArrayList<T> rows = new ArrayList<>();
+        private final ArrayList<T> originals = new ArrayList<>();
+        private final ArrayList<Long> ids = new ArrayList<>();
+        private final HashMap<Long, ContentState> states = new HashMap<>();
+        private final HashMap<Long, T> current = new HashMap<>();
+
+        @NotNull
+        private Scratch<T> clear() {
+            rows.clear();
+            originals.clear();
+            ids.clear();
+            states.clear();
+            current.clear();
+            return this;
+        }
+    }
+
+    @NotNull
+    private final ThreadLocal<Scratch<T>> scratch = ThreadLocal.withInitial(Scratch::new);
+
     public BaseController(@Autowired @NotNull final Y repository,
             @Autowired @NotNull final DeviceRepository deviceRepository,
             @Autowired @NotNull final UserRepository userRepository) {
@@ -67,7 +94,7 @@ public abstract class BaseController<T extends BaseModel, Y extends BaseReposito
     }
 
     @NotNull
-    public Iterable<T> getAll(@NotNull final String token,
+    public List<T> getAll(@NotNull final String token,
             @NotNull final Long timestampLastUpdate) {
         final var device = deviceRepository.findByUuid(token);
         if (device.isPresent()) {
@@ -83,23 +110,85 @@ public abstract class BaseController<T extends BaseModel, Y extends BaseReposito
             return List.of();
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Up to {@code limit} elements of the {@link SyncCursor} section this controller serves, ids switched like {@link #getAll}
+     */
     @NotNull
-    public Iterable<T> store(@NotNull final String uuid, @NotNull final Long now,
-            @Nullable final Iterable<T> elements) {
+    public List<T> getPage(@NotNull final String token,
+            @NotNull final SyncCursor cursor, final int limit) {
+        final var device = deviceRepository.findByUuid(token);
+        if (device.isPresent()) {
+            if (device.get().getStatus() != Device.Status.ACTIVE)
+                return List.of();
+            if (device.get().getUser().getStatus() != User.Status.ACTIVE)
+                return List.of();
+            final var ret = repository.findPage(device.get().getUser(), cursor.since(), cursor.snapshot(),
+                    cursor.timestamp(), cursor.id(), Limit.of(limit));
+            ret.forEach(T::switchId);
+            return ret;
+        } else
+            return List.of();
+    }
 
-        if (elements == null) {
+    /**
+     * Live elements whose parent group is one of {@code groupIds}, ids switched like {@link #getAll}
+     */
+    @NotNull
+    public List<T> getByGroups(@NotNull final String token,
+            @NotNull final Collection<Long> groupIds) {
+        if (groupIds.isEmpty()) {
             return List.of();
         }
+        final var device = deviceRepository.findByUuid(token);
+        if (device.isPresent()) {
+            if (device.get().getStatus() != Device.Status.ACTIVE)
+                return List.of();
+            if (device.get().getUser().getStatus() != User.Status.ACTIVE)
+                return List.of();
+            final var ret = repository.findByUserAndGroup_IdInAndDeletedFalse(device.get().getUser(), groupIds);
+            ret.forEach(T::switchId);
+            return ret;
+        } else
+            return List.of();
+    }
+
+    public int store(@NotNull final String uuid, @NotNull final Long now,
+            @Nullable final List<T> elements, @NotNull final ArrayList<T> ret) {
+        return store(uuid, now, elements, ret, false);
+    }
+
+    /**
+     * Store the non deleted elements, appending the stored copies to {@code ret}. Elements whose
+     * {@link BaseModel#fingerprint()} matches the stored row are left as they are: not written, not
+     * echoed, and their timestamp is not bumped, so other devices do not download them again.
+     * The working lists are reused from batch to batch, only the query results are allocated per batch
+     *
+     * @param echoIds append the {@link BaseModel#echo()} of the stored copies, without their content
+     * @return number of elements appended to {@code ret}
+     */
+    @SuppressWarnings("unchecked")
+    public int store(@NotNull final String uuid, @NotNull final Long now,
+            @Nullable final List<T> elements, @NotNull final ArrayList<T> ret, final boolean echoIds) {
+
+        if (elements == null || elements.isEmpty()) {
+            return 0;
+        }
 
-        List<T> ret = new ArrayList<>();
+        final var size = ret.size();
+        ret.ensureCapacity(size + elements.size());
 
         final var device = deviceRepository.findByUuid(uuid);
         if (device.isPresent()) {
             if (device.get().getStatus() != Device.Status.ACTIVE)
-                return List.of();
+                return 0;
             if (device.get().getUser().getStatus() != User.Status.ACTIVE)
-                return List.of();
+                return 0;
+
+            final var batch = scratch.get().clear();
+            final var stored = batch.rows;
+            final var originals = batch.originals;
+            final var current = currentStates(device.get().getUser(), elements, batch);
+            var unchanged = 0;
 
             for (final var it : elements) {
                 if (it.deleted) {
@@ -112,57 +201,110 @@ public abstract class BaseController<T extends BaseModel, Y extends BaseReposito
                 it.id = it.serverId;
                 it.serverId = tmp;
 
-                try {
-
-                    var original = new AtomicReference<T>();
-                    Optional.ofNullable(onStore).ifPresent(onStore -> original.set(onStore.perform(it)));
-
-                    final var base = (T) repository.save(original.get()).clone();
+                final var state = it.id == null ? null : current.get(it.id);
+                if (state != null) {
+                    if (it.version == null) {
+                        it.version = state.version();
+                    }
+                } else {
+                    loadVersion(device.get().getUser(), it);
+                }
 
-                    base.postStore(original.get());
+                var original = new AtomicReference<T>();
+                Optional.ofNullable(onStore).ifPresent(onStore -> original.set(onStore.perform(it)));
 
+                if (state != null && state.unchanged(original.get())) {
                     switch (this) {
-                        case @NotNull final GroupController gc -> {
-                            if (base instanceof final @NotNull Group g) {
-                                gc.add(g);
-                            }
-                        }
-                        case @NotNull final GroupFieldController gfc -> {
-                            if (base instanceof final @NotNull GroupField gf) {
-                                gfc.add(gf);
-                            }
-                        }
+                        case @NotNull final GroupController gc -> gc.add(original.get().serverId, state.id());
+                        case @NotNull final GroupFieldController gfc -> gfc.add(original.get().serverId, state.id());
                         default -> {
                         }
                     }
+                    unchanged++;
+                    continue;
+                }
+
+                final var base = repository.save(original.get());
+
+                // children later in the same batch resolve their parent through these maps
+                switch (this) {
+                    case @NotNull final GroupController gc -> gc.add(original.get().serverId, base.id);
+                    case @NotNull final GroupFieldController gfc -> gfc.add(original.get().serverId, base.id);
+                    default -> {
+                    }
+                }
 
-                    ret.add(base);
+                stored.add(base);
+                originals.add(original.get());
+            }
+
+            if (unchanged > 0) {
+                final var count = unchanged;
+                log.fine(() -> "Unchanged rows skipped, uuid:" + uuid + " count:" + count);
+            }
+
+            // versions are bumped on flush, the copies echoed to the client must carry the new ones
+            repository.flush();
+
+            for (int i = 0; i < stored.size(); i++) {
+                try {
+                    final var base = (T) stored.get(i).clone();
+                    base.postStore(originals.get(i));
+                    ret.add(echoIds ? (T) base.echo() : base);
                 } catch (CloneNotSupportedException e) {
                     throw new RuntimeException(e);
                 }
-
             }
+            batch.clear();
         }
 
-        return ret;
+        return ret.size() - size;
+    }
+
+    public int delete(@NotNull final String uuid, @NotNull final Long now,
+            @Nullable final List<T> elements, @NotNull final ArrayList<T> ret) {
+        return delete(uuid, now, elements, ret, false);
     }
 
+    /**
+     * Mark as deleted the elements flagged by the client, appending the updated copies to {@code ret}.
+     * The rows are read with one query per batch and written by the flush of the sync transaction
+     *
+     * @param echoIds append the {@link BaseModel#echo()} of the updated copies, without their content
+     * @return number of elements appended to {@code ret}
+     */
     @SuppressWarnings("unchecked")
-    @NotNull
-    public Iterable<T> delete(@NotNull final String uuid, @NotNull final Long now,
-            @Nullable final Iterable<T> elements) {
-        if (elements == null) {
-            return List.of();
+    public int delete(@NotNull final String uuid, @NotNull final Long now,
+            @Nullable final List<T> elements, @NotNull final ArrayList<T> ret, final boolean echoIds) {
+        if (elements == null || elements.isEmpty()) {
+            return 0;
         }
 
-        List<T> ret = new ArrayList<>();
+        final var size = ret.size();
 
         final var device = deviceRepository.findByUuid(uuid);
         if (device.isPresent()) {
             if (device.get().getStatus() != Device.Status.ACTIVE)
-                return List.of();
+                return 0;
             if (device.get().getUser().getStatus() != User.Status.ACTIVE)
-                return List.of();
+                return 0;
+
+            final var batch = scratch.get().clear();
+            for (final var it : elements) {
+                if (it.deleted && it.serverId != null && it.serverId != 0) {
+                    batch.ids.add(it.serverId);
+                }
+            }
+            if (batch.ids.isEmpty()) {
+                return 0;
+            }
+            // rows of another user are not found, their deletion is ignored like the one of an unknown row
+            repository.findByUserAndIdIn(device.get().getUser(), batch.ids).forEach(row -> batch.current.put(row.id, row));
+
+            // reused for the client ids of the rows in the deleted list
+            final var deleted = batch.rows;
+            final var clientIds = batch.ids;
+            clientIds.clear();
 
             for (final var it : elements) {
                 if (!it.deleted) {
@@ -175,29 +317,98 @@ public abstract class BaseController<T extends BaseModel, Y extends BaseReposito
                 it.id = it.serverId;
                 it.serverId = tmp;
 
-                var t = repository.findById(it.id);
-                if (t.isPresent()) {
-                    t.get().setDeleted(true);
-                    t.get().setTimestampLastUpdate(now);
+                if (it.id == null || it.id == 0) {
+                    continue;
+                }
 
-                    try {
-                        var elm = (T) repository.save(t.get()).clone();
+                final var row = batch.current.get(it.id);
+                if (row != null) {
+                    // already deleted, by another device or by the cascade of its group: acknowledged as it is
+                    if (row.deleted) {
+                        deleted.add(row);
+                        clientIds.add(tmp);
+                        continue;
+                    }
+                    if (it.version != null && !it.version.equals(row.version)) {
+                        throw new ObjectOptimisticLockingFailureException(row.getClass(), it.id);
+                    }
 
-                        elm.serverId = elm.id;
-                        elm.id = tmp;
+                    row.setDeleted(true);
+                    row.setTimestampLastUpdate(now);
 
-                        ret.add(elm);
-                    } catch (CloneNotSupportedException e) {
-                        log.severe(e.getMessage());
-                        return List.of();
-                    }
+                    deleted.add(row);
+                    clientIds.add(tmp);
+                }
+            }
+
+            repository.flush();
 
+            for (int i = 0; i < deleted.size(); i++) {
+                try {
+                    var elm = (T) deleted.get(i).clone();
+
+                    elm.serverId = elm.id;
+                    elm.id = clientIds.get(i);
+
+                    ret.add(echoIds ? (T) elm.echo() : elm);
+                } catch (CloneNotSupportedException e) {
+                    log.severe(e.getMessage());
+                    return ret.size() - size;
                 }
             }
-            return ret;
+            batch.clear();
+        }
+
+        return ret.size() - size;
+    }
+
+    /**
+     * Stored state of the live rows the client sent with a server id, by server id, one query per batch
+     */
+    @NotNull
+    private Map<Long, ContentState> currentStates(@NotNull final User user, @NotNull final List<T> elements,
+            @NotNull final Scratch<T> batch) {
+        final var ids = batch.ids;
+        for (final var it : elements) {
+            if (!it.deleted && it.serverId != null && it.serverId != 0) {
+                ids.add(it.serverId);
+            }
+        }
+        if (ids.isEmpty()) {
+            return batch.states;
         }
+        repository.findContentStates(user, ids).forEach(state -> batch.states.put(state.id(), state));
+        return batch.states;
+    }
+
+    /**
+     * New rows are inserted with a null id and version. Rows sent by clients unaware of versioning are
+     * compared against the current version, rows whose server id is not one of {@code user} are stored as new
+     */
+    private void loadVersion(@NotNull final User user, @NotNull final T element) {
+        if (element.id == null || element.id == 0) {
+            element.id = null;
+            element.version = null;
+        } else {
+            repository.findByUserAndId(user, element.id).ifPresentOrElse(
+                    current -> {
+                        if (element.version == null) {
+                            element.version = current.version;
+                        }
+                    },
+                    () -> {
+                        element.id = null;
+                        element.version = null;
+                    }
+            );
+        }
+    }
 
-        return List.of();
+    /**
+     * Drops the working lists of the current thread, called at the end of a persist
+     */
+    public void clean() {
+        scratch.remove();
     }
 
     public abstract void changePasswd(@NotNull final User user, @NotNull final Crypto aesOld,
@@ -51,6 +51,13 @@ abstract public class BaseModel<T extends BaseModel> implements Cloneable {
     @Column(nullable = false)
     protected Boolean deleted = false;
 
+    /**
+     * Optimistic lock, echoed to the client and expected back on the next persist; null for rows not stored yet
+     */
+    @Version
+    @Column(nullable = false)
+    protected Long version;
+
     @Column(name = "timestamp_creation")
     private Long timestampCreation = Instant.now(Clock.systemUTC()).getEpochSecond();
 
@@ -58,6 +65,13 @@ abstract public class BaseModel<T extends BaseModel> implements Cloneable {
     @Column(name = "timestamp_last_update")
     private Long timestampLastUpdate = 0L;
 
+    /**
+     * {@link #fingerprint()} of the stored content, refreshed on every write; null for rows not written since it was added
+     */
+    @JsonIgnore
+    @Column(name = "content_hash")
+    protected Long contentHash;
+
     @Override
     public Object clone() throws CloneNotSupportedException {
         return super.clone();
@@ -72,6 +86,38 @@ abstract public class BaseModel<T extends BaseModel> implements Cloneable {
 
     public abstract void postStore(final T t);
 
+    /**
+     * What a persist answers for a stored row: ids, parent ids, version and deleted flag. The client already
+     * has the content it sent, leaving it out keeps the answer small and does not hold the stored entities
+     */
+    @NotNull
+    public abstract T echo();
+
+    /**
+     * Copy the fields of this class to {@code echo}, for {@link #echo()}
+     */
+    @NotNull
+    protected T echo(@NotNull final T echo) {
+        echo.id = id;
+        echo.serverId = serverId;
+        echo.deleted = deleted;
+        echo.version = version;
+        echo.setTimestampCreation(timestampCreation);
+        echo.setTimestampLastUpdate(timestampLastUpdate);
+        return echo;
+    }
+
+    /**
+     * Hash of what the client sent and of the server ids of its parents, see {@link Fingerprint}
+     */
+    public abstract long fingerprint();
+
+    @PrePersist
+    @PreUpdate
+    void updateContentHash() {
+        contentHash = fingerprint();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o)
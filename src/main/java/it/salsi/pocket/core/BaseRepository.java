@@ -21,20 +21,65 @@ package it.salsi.pocket.core;
 
 import it.salsi.pocket.models.User;
 import org.jetbrains.annotations.NotNull;
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.NoRepositoryBean;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
 
 @NoRepositoryBean
-public interface BaseRepository<T> extends CrudRepository<T, Long> {
+public interface BaseRepository<T> extends JpaRepository<T, Long> {
+
+    Optional<T> findByUserAndId(@NotNull final User userId, @NotNull final Long id);
 
-    // Optional<T> findByUserAndId(@NotNull final User userId, @NotNull final Long
-    // id);
+    List<T> findByUserAndIdIn(@NotNull final User userId, @NotNull final Collection<Long> ids);
 
-    Iterable<T> findByUser(@NotNull final User userId);
+    List<T> findByUser(@NotNull final User userId);
 
-    Iterable<T> findByUserAndTimestampLastUpdateGreaterThanEqual(@NotNull final User userId,
+    List<T> findByUserAndTimestampLastUpdateGreaterThanEqual(@NotNull final User userId,
             @NotNull final Long dateTimeLastUpdate);
 
-    Iterable<T> findByUserAndDeletedAndTimestampLastUpdateLessThan(@NotNull final User userId, boolean deleted,
+    /**
+     * Rows changed in {@code [since, snapshot]} that follow {@code (afterTimestamp, afterId)},
+     * ordered by {@code (timestampLastUpdate, id)}
+     */
+    @Query("""
+            SELECT t FROM #{#entityName} t
+            WHERE t.user = :user AND t.timestampLastUpdate >= :since AND t.timestampLastUpdate <= :snapshot
+              AND (t.timestampLastUpdate > :afterTimestamp OR (t.timestampLastUpdate = :afterTimestamp AND t.id > :afterId))
+            ORDER BY t.timestampLastUpdate, t.id""")
+    List<T> findPage(@Param("user") @NotNull final User user, @Param("since") final long since,
+            @Param("snapshot") final long snapshot, @Param("afterTimestamp") final long afterTimestamp,
+            @Param("afterId") final long afterId, @NotNull final Limit limit);
+
+    /**
+     * Soft delete in one statement the live rows whose parent group is one of {@code groupIds}, their version
+     * is bumped as a save would; the persistence context is flushed before and cleared after
+     *
+     * @return rows marked as deleted
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("""
+            UPDATE #{#entityName} t SET t.deleted = true, t.timestampLastUpdate = :now, t.version = t.version + 1
+            WHERE t.user = :user AND t.group.id IN :groupIds AND t.deleted = false""")
+    int softDeleteByGroups(@Param("user") @NotNull final User user, @Param("groupIds") @NotNull final Collection<Long> groupIds,
+            @Param("now") final long now);
+
+    /**
+     * Version and content hash of the live rows of {@code user} among {@code ids}
+     */
+    @Query("""
+            SELECT new it.salsi.pocket.core.ContentState(t.id, t.version, t.contentHash) FROM #{#entityName} t
+            WHERE t.user = :user AND t.id IN :ids AND t.deleted = false""")
+    List<ContentState> findContentStates(@Param("user") @NotNull final User user, @Param("ids") @NotNull final Collection<Long> ids);
+
+    List<T> findByUserAndGroup_IdInAndDeletedFalse(@NotNull final User userId, @NotNull final Collection<Long> groupIds);
+
+    List<T> findByUserAndDeletedAndTimestampLastUpdateLessThan(@NotNull final User userId, boolean deleted,
             @NotNull final Long dateTimeLastUpdate);
 }
@@ -0,0 +1,268 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import it.salsi.commons.CommonsException;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.models.GroupField;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ContentTooLargeException;
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationFeature;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader of a {@link it.salsi.pocket.models.Container} upload.
+ * <p>
+ * Elements of {@code groups}, {@code groupFields} and {@code fields} are decoded one at a time,
+ * validated and handed to the matching {@link Section} in batches of {@code server.persist-batch-size},
+ * so the request body is never materialized as a whole.
+ * <p>
+ * An upload is read more than once: {@link #spool} takes it off the network into a {@link Spool}, parsing and
+ * validating every element on the way, then {@link #read} hands the elements of the spool to storage
+ * inside the sync transaction, which so never waits on the client nor opens for an invalid payload.
+ * {@link #read} goes through the spool once per section, in dependency order, so sections may come in
+ * any order and none is ever held in memory.
+ */
+@Log
+@Component
+public class ContainerReader {
+
+    /**
+     * Consumer of the batches of a section, the list is cleared and refilled for the next batch: it must not be kept
+     */
+    @FunctionalInterface
+    public interface Section<T> {
+        void accept(@NotNull final List<T> batch) throws CommonsException;
+    }
+
+    private static final String[] SECTIONS = {"groups", "groupFields", "fields"};
+
+    private static final Class<?>[] TYPES = {Group.class, GroupField.class, Field.class};
+
+    private static final Section<?> NONE = batch -> {
+    };
+
+    private @NotNull final JsonMapper jsonMapper;
+    private @NotNull final CBORMapper cborMapper;
+    private @NotNull final Validator validator;
+
+    @Value("${server.persist-batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${server.persist-spool-memory-bytes:1048576}")
+    private int spoolMemoryBytes = 1_048_576;
+
+    @Value("${server.persist-max-bytes:67108864}")
+    private long maxBytes = 67_108_864;
+
+    public ContainerReader(@Autowired @NotNull final JsonMapper jsonMapper,
+                           @Autowired @NotNull final CBORMapper cborMapper,
+                           @Autowired @NotNull final Validator validator) {
+        this.jsonMapper = jsonMapper;
+        this.cborMapper = cborMapper;
+        this.validator = validator;
+    }
+
+    /**
+     * Copy {@code in} to a new {@link Spool}, checking it is a {@link it.salsi.pocket.models.Container} whose
+     * elements are all valid
+     *
+     * @throws IllegalArgumentException           malformed payload
+     * @throws ConstraintViolationException       invalid element
+     * @throws ContentTooLargeException           payload over {@code server.persist-max-bytes}
+     */
+    @NotNull
+    public Spool spool(@NotNull final InputStream in, @Nullable final String contentType) throws CommonsException {
+        final var ret = new Spool(spoolMemoryBytes, maxBytes);
+        try {
+            parse(new TeeInputStream(in, ret), contentType, -1, NONE);
+            return ret;
+        } catch (final RuntimeException | CommonsException e) {
+            ret.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hand the elements of a {@link #spool}ed upload to the sections, already validated: all the groups first,
+     * then the group fields, then the fields
+     */
+    public void read(@NotNull final Spool spool,
+                     @Nullable final String contentType,
+                     @NotNull final Section<Group> groups,
+                     @NotNull final Section<GroupField> groupFields,
+                     @NotNull final Section<Field> fields) throws CommonsException {
+        final Section<?>[] sections = {groups, groupFields, fields};
+        for (int i = 0; i < sections.length; i++) {
+            try (final var in = spool.open()) {
+                parse(in, contentType, i, sections[i]);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param only index of the section handed to {@code section}, the others are skipped; with a negative index
+     *             every element is validated and dropped
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void parse(@NotNull final InputStream in,
+                       @Nullable final String contentType,
+                       final int only,
+                       @NotNull final Section section) throws CommonsException {
+        final var mapper = mapperOf(contentType);
+        try (final var parser = mapper.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Container payload must be an object");
+            }
+
+            while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+                final var idx = indexOf(parser.currentName());
+                final var token = parser.nextToken();
+                if (idx < 0 || token == JsonToken.VALUE_NULL) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (token != JsonToken.START_ARRAY) {
+                    throw new IllegalArgumentException(SECTIONS[idx] + " must be an array");
+                }
+
+                if (only < 0) {
+                    readArray(mapper, parser, TYPES[idx], true, section);
+                } else if (idx == only) {
+                    readArray(mapper, parser, TYPES[idx], false, section);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (final JacksonException e) {
+            throw new IllegalArgumentException("Malformed container payload: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    @NotNull
+    private ObjectMapper mapperOf(@Nullable final String contentType) {
+        if (contentType != null && MediaType.APPLICATION_CBOR.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            return cborMapper;
+        }
+        return jsonMapper;
+    }
+
+    private static int indexOf(@Nullable final String name) {
+        for (int i = 0; i < SECTIONS.length; i++) {
+            if (SECTIONS[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private <T> void readArray(@NotNull final ObjectMapper mapper,
+                               @NotNull final JsonParser parser,
+                               @NotNull final Class<T> type,
+                               final boolean check,
+                               @NotNull final Section<T> section) throws CommonsException {
+        final var reader = mapper.readerFor(type).without(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+        final var batch = new ArrayList<T>(batchSize);
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            final T element = reader.readValue(parser);
+            if (element == null) {
+                continue;
+            }
+
+            if (check) {
+                final var violations = validator.validate(element);
+                if (!violations.isEmpty()) {
+                    throw new ConstraintViolationException(violations);
+                }
+            }
+
+            batch.add(element);
+            if (batch.size() >= batchSize) {
+                section.accept(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            section.accept(batch);
+        }
+    }
+
+    /**
+     * Copies what the parser reads to the spool, bytes the parser never asks for are not needed
+     */
+    private static final class TeeInputStream extends FilterInputStream {
+
+        private @NotNull final OutputStream copy;
+
+        private TeeInputStream(@NotNull final InputStream in, @NotNull final OutputStream copy) {
+            super(in);
+            this.copy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final var ret = super.read();
+            if (ret >= 0) {
+                copy.write(ret);
+            }
+            return ret;
+        }
+
+        @Override
+        public int read(final byte @NotNull [] b, final int off, final int len) throws IOException {
+            final var ret = super.read(b, off, len);
+            if (ret > 0) {
+                copy.write(b, off, ret);
+            }
+            return ret;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final var buffer = new byte[(int) Math.min(n, 8_192)];
+            final var ret = read(buffer, 0, buffer.length);
+            return Math.max(ret, 0);
+        }
+    }
+}
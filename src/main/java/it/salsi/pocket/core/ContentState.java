@@ -0,0 +1,36 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Stored version and content hash of a live row, read in bulk by {@link BaseController#store}
+ */
+public record ContentState(@NotNull Long id, @NotNull Long version, @Nullable Long contentHash) {
+
+    /**
+     * A row written before hashes were kept is never taken as unchanged
+     */
+    public boolean unchanged(@NotNull final BaseModel<?> element) {
+        return contentHash != null && contentHash == element.fingerprint();
+    }
+}
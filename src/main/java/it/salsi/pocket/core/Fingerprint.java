@@ -0,0 +1,82 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 over a sequence of values, each string length prefixed so that adjacent values cannot
+ * be shifted into each other; {@link #get()} keeps the first 64 bits
+ */
+public final class Fingerprint {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private @NotNull final MessageDigest digest;
+    private @NotNull final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+
+    private Fingerprint() {
+        try {
+            digest = MessageDigest.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    }
+
+    @NotNull
+    public static Fingerprint of() {
+        return new Fingerprint();
+    }
+
+    /**
+     * A null string is told apart from an empty one
+     */
+    @NotNull
+    public Fingerprint add(@Nullable final String value) {
+        if (value == null) {
+            return add(-1L);
+        }
+        final var bytes = value.getBytes(StandardCharsets.UTF_8);
+        add(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+
+    @NotNull
+    public Fingerprint add(final long value) {
+        digest.update(buffer.clear().putLong(value).array());
+        return this;
+    }
+
+    @NotNull
+    public Fingerprint add(@Nullable final Boolean value) {
+        return add(value == null ? -1L : value ? 1L : 0L);
+    }
+
+    public long get() {
+        return ByteBuffer.wrap(digest.digest()).getLong();
+    }
+}
@@ -0,0 +1,147 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.web.server.ContentTooLargeException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Copy of an upload that can be read again once the network is done with it: in memory up to
+ * {@code threshold} bytes, in a temporary file past it, deleted on {@link #close()}. Writing past
+ * {@code maxBytes} closes the spool and throws {@link ContentTooLargeException}.
+ */
+@Log
+public final class Spool extends OutputStream {
+
+    private static final class Buffer extends ByteArrayOutputStream {
+        private Buffer(final int size) {
+            super(size);
+        }
+
+        @NotNull
+        private InputStream open() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
+    private final int threshold;
+
+    private final long maxBytes;
+
+    private long size;
+
+    private @Nullable Buffer memory;
+
+    private @Nullable Path file;
+
+    private @Nullable OutputStream out;
+
+    public Spool(final int threshold, final long maxBytes) {
+        this.threshold = threshold;
+        this.maxBytes = maxBytes;
+        this.memory = new Buffer(Math.min(threshold, 8_192));
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        sink(1).write(b);
+    }
+
+    @Override
+    public void write(final byte @NotNull [] b, final int off, final int len) throws IOException {
+        sink(len).write(b, off, len);
+    }
+
+    /**
+     * @return the bytes written so far, from the start
+     */
+    @NotNull
+    public InputStream open() throws IOException {
+        if (memory != null) {
+            return memory.open();
+        }
+        if (out != null) {
+            out.flush();
+        }
+        return new BufferedInputStream(Files.newInputStream(file));
+    }
+
+    public boolean inMemory() {
+        return memory != null;
+    }
+
+    @Override
+    public void close() {
+        memory = null;
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (final IOException e) {
+            log.warning("Spool not deleted: " + file + " " + e.getMessage());
+        } finally {
+            out = null;
+            file = null;
+        }
+    }
+
+    @NotNull
+    private OutputStream sink(final int len) throws IOException {
+        if (memory == null && out == null) {
+            throw new IOException("Spool closed");
+        }
+        size += len;
+        if (size > maxBytes) {
+            close();
+            throw new ContentTooLargeException(new IOException("Upload over " + maxBytes + " bytes"));
+        }
+        if (out != null) {
+            return out;
+        }
+        if (memory.size() + len <= threshold) {
+            return memory;
+        }
+        try {
+            file = Files.createTempFile("pocket-upload", ".spool");
+            out = new BufferedOutputStream(Files.newOutputStream(file));
+            memory.writeTo(out);
+            memory = null;
+            return out;
+        } catch (final IOException e) {
+            close();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import it.salsi.commons.CommonsException;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+/**
+ * Startup tasks run as soon as the tasks they depend on completed, independent ones in parallel.
+ * <p>
+ * A task is declared after its dependencies, so the graph cannot have cycles; a failed task skips the tasks
+ * depending on it while the others still run, {@link #run()} waits for all of them and rethrows the failure.
+ */
+@Log
+public final class StartupGraph {
+
+    @FunctionalInterface
+    public interface Task {
+        void run() throws CommonsException;
+    }
+
+    private record Node(@NotNull Task task, @NotNull String @NotNull [] dependsOn) {
+    }
+
+    @NotNull
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+
+    @NotNull
+    public StartupGraph add(@NotNull final String name, @NotNull final Task task, @NotNull final String @NotNull ... dependsOn) {
+        for (final var dependency : dependsOn) {
+            if (!nodes.containsKey(dependency)) {
+                throw new IllegalArgumentException("Startup task " + name + " depends on undeclared " + dependency);
+            }
+        }
+        nodes.put(name, new Node(task, dependsOn));
+        return this;
+    }
+
+    public void run() throws CommonsException {
+        final var futures = new HashMap<String, CompletableFuture<Void>>();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            nodes.forEach((name, node) -> {
+                final var dependencies = Arrays.stream(node.dependsOn())
+                        .map(futures::get)
+                        .toArray(CompletableFuture[]::new);
+                futures.put(name, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    final var start = System.nanoTime();
+                    try {
+                        node.task().run();
+                    } catch (final CommonsException e) {
+                        throw new CompletionException(e);
+                    }
+                    log.info(() -> "Startup task " + name + ": " + (System.nanoTime() - start) / 1_000_000 + " ms");
+                }, executor));
+            });
+            CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new)).join();
+        } catch (final CompletionException e) {
+            if (e.getCause() instanceof CommonsException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
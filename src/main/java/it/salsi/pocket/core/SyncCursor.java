@@ -0,0 +1,118 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import it.salsi.pocket.security.ApiPath;
+import it.salsi.pocket.security.SessionMac;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Position of a getData split in pages: groups, then group fields, then fields, each walked by keyset on
+ * {@code (timestamp_last_update, id)}.
+ * <p>
+ * Every page reads the rows changed in {@code [since, snapshot]}, {@code snapshot} being the login time the
+ * client resumes from once the last page is read. A row written while paging gets a timestamp of at least
+ * {@code snapshot}, so it is either read again further on or by the next sync, never lost.
+ * <p>
+ * On the wire the cursor is URL safe base64 followed by its {@link SessionMac}, signed with the key of the
+ * session that opened it: it cannot be altered and dies with the session.
+ */
+public record SyncCursor(int section, long since, long snapshot, long watermark,
+                         long timestamp, long id, int pageSize) {
+
+    public static final int GROUPS = 0;
+    public static final int GROUP_FIELDS = 1;
+    public static final int FIELDS = 2;
+
+    /**
+     * Response header carrying the cursor of the next page, absent on the last one
+     */
+    public static final String HEADER = "X-Pocket-Cursor";
+
+    private static final String DIVISOR = "|";
+    private static final String MAC_LABEL = "cursor" + DIVISOR;
+
+    /**
+     * @param watermark {@code sync_version} of the user at login, for {@link it.salsi.pocket.services.ReplicaRouter}
+     */
+    @NotNull
+    public static SyncCursor first(final long since, final long snapshot, final long watermark, final int pageSize) {
+        return new SyncCursor(GROUPS, since, snapshot, watermark, since - 1, 0, pageSize);
+    }
+
+    /**
+     * Same section, after the row at {@code (timestamp, id)}
+     */
+    @NotNull
+    public SyncCursor after(final long timestamp, final long id) {
+        return new SyncCursor(section, since, snapshot, watermark, timestamp, id, pageSize);
+    }
+
+    /**
+     * Start of the following section, null after the fields
+     */
+    @Nullable
+    public SyncCursor nextSection() {
+        return section == FIELDS ? null : new SyncCursor(section + 1, since, snapshot, watermark, since - 1, 0, pageSize);
+    }
+
+    @NotNull
+    public String encode(@NotNull final SecretKeySpec key) {
+        final var payload = Base64.getUrlEncoder().withoutPadding().encodeToString(
+                String.join(DIVISOR, Integer.toString(section), Long.toString(since), Long.toString(snapshot),
+                                Long.toString(watermark), Long.toString(timestamp), Long.toString(id),
+                                Integer.toString(pageSize))
+                        .getBytes(StandardCharsets.UTF_8));
+        return payload + SessionMac.sign(key, MAC_LABEL + payload);
+    }
+
+    /**
+     * Empty when the cursor is malformed or was not signed by {@code key}
+     */
+    @NotNull
+    public static Optional<SyncCursor> decode(@NotNull final String cursor, @NotNull final SecretKeySpec key) {
+        if (cursor.length() <= ApiPath.MAC_LENGTH) {
+            return Optional.empty();
+        }
+        final var payload = cursor.substring(0, cursor.length() - ApiPath.MAC_LENGTH);
+        if (!SessionMac.verify(key, MAC_LABEL + payload, cursor.substring(payload.length()))) {
+            return Optional.empty();
+        }
+
+        try {
+            final var split = new String(Base64.getUrlDecoder().decode(payload), StandardCharsets.UTF_8)
+                    .split("[" + DIVISOR + "]");
+            if (split.length != 7) {
+                return Optional.empty();
+            }
+            final var ret = new SyncCursor(Integer.parseInt(split[0]), Long.parseLong(split[1]), Long.parseLong(split[2]),
+                    Long.parseLong(split[3]), Long.parseLong(split[4]), Long.parseLong(split[5]), Integer.parseInt(split[6]));
+            return ret.section < GROUPS || ret.section > FIELDS || ret.pageSize <= 0 ? Optional.empty() : Optional.of(ret);
+        } catch (final IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+}
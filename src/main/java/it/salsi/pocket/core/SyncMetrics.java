@@ -0,0 +1,131 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.salsi.commons.CommonsException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Meters of the sync pipeline, exposed through {@code /actuator/prometheus}.
+ * <ul>
+ *     <li>{@code pocket.sync}: whole call, tagged by operation and returned status</li>
+ *     <li>{@code pocket.sync.stage}: one step of a call (decrypt, user lookup, read of the upload, query, write)</li>
+ *     <li>{@code pocket.sync.errors}: calls answered with one of the pocket error codes (600+)</li>
+ * </ul>
+ * Stage timers are registered once, recording is a nano time read and an array lookup.
+ */
+@Component
+public class SyncMetrics {
+
+    public enum Operation {
+        GET_DATA, GET_PAGE, GET_SUBTREE, PERSIST, CHANGE_PASSWD, HEARTBEAT;
+
+        private final @NotNull String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    public enum Stage {
+        DECRYPT, USER_LOOKUP, READ, QUERY, WRITE;
+
+        private final @NotNull String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    @FunctionalInterface
+    public interface Call<T> {
+        T call() throws CommonsException;
+    }
+
+    private static final int FIRST_ERROR_CODE = 600;
+
+    private @NotNull final MeterRegistry registry;
+    private @NotNull final Timer[][] stages;
+    private @NotNull final Map<Integer, Timer> totals = new ConcurrentHashMap<>();
+    private @NotNull final Map<Integer, Counter> errors = new ConcurrentHashMap<>();
+
+    public SyncMetrics(@Autowired @NotNull final MeterRegistry registry) {
+        this.registry = registry;
+        this.stages = new Timer[Operation.values().length][Stage.values().length];
+        for (final var operation : Operation.values()) {
+            for (final var stage : Stage.values()) {
+                stages[operation.ordinal()][stage.ordinal()] = Timer.builder("pocket.sync.stage")
+                        .description("Time spent in a step of a sync call")
+                        .tag("operation", operation.tag)
+                        .tag("stage", stage.tag)
+                        .publishPercentileHistogram()
+                        .register(registry);
+            }
+        }
+    }
+
+    public <T> T stage(@NotNull final Operation operation, @NotNull final Stage stage, @NotNull final Call<T> call) throws CommonsException {
+        final var start = System.nanoTime();
+        try {
+            return call.call();
+        } finally {
+            stages[operation.ordinal()][stage.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Time a whole call and count its error code, a call ended by an exception is recorded with status 500
+     */
+    public <T extends ResponseEntity<?>> T call(@NotNull final Operation operation, @NotNull final Call<T> call) throws CommonsException {
+        final var start = System.nanoTime();
+        T ret = null;
+        try {
+            return ret = call.call();
+        } finally {
+            record(operation, ret, System.nanoTime() - start);
+        }
+    }
+
+    private void record(@NotNull final Operation operation, @Nullable final ResponseEntity<?> response, final long nanos) {
+        final var status = response == null ? 500 : response.getStatusCode().value();
+        final var key = operation.ordinal() << 16 | status;
+
+        totals.computeIfAbsent(key, k -> Timer.builder("pocket.sync")
+                .description("Time spent in a sync call")
+                .tag("operation", operation.tag)
+                .tag("status", Integer.toString(status))
+                .publishPercentileHistogram()
+                .register(registry)
+        ).record(nanos, TimeUnit.NANOSECONDS);
+
+        if (status >= FIRST_ERROR_CODE) {
+            errors.computeIfAbsent(key, k -> Counter.builder("pocket.sync.errors")
+                    .description("Sync calls refused with a pocket error code")
+                    .tag("operation", operation.tag)
+                    .tag("code", Integer.toString(status))
+                    .register(registry)
+            ).increment();
+        }
+    }
+}
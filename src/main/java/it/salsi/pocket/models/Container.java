@@ -22,12 +22,14 @@ package it.salsi.pocket.models;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
+
 public record Container(
         @NotNull Long timestampLastUpdate,
         @Nullable User user,
         @Nullable Device device,
-        @NotNull Iterable<Group> groups,
+        @NotNull List<Group> groups,
 
-        @NotNull Iterable<GroupField> groupFields,
-        @NotNull Iterable<Field> fields
+        @NotNull List<GroupField> groupFields,
+        @NotNull List<Field> fields
 ) {}
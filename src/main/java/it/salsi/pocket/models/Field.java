@@ -21,7 +21,9 @@
 package it.salsi.pocket.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import it.salsi.pocket.core.BaseModel;
+import it.salsi.pocket.core.Fingerprint;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -42,15 +44,18 @@ public final class Field extends BaseModel<Field> {
     @Size(max = 256, message = "max size exceeded; maximum 256 char")
     @NotEmpty(message = "field empty")
     @NotNull(message = "field null")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false)
     private String title = "";
 
     @EqualsAndHashCode.Include
     @Size(max = 2048, message = "max size exceeded; maximum 2048 char")
     @NotNull(message = "field null")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false, length = 2048)
     private String value = "";
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false, name = "is_hidden")
     private Boolean isHidden = false;
 
@@ -118,6 +123,30 @@ public final class Field extends BaseModel<Field> {
         groupFieldId = field.getServerGroupFieldId();
     }
 
+    @Override
+    public @org.jetbrains.annotations.NotNull Field echo() {
+        final var ret = echo(new Field());
+        ret.title = null;
+        ret.value = null;
+        ret.isHidden = null;
+        ret.groupFieldId = groupFieldId;
+        ret.serverGroupFieldId = serverGroupFieldId;
+        ret.groupId = groupId;
+        ret.serverGroupId = serverGroupId;
+        return ret;
+    }
+
+    @Override
+    public long fingerprint() {
+        return Fingerprint.of()
+                .add(title)
+                .add(value)
+                .add(isHidden)
+                .add(group != null ? group.getId() : 0L)
+                .add(groupFieldId)
+                .get();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -24,6 +24,7 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import it.salsi.pocket.core.BaseModel;
+import it.salsi.pocket.core.Fingerprint;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -50,15 +51,18 @@ public final class Group extends BaseModel<Group> {
     @Size(max = 256, message = "max size exceeded; maximum 256 char")
     @NotEmpty(message = "field empty")
     @NotNull(message = "field null")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false)
     private String title = "";
 
     @Size(max = 256, message = "max size exceeded; maximum 256 char")
     @NotNull(message = "field null")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false)
     private String icon = "";
 
     @EqualsAndHashCode.Include
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column
     private String note = "";
 
@@ -139,6 +143,28 @@ public final class Group extends BaseModel<Group> {
 
     }
 
+    @Override
+    public @org.jetbrains.annotations.NotNull Group echo() {
+        final var ret = echo(new Group());
+        ret.title = null;
+        ret.icon = null;
+        ret.note = null;
+        ret.shared = shared;
+        ret.groupId = groupId;
+        ret.serverGroupId = serverGroupId;
+        return ret;
+    }
+
+    @Override
+    public long fingerprint() {
+        return Fingerprint.of()
+                .add(title)
+                .add(icon)
+                .add(note)
+                .add(group != null ? group.getId() : 0L)
+                .get();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -20,7 +20,9 @@
 package it.salsi.pocket.models;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import it.salsi.pocket.core.BaseModel;
+import it.salsi.pocket.core.Fingerprint;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -31,7 +33,6 @@ import org.hibernate.annotations.SQLRestriction;
 
 import java.util.Objects;
 
-
 @Getter
 @Setter
 @RequiredArgsConstructor
@@ -43,9 +44,11 @@ public final class GroupField extends BaseModel<GroupField> {
     @Size(max = 256, message = "max size exceeded; maximum 256 char")
     @NotEmpty(message = "field empty")
     @NotNull(message = "field null")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false)
     private String title = "";
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     @Column(nullable = false, name = "is_hidden")
     //@JsonProperty("hidden")
     private Boolean isHidden = false;
@@ -98,6 +101,25 @@ public final class GroupField extends BaseModel<GroupField> {
         groupId = groupField.getServerGroupId();
     }
 
+    @Override
+    public @org.jetbrains.annotations.NotNull GroupField echo() {
+        final var ret = echo(new GroupField());
+        ret.title = null;
+        ret.isHidden = null;
+        ret.groupId = groupId;
+        ret.serverGroupId = serverGroupId;
+        return ret;
+    }
+
+    @Override
+    public long fingerprint() {
+        return Fingerprint.of()
+                .add(title)
+                .add(isHidden)
+                .add(group != null ? group.getId() : 0L)
+                .get();
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -22,6 +22,23 @@ package it.salsi.pocket.repositories;
 
 import it.salsi.pocket.core.BaseRepository;
 import it.salsi.pocket.models.GroupField;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 public interface GroupFieldRepository extends BaseRepository<GroupField> {
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = """
+            DELETE FROM `group_fields`
+            WHERE `user_id` IN (:userIds) AND `deleted` = 1
+              AND `timestamp_last_update` < (SELECT MIN(d.`timestamp_last_update`) FROM `devices` d
+                                             WHERE d.`user_id` = `group_fields`.`user_id` AND d.`status` <> :invalidated)
+            LIMIT :limit""")
+    int purgeDeleted(@Param("userIds") @NotNull List<Long> userIds, @Param("invalidated") int invalidated, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -22,10 +22,13 @@ package it.salsi.pocket.repositories;
 
 import it.salsi.pocket.core.BaseRepository;
 import it.salsi.pocket.models.Group;
+import org.jetbrains.annotations.NotNull;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface GroupRepository extends BaseRepository<Group> {
@@ -37,4 +40,51 @@ public interface GroupRepository extends BaseRepository<Group> {
     @EntityGraph(attributePaths = {"groupFields"})
     @Query("SELECT g FROM groups g WHERE g.id = :id")
     Optional<Group> findByIdWithGroupFields(@Param("id") Long id);
-}
\ No newline at end of file
+
+    /**
+     * Soft deleted groups no longer referenced by any row, a parent becomes purgeable once its children are gone
+     */
+    @Query(nativeQuery = true, value = """
+            SELECT g.`id` FROM `groups` g
+            WHERE g.`user_id` IN (:userIds) AND g.`deleted` = 1
+              AND g.`timestamp_last_update` < (SELECT MIN(d.`timestamp_last_update`) FROM `devices` d
+                                               WHERE d.`user_id` = g.`user_id` AND d.`status` <> :invalidated)
+              AND NOT EXISTS (SELECT 1 FROM `groups` c WHERE c.`group_id` = g.`id`)
+              AND NOT EXISTS (SELECT 1 FROM `group_fields` gf WHERE gf.`group_id` = g.`id`)
+              AND NOT EXISTS (SELECT 1 FROM `fields` f WHERE f.`group_id` = g.`id`)
+            LIMIT :limit""")
+    List<Long> findPurgeable(@Param("userIds") @NotNull List<Long> userIds, @Param("invalidated") int invalidated, @Param("limit") int limit);
+
+    /**
+     * Ids of the live groups of the subtree rooted at {@code groupId}, or at the top level groups when it is
+     * {@code 0}, down to {@code depth} levels below the root; parents come before their children.
+     * Both steps go through {@code groups_user_parent}, the cost follows the size of the subtree.
+     */
+    @Query(nativeQuery = true, value = """
+            WITH RECURSIVE subtree (id, depth) AS (
+                SELECT g.`id`, 0 FROM `groups` g
+                WHERE g.`user_id` = :userId AND g.`deleted` = 0
+                  AND (g.`id` = :groupId OR (:groupId = 0 AND g.`group_id` IS NULL))
+                UNION ALL
+                SELECT c.`id`, s.depth + 1 FROM `groups` c JOIN subtree s ON c.`group_id` = s.id
+                WHERE c.`user_id` = :userId AND c.`deleted` = 0 AND s.depth < :depth
+            )
+            SELECT id FROM subtree ORDER BY depth, id""")
+    List<Long> findSubtree(@Param("userId") long userId, @Param("groupId") long groupId, @Param("depth") int depth);
+
+    /**
+     * Ids of {@code groupIds} and of every group below them, deleted or not, so live rows left under an
+     * already deleted group are reached as well; {@code depth} only guards against a cycle in the parent links
+     */
+    @Query(nativeQuery = true, value = """
+            WITH RECURSIVE subtree (id, depth) AS (
+                SELECT g.`id`, 0 FROM `groups` g
+                WHERE g.`user_id` = :userId AND g.`id` IN (:groupIds)
+                UNION ALL
+                SELECT c.`id`, s.depth + 1 FROM `groups` c JOIN subtree s ON c.`group_id` = s.id
+                WHERE c.`user_id` = :userId AND s.depth < :depth
+            )
+            SELECT DISTINCT id FROM subtree""")
+    List<Long> findSubtreeIds(@Param("userId") long userId, @Param("groupIds") @NotNull Collection<Long> groupIds,
+                              @Param("depth") int depth);
+}
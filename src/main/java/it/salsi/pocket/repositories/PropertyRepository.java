@@ -41,4 +41,7 @@ public interface PropertyRepository extends CrudRepository<Property, Long> {
     @NotNull
     List<Property> findAllByOrderByKey();
 
+    @NotNull
+    List<Property> findAllByUserId(@NotNull final Long userId);
+
 }
@@ -21,8 +21,14 @@ package it.salsi.pocket.repositories;
 
 import it.salsi.pocket.models.User;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends CrudRepository<User, Long> {
@@ -31,4 +37,18 @@ public interface UserRepository extends CrudRepository<User, Long> {
 
     Optional<User> findByEmail(@NotNull String email);
 
+    /**
+     * Moved in the transaction of every write to the vault of the user, whichever device made it
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE users SET sync_version = sync_version + 1 WHERE id = :id", nativeQuery = true)
+    void incrementSyncVersion(@Param("id") long id);
+
+    @Query(value = "SELECT sync_version FROM users WHERE id = :id", nativeQuery = true)
+    long findSyncVersion(@Param("id") long id);
+
+    @Query("SELECT u.id FROM users u WHERE u.id > :after AND u.status <> :status ORDER BY u.id")
+    List<Long> findIdsAfterAndStatusNot(@Param("after") long after, @Param("status") @NotNull User.Status status, @NotNull Limit limit);
+
 }
\ No newline at end of file
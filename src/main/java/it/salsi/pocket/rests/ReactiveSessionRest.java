@@ -0,0 +1,156 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.rests;
+
+import it.salsi.pocket.configs.ReactiveConfig;
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.security.RateLimiter;
+import it.salsi.pocket.services.IdempotencyStore;
+import it.salsi.pocket.core.SyncCursor;
+import it.salsi.pocket.models.Container;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * getData, persist and MAC heartbeat of {@link SessionRest} as reactive types, side by side under {@code rx/}.
+ * <p>
+ * The request thread only parses the path: the token is decrypted and the data read or stored by
+ * {@link SessionController} on the {@link ReactiveConfig#SYNC_SCHEDULER}, {@link it.salsi.pocket.security.AuthFilter}
+ * does not authenticate these paths itself. The request is already async when the filter returns, so
+ * authentication failures are handed to the {@link RateLimiter} here, once the status is known.
+ */
+@Log
+@RestController
+@RequestMapping("${server.api-version}/rx/")
+public class ReactiveSessionRest {
+
+        private @NotNull final SessionController sessionController;
+        private @NotNull final Scheduler scheduler;
+        private @NotNull final RateLimiter rateLimiter;
+
+        @Value("${server.rx.page-size:500}")
+        private int pageSize = 500;
+
+        public ReactiveSessionRest(@Autowired @NotNull final SessionController sessionController,
+                        @Autowired @Qualifier(ReactiveConfig.SYNC_SCHEDULER) @NotNull final Scheduler scheduler,
+                        @Autowired @NotNull final RateLimiter rateLimiter) {
+                this.sessionController = sessionController;
+                this.scheduler = scheduler;
+                this.rateLimiter = rateLimiter;
+        }
+
+        /**
+         * Logs in like getData, then streams the changes as newline delimited {@link Container} pages of at most
+         * {@code pageSize} elements; a page is read only once the previous one has been written. The status
+         * reflects the login, a page failing later (session gone) aborts the response.
+         */
+        @GetMapping(value = "/{uuid}/{crypt}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+        public @NotNull Mono<ResponseEntity<Flux<Container>>> getData(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
+                        @RequestParam(required = false) @Nullable final Integer pageSize,
+                        @NotNull final HttpServletRequest request) {
+                final var remoteIP = SessionController.getClientIP(request);
+                final var size = pageSize != null ? pageSize : this.pageSize;
+                return authenticated(uuid, request, () -> sessionController.getData(uuid, crypt, remoteIP, size))
+                                .map(first -> first.getStatusCode().is2xxSuccessful() && first.getBody() != null
+                                                ? ResponseEntity.ok().body(pages(uuid, first))
+                                                : ResponseEntity.status(first.getStatusCode()).build());
+        }
+
+        @PostMapping("/{uuid}/{crypt}")
+        public @NotNull Mono<ResponseEntity<Container>> persist(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
+                        @RequestHeader(name = IdempotencyStore.HEADER, required = false) @Nullable final String idempotencyKey,
+                        @RequestHeader(name = SessionController.ECHO_HEADER, required = false) @Nullable final String echo,
+                        @NotNull final HttpServletRequest request) throws IOException {
+                final var in = request.getInputStream();
+                final var contentType = request.getContentType();
+                final var remoteIP = SessionController.getClientIP(request);
+                final var echoIds = SessionController.ECHO_IDS.equalsIgnoreCase(echo);
+                return authenticated(uuid, request,
+                                () -> sessionController.persist(uuid, crypt, in, contentType, remoteIP, idempotencyKey, echoIds));
+        }
+
+        @GetMapping("/heartbeat/{uuid}/{timestampLastUpdate}/{mac}")
+        public @NotNull Mono<ResponseEntity<?>> macHeartbeat(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable final long timestampLastUpdate,
+                        @PathVariable @NotNull final String mac,
+                        @NotNull final HttpServletRequest request) {
+                return authenticated(uuid, request, () -> sessionController.macHeartbeat(uuid, timestampLastUpdate, mac));
+        }
+
+        @NotNull
+        private Flux<Container> pages(@NotNull final String uuid, @NotNull final ResponseEntity<Container> first) {
+                return Flux.just(first)
+                                .expand(page -> {
+                                        final var cursor = page.getHeaders().getFirst(SyncCursor.HEADER);
+                                        if (cursor == null) {
+                                                return Mono.empty();
+                                        }
+                                        // the status is already sent, aborting the response is the only way to tell the client
+                                        return call(() -> sessionController.getPage(uuid, cursor))
+                                                        .flatMap(next -> next.getStatusCode().is2xxSuccessful() && next.getBody() != null
+                                                                        ? Mono.just(next)
+                                                                        : Mono.error(new IllegalStateException("Page stream aborted, status:"
+                                                                                        + next.getStatusCode().value() + " uuid:" + uuid)));
+                                })
+                                .map(ResponseEntity::getBody);
+        }
+
+        /**
+         * {@link #call} recording the outcome in the {@link RateLimiter} like {@link it.salsi.pocket.security.AuthFilter}
+         * does for the blocking endpoints
+         */
+        @NotNull
+        private <T extends ResponseEntity<?>> Mono<T> authenticated(@NotNull final String uuid,
+                        @NotNull final HttpServletRequest request,
+                        @NotNull final Callable<T> callable) {
+                final var address = request.getRemoteAddr();
+                return call(callable).doOnNext(response -> {
+                        if (SessionController.ErrorCode.isAuthFailure(response.getStatusCode().value())) {
+                                rateLimiter.failure(uuid, address);
+                        } else if (response.getStatusCode().is2xxSuccessful()) {
+                                rateLimiter.success(uuid);
+                        }
+                });
+        }
+
+        @NotNull
+        private <T> Mono<T> call(@NotNull final Callable<T> callable) {
+                return Mono.fromCallable(callable).subscribeOn(scheduler);
+        }
+}
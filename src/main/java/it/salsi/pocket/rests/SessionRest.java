@@ -21,22 +21,27 @@ package it.salsi.pocket.rests;
 
 import it.salsi.commons.CommonsException;
 import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.services.IdempotencyStore;
 import it.salsi.pocket.models.Container;
 import jakarta.servlet.http.HttpServletRequest;
-import jakarta.validation.Valid;
-import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.Pattern;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+
+/**
+ * Path variables are checked once, by {@link it.salsi.pocket.security.AuthFilter} through
+ * {@link it.salsi.pocket.security.ApiPath}, before any of these methods is reached
+ */
 @Log
 @RestController
 @RequestMapping("${server.api-version}/")
-@Validated
 public class SessionRest {
 
         private @NotNull final SessionController sessionController;
@@ -47,25 +52,52 @@ public class SessionRest {
 
         @GetMapping("/{uuid}/{crypt}")
         public @NotNull ResponseEntity<Container> getData(
-                        @PathVariable @NotBlank(message = "UUID cannot be blank") @Pattern(regexp = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$", message = "UUID must be in valid format") @NotNull final String uuid,
-                        @PathVariable @NotBlank(message = "Crypt parameter cannot be blank") @Pattern(regexp = "^[A-Za-z0-9_-]{10,2048}={0,2}$", message = "Crypt parameter contains invalid characters or length") @NotNull final String crypt,
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
+                        @RequestParam(required = false) @Nullable final Integer pageSize,
                         @NotNull final HttpServletRequest request) throws CommonsException {
-                return sessionController.getData(uuid, crypt, SessionController.getClientIP(request));
+                return sessionController.getData(uuid, crypt, SessionController.getClientIP(request), pageSize);
+        }
+
+        @GetMapping(value = "/events/{uuid}/{mac}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+        public @NotNull ResponseEntity<SseEmitter> events(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String mac) {
+                return sessionController.events(uuid, mac);
+        }
+
+        @GetMapping("/subtree/{uuid}/{groupId}/{mac}")
+        public @NotNull ResponseEntity<Container> getSubtree(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable final long groupId,
+                        @PathVariable @NotNull final String mac,
+                        @RequestParam(defaultValue = "-1") final int depth) throws CommonsException {
+                return sessionController.getSubtree(uuid, groupId, depth, mac);
+        }
+
+        @GetMapping("/page/{uuid}/{cursor}")
+        public @NotNull ResponseEntity<Container> getPage(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String cursor) throws CommonsException {
+                return sessionController.getPage(uuid, cursor);
         }
 
         @PostMapping("/{uuid}/{crypt}")
         public @NotNull ResponseEntity<Container> persist(
-                        @PathVariable @NotBlank(message = "UUID cannot be blank") @Pattern(regexp = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$", message = "UUID must be in valid format") @NotNull final String uuid,
-                        @PathVariable @NotBlank(message = "Crypt parameter cannot be blank") @Pattern(regexp = "^[A-Za-z0-9_-]{10,2048}={0,2}$", message = "Crypt parameter contains invalid characters or length") @NotNull final String crypt,
-                        @Valid @NotNull @RequestBody final Container container,
-                        @NotNull final HttpServletRequest request) throws CommonsException {
-                return sessionController.persist(uuid, crypt, container, SessionController.getClientIP(request));
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
+                        @RequestHeader(name = IdempotencyStore.HEADER, required = false) @Nullable final String idempotencyKey,
+                        @RequestHeader(name = SessionController.ECHO_HEADER, required = false) @Nullable final String echo,
+                        @NotNull final HttpServletRequest request) throws CommonsException, IOException {
+                return sessionController.persist(uuid, crypt, request.getInputStream(), request.getContentType(),
+                                SessionController.getClientIP(request), idempotencyKey,
+                                SessionController.ECHO_IDS.equalsIgnoreCase(echo));
         }
 
         @PutMapping("/{uuid}/{crypt}/{changePasswdDataOnServer}")
         public @NotNull ResponseEntity<Boolean> changePasswd(
-                        @PathVariable @NotBlank(message = "UUID cannot be blank") @Pattern(regexp = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$", message = "UUID must be in valid format") @NotNull final String uuid,
-                        @PathVariable @NotBlank(message = "Crypt parameter cannot be blank") @Pattern(regexp = "^[A-Za-z0-9_-]{10,2048}={0,2}$", message = "Crypt parameter contains invalid characters or length") @NotNull final String crypt,
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
                         @PathVariable(required = false) @NotNull final Boolean changePasswdDataOnServer,
                         @NotNull final HttpServletRequest request) throws CommonsException {
                 return sessionController.changePasswd(uuid, crypt, changePasswdDataOnServer,
@@ -74,17 +106,25 @@ public class SessionRest {
 
         @DeleteMapping("/{uuid}/{crypt}")
         public @NotNull ResponseEntity<?> deleteCacheRecord(
-                        @PathVariable @NotBlank(message = "UUID cannot be blank") @Pattern(regexp = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$", message = "UUID must be in valid format") @NotNull final String uuid,
-                        @PathVariable @NotBlank(message = "Crypt parameter cannot be blank") @Pattern(regexp = "^[A-Za-z0-9_-]{10,2048}={0,2}$", message = "Crypt parameter contains invalid characters or length") @NotNull final String crypt)
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt)
                         throws CommonsException {
                 return sessionController.deleteCacheRecord(uuid, crypt);
         }
 
         @GetMapping("/heartbeat/{uuid}/{crypt}")
         public @NotNull ResponseEntity<?> heartbeat(
-                        @PathVariable @NotBlank(message = "UUID cannot be blank") @Pattern(regexp = "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$", message = "UUID must be in valid format") @NotNull final String uuid,
-                        @PathVariable @NotBlank(message = "Crypt parameter cannot be blank") @Pattern(regexp = "^[A-Za-z0-9_-]+={0,2}$", message = "Crypt parameter contains invalid characters or length") @NotNull final String crypt,
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable @NotNull final String crypt,
                         @NotNull final HttpServletRequest request) throws CommonsException {
                 return sessionController.heartbeat(uuid, crypt, SessionController.getClientIP(request));
         }
+
+        @GetMapping("/heartbeat/{uuid}/{timestampLastUpdate}/{mac}")
+        public @NotNull ResponseEntity<?> macHeartbeat(
+                        @PathVariable @NotNull final String uuid,
+                        @PathVariable final long timestampLastUpdate,
+                        @PathVariable @NotNull final String mac) throws CommonsException {
+                return sessionController.macHeartbeat(uuid, timestampLastUpdate, mac);
+        }
 }
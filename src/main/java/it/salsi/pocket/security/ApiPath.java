@@ -0,0 +1,223 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.security;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Single pass check of the API paths, {@code /api/v5/{uuid}/{crypt}[/...]}, the heartbeat forms
+ * {@code /api/v5/heartbeat/{uuid}/{crypt}} and {@code /api/v5/heartbeat/{uuid}/{timestampLastUpdate}/{mac}}
+ * the sync pages {@code /api/v5/page/{uuid}/{cursor}}, {@code /api/v5/subtree/{uuid}/{groupId}/{mac}},
+ * the change stream {@code /api/v5/events/{uuid}/{mac}} and the reactive getData, persist and MAC heartbeat
+ * under {@code /api/v5/rx/}.
+ * <p>
+ * Works on index ranges of the request URI, nothing is allocated and no regex is run.
+ * {@link AuthFilter} is the only place the path is validated, {@code SessionRest} relies on it.
+ */
+public final class ApiPath {
+
+    public enum Result {
+        /**
+         * Not under {@link #PREFIX}, left to the other filters
+         */
+        NOT_API,
+        HEARTBEAT,
+        PAGE,
+        SUBTREE,
+        EVENTS,
+        /**
+         * Under {@link #RX_PREFIX}, authenticated by the controller on its own scheduler
+         */
+        RX,
+        SESSION,
+        INVALID_PATH,
+        INVALID_UUID,
+        INVALID_CRYPT
+    }
+
+    public static final String PREFIX = "/api/v5/";
+    public static final String RX_PREFIX = PREFIX + "rx/";
+
+    private static final String HEARTBEAT_SEGMENT = "heartbeat/";
+    private static final String PAGE_SEGMENT = "page/";
+    private static final String SUBTREE_SEGMENT = "subtree/";
+    private static final String EVENTS_SEGMENT = "events/";
+
+    private static final String[] SEGMENTS = {HEARTBEAT_SEGMENT, PAGE_SEGMENT, SUBTREE_SEGMENT, EVENTS_SEGMENT};
+
+    public static final String HEARTBEAT_PREFIX = PREFIX + HEARTBEAT_SEGMENT;
+    public static final String PAGE_PREFIX = PREFIX + PAGE_SEGMENT;
+    public static final String SUBTREE_PREFIX = PREFIX + SUBTREE_SEGMENT;
+    public static final String EVENTS_PREFIX = PREFIX + EVENTS_SEGMENT;
+
+    public static final int UUID_LENGTH = 36;
+    public static final int CRYPT_MIN_LENGTH = 10;
+    public static final int CRYPT_MAX_LENGTH = 2048;
+    public static final int MAC_LENGTH = 43;
+
+    private static final int MAX_TIMESTAMP_DIGITS = 18;
+
+    private ApiPath() {
+    }
+
+    @NotNull
+    public static Result validate(@NotNull final String path) {
+        if (!path.startsWith(PREFIX)) {
+            return Result.NOT_API;
+        }
+        if (!path.startsWith(RX_PREFIX)) {
+            return validate(path, PREFIX.length());
+        }
+
+        // getData/persist with nothing after the crypt and the MAC heartbeat only
+        final var ret = validate(path, RX_PREFIX.length());
+        return switch (ret) {
+            case SESSION, HEARTBEAT -> {
+                final var cryptEnd = segmentEnd(path, segmentEnd(path, uuidStart(path, RX_PREFIX.length())) + 1);
+                yield (ret == Result.SESSION) == (cryptEnd == path.length()) ? Result.RX : Result.INVALID_PATH;
+            }
+            case PAGE, SUBTREE, EVENTS -> Result.INVALID_PATH;
+            default -> ret;
+        };
+    }
+
+    /**
+     * Index of the first char of the uuid in a path already accepted by {@link #validate(String)}
+     */
+    public static int uuidStart(@NotNull final String path) {
+        return uuidStart(path, path.startsWith(RX_PREFIX) ? RX_PREFIX.length() : PREFIX.length());
+    }
+
+    private static int uuidStart(@NotNull final String path, final int from) {
+        for (final var segment : SEGMENTS) {
+            if (path.startsWith(segment, from)) {
+                return from + segment.length();
+            }
+        }
+        return from;
+    }
+
+    @NotNull
+    private static Result validate(@NotNull final String path, final int from) {
+        final var heartbeat = path.startsWith(HEARTBEAT_SEGMENT, from);
+        final var page = !heartbeat && path.startsWith(PAGE_SEGMENT, from);
+        final var subtree = !heartbeat && !page && path.startsWith(SUBTREE_SEGMENT, from);
+        final var events = !heartbeat && !page && !subtree && path.startsWith(EVENTS_SEGMENT, from);
+        final var uuidStart = uuidStart(path, from);
+        final var uuidEnd = segmentEnd(path, uuidStart);
+        if (uuidEnd == path.length() || uuidEnd + 1 == path.length()) {
+            return Result.INVALID_PATH;
+        }
+        if (!isUuid(path, uuidStart, uuidEnd)) {
+            return Result.INVALID_UUID;
+        }
+
+        if (events) {
+            return isMac(path, uuidEnd + 1, path.length()) ? Result.EVENTS : Result.INVALID_CRYPT;
+        }
+
+        final var cryptEnd = segmentEnd(path, uuidEnd + 1);
+        if (subtree) {
+            return cryptEnd < path.length() && isTimestamp(path, uuidEnd + 1, cryptEnd) && isMac(path, cryptEnd + 1, path.length())
+                    ? Result.SUBTREE : Result.INVALID_CRYPT;
+        }
+        if (heartbeat && cryptEnd < path.length()) {
+            return isTimestamp(path, uuidEnd + 1, cryptEnd) && isMac(path, cryptEnd + 1, path.length())
+                    ? Result.HEARTBEAT : Result.INVALID_CRYPT;
+        }
+        if (!isCrypt(path, uuidEnd + 1, cryptEnd)) {
+            return Result.INVALID_CRYPT;
+        }
+        if (page) {
+            return cryptEnd == path.length() ? Result.PAGE : Result.INVALID_PATH;
+        }
+        return heartbeat ? Result.HEARTBEAT : Result.SESSION;
+    }
+
+    /**
+     * @return index of the {@code /} closing the segment starting at {@code from}, or the path length
+     */
+    public static int segmentEnd(@NotNull final String path, final int from) {
+        final var ret = path.indexOf('/', from);
+        return ret < 0 ? path.length() : ret;
+    }
+
+    /**
+     * Canonical 8-4-4-4-12 hex form, either case
+     */
+    public static boolean isUuid(@NotNull final CharSequence value, final int from, final int to) {
+        if (to - from != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            final var c = value.charAt(from + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * URL safe base64 of {@link #CRYPT_MIN_LENGTH} to {@link #CRYPT_MAX_LENGTH} chars, up to two {@code =} of padding
+     */
+    public static boolean isCrypt(@NotNull final CharSequence value, final int from, final int to) {
+        var end = to;
+        while (end > from && to - end < 2 && value.charAt(end - 1) == '=') {
+            end--;
+        }
+        final var length = end - from;
+        return length >= CRYPT_MIN_LENGTH && length <= CRYPT_MAX_LENGTH && isBase64Url(value, from, end);
+    }
+
+    /**
+     * HMAC-SHA256 as URL safe base64 without padding
+     */
+    public static boolean isMac(@NotNull final CharSequence value, final int from, final int to) {
+        return to - from == MAC_LENGTH && isBase64Url(value, from, to);
+    }
+
+    public static boolean isTimestamp(@NotNull final CharSequence value, final int from, final int to) {
+        if (to <= from || to - from > MAX_TIMESTAMP_DIGITS) {
+            return false;
+        }
+        for (int i = from; i < to; i++) {
+            final var c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBase64Url(@NotNull final CharSequence value, final int from, final int to) {
+        for (int i = from; i < to; i++) {
+            final var c = value.charAt(i);
+            if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -20,6 +20,7 @@
 package it.salsi.pocket.security;
 
 import it.salsi.commons.CommonsException;
+import it.salsi.pocket.controllers.SessionController;
 import it.salsi.pocket.repositories.DeviceRepository;
 import it.salsi.pocket.repositories.UserRepository;
 import it.salsi.pocket.services.CacheManager;
@@ -30,6 +31,8 @@ import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -40,7 +43,6 @@ import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
 import java.util.Base64;
 import java.util.Collections;
-import java.util.regex.Pattern;
 
 import static it.salsi.pocket.Constant.DIVISOR;
 import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
@@ -54,24 +56,19 @@ public class AuthFilter extends OncePerRequestFilter {
     private final @NotNull UserRepository userRepository;
     private final @NotNull EncoderHelper encoderHelper;
     private final @NotNull CacheManager cacheManager;
-
-    // Pattern per validare UUID
-    private static final Pattern UUID_PATTERN = Pattern.compile(
-            "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$");
-
-    // Pattern per validare crypt (Base64 URL safe)
-    private static final Pattern CRYPT_PATTERN = Pattern.compile(
-            "^[A-Za-z0-9_-]{10,2048}={0,2}$");
+    private final @NotNull RateLimiter rateLimiter;
 
     public AuthFilter(
             @Autowired @NotNull final DeviceRepository deviceRepository,
             @Autowired @NotNull final UserRepository userRepository,
             @Autowired @NotNull final EncoderHelper encoderHelper,
-            @Autowired @NotNull final CacheManager cacheManager) {
+            @Autowired @NotNull final CacheManager cacheManager,
+            @Autowired @NotNull final RateLimiter rateLimiter) {
         this.deviceRepository = deviceRepository;
         this.userRepository = userRepository;
         this.encoderHelper = encoderHelper;
         this.cacheManager = cacheManager;
+        this.rateLimiter = rateLimiter;
     }
 
     @Override
@@ -81,75 +78,73 @@ public class AuthFilter extends OncePerRequestFilter {
             @NotNull FilterChain filterChain) throws ServletException, IOException {
 
         final var requestURI = request.getRequestURI();
+        final var result = ApiPath.validate(requestURI);
 
-        // Skip authentication for heartbeat endpoint (handled by controller with 3-part
-        // token)
-        if (requestURI.startsWith("/api/v5/heartbeat/")) {
-            final var authorities = Collections.singletonList(new SimpleGrantedAuthority("USER"));
-            final var authToken = new UsernamePasswordAuthenticationToken("anonymous", null, authorities);
-            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-            SecurityContextHolder.getContext().setAuthentication(authToken);
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        // Skip authentication for non-API endpoints and test endpoint
-        if (!requestURI.startsWith("/api/v5/")) {
+        switch (result) {
+            // Skip authentication for non-API endpoints
+            case NOT_API -> {
+                filterChain.doFilter(request, response);
+                return;
+            }
+            // Heartbeat, sync pages, subtrees, change streams and the reactive endpoints are authenticated
+            // by the controller (3-part token, session MAC, signed cursor or the full token off the request thread)
+            case HEARTBEAT, PAGE, SUBTREE, EVENTS, RX -> {
+                final var uuidStart = ApiPath.uuidStart(requestURI);
+                final var uuid = requestURI.substring(uuidStart, ApiPath.segmentEnd(requestURI, uuidStart));
+                final var remoteIP = request.getRemoteAddr();
+                if (tooManyRequests(uuid, remoteIP, response)) {
+                    return;
+                }
 
-            // For API endpoints that we're skipping, set a dummy authentication context
-            // so Spring Security doesn't block them
-            if (requestURI.startsWith("/api/v5/")) {
                 final var authorities = Collections.singletonList(new SimpleGrantedAuthority("USER"));
                 final var authToken = new UsernamePasswordAuthenticationToken("anonymous", null, authorities);
                 authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authToken);
+                filterChain.doFilter(request, response);
+                // an async request (rx) has no status yet, its controller records the outcome
+                if (!request.isAsyncStarted() && SessionController.ErrorCode.isAuthFailure(response.getStatus())) {
+                    rateLimiter.failure(uuid, remoteIP);
+                }
+                return;
             }
-
-            filterChain.doFilter(request, response);
-            return;
-        }
-
-        try {
-            // Extract UUID and crypt from path
-            final var pathParts = requestURI.split("/");
-
-            // Pattern: /api/v5/{uuid}/{crypt}/[optional additional params]
-            // Minimum required: /api/v5/{uuid}/{crypt} = 5 parts
-            if (pathParts.length < 5) {
-                log.warning("DEBUG: Path too short, length: " + pathParts.length);
+            case INVALID_PATH -> {
+                log.warning("Invalid API path format");
                 sendUnauthorized(response, "Invalid API path format");
                 return;
             }
-
-            // UUID is always at position 3, crypt at position 4
-            // Additional path parameters (if any) are at position 5+
-            String uuid = pathParts[3];
-            String crypt = pathParts[4];
-
-            log.info("DEBUG: Extracted UUID: " + uuid);
-            log.info("DEBUG: Extracted crypt length: " + crypt.length());
-
-            // Validate input format
-            if (!isValidUUID(uuid)) {
-                log.warning("DEBUG: UUID validation failed: " + uuid);
+            case INVALID_UUID -> {
+                log.warning("UUID validation failed");
                 sendUnauthorized(response, "Invalid UUID format");
                 return;
             }
-
-            log.info("DEBUG: UUID validation passed");
-
-            if (!isValidCrypt(crypt)) {
-                log.warning("DEBUG: Crypt validation failed");
+            case INVALID_CRYPT -> {
+                log.warning("Crypt validation failed");
                 sendUnauthorized(response, "Invalid crypt format");
                 return;
             }
+            case SESSION -> log.fine(() -> "Path validation passed");
+        }
+
+        // Pattern: /api/v5/{uuid}/{crypt}/[optional additional params], already validated
+        final var uuidEnd = ApiPath.segmentEnd(requestURI, ApiPath.PREFIX.length());
+        final var uuid = requestURI.substring(ApiPath.PREFIX.length(), uuidEnd);
+        final var crypt = requestURI.substring(uuidEnd + 1, ApiPath.segmentEnd(requestURI, uuidEnd + 1));
+        // the rate limiter key, X-Forwarded-For is applied by Tomcat only for trusted proxies
+        final var remoteIP = request.getRemoteAddr();
 
-            log.info("DEBUG: Crypt validation passed");
+        log.fine(() -> "Extracted UUID: " + uuid);
+        log.fine(() -> "Extracted crypt length: " + crypt.length());
 
+        // Throttled callers never reach the RSA decrypt or the database
+        if (tooManyRequests(uuid, remoteIP, response)) {
+            return;
+        }
+
+        try {
             // Authenticate user
-            log.info("DEBUG: Starting authentication for UUID: " + uuid);
+            log.fine(() -> "Starting authentication for UUID: " + uuid);
             if (authenticateUser(uuid, crypt, request)) {
-                log.info("DEBUG: Authentication successful for UUID: " + uuid);
+                log.fine(() -> "Authentication successful for UUID: " + uuid);
                 // Set authentication in security context
                 var authentication = new UsernamePasswordAuthenticationToken(
                         uuid,
@@ -158,7 +153,8 @@ public class AuthFilter extends OncePerRequestFilter {
                 authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 SecurityContextHolder.getContext().setAuthentication(authentication);
             } else {
-                log.warning("DEBUG: Authentication failed for UUID: " + uuid);
+                log.warning("Authentication failed for UUID: " + uuid);
+                rateLimiter.failure(uuid, remoteIP);
                 sendUnauthorized(response, "Authentication failed");
                 return;
             }
@@ -169,22 +165,28 @@ public class AuthFilter extends OncePerRequestFilter {
         }
 
         filterChain.doFilter(request, response);
-    }
-
-    private boolean isValidUUID(@NotNull final String uuid) {
-        if (uuid == null || uuid.trim().isEmpty()) {
-            return false;
+        if (SessionController.ErrorCode.isAuthFailure(response.getStatus())) {
+            rateLimiter.failure(uuid, remoteIP);
+        } else if (response.getStatus() < HttpServletResponse.SC_BAD_REQUEST) {
+            rateLimiter.success(uuid);
         }
-        return UUID_PATTERN.matcher(uuid).matches();
     }
 
-    private boolean isValidCrypt(String crypt) {
-        if (crypt == null || crypt.length() > 2048) {
-            log.warning("Crypt validation failed - null or too long: " + (crypt != null ? crypt.length() : "null"));
+    /**
+     * Answers 429 with Retry-After when the device or the address is over its budget or backing off
+     */
+    private boolean tooManyRequests(@NotNull final String uuid, @NotNull final String remoteIP,
+            @NotNull final HttpServletResponse response) throws IOException {
+        final var waitMillis = rateLimiter.acquire(uuid, remoteIP);
+        if (waitMillis == 0) {
             return false;
         }
-
-        return CRYPT_PATTERN.matcher(crypt).matches();
+        log.fine(() -> "Rate limited UUID: " + uuid + " from " + remoteIP);
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf((waitMillis + 999) / 1000));
+        response.setContentType("application/json");
+        response.getWriter().write("{\"error\":\"Too many requests\"}");
+        return true;
     }
 
     private boolean authenticateUser(@NotNull final String uuid, @NotNull final String crypt,
@@ -193,7 +195,7 @@ public class AuthFilter extends OncePerRequestFilter {
             // Find device by UUID
             final var optDevice = deviceRepository.findByUuid(uuid);
             if (optDevice.isEmpty()) {
-                log.warning("DEBUG: Device not found for UUID: " + uuid);
+                log.warning("Device not found for UUID: " + uuid);
                 return false;
             }
 
@@ -209,20 +211,20 @@ public class AuthFilter extends OncePerRequestFilter {
             final var decryptSplit = decrypted.split("[" + DIVISOR.value + "]");
 
             if (decryptSplit.length != 5 && decryptSplit.length != 6) {
-                log.warning("DEBUG: Invalid token parts count. Expected 5 or 6, got: " + decryptSplit.length);
+                log.warning("Invalid token parts count. Expected 5 or 6, got: " + decryptSplit.length);
                 return false;
             }
 
             // Validate device ID
             long tokenDeviceId = Long.parseLong(decryptSplit[0]);
             if (tokenDeviceId != device.getId()) {
-                log.warning("DEBUG: Device ID mismatch");
+                log.warning("Device ID mismatch");
                 return false;
             }
 
             // Validate secret is not empty
             if (decryptSplit[1].isEmpty()) {
-                log.warning("DEBUG: Secret is empty");
+                log.warning("Secret is empty");
                 return false;
             }
 
@@ -233,7 +235,7 @@ public class AuthFilter extends OncePerRequestFilter {
             final var optUser = userRepository.findByEmailAndPasswd(email, hashedPassword);
 
             if (optUser.isEmpty()) {
-                log.warning("DEBUG: User not found or password mismatch for email: " + email);
+                log.warning("User not found or password mismatch for email: " + email);
                 return false;
             }
 
@@ -34,8 +34,17 @@ import java.util.Base64;
 @Log
 public class EncoderHelper {
 
-    @Nullable
-    private MessageDigest md;
+    /**
+     * MessageDigest keeps state between update and digest, one instance per thread
+     */
+    private static final ThreadLocal<MessageDigest> MD = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            log.severe(e.getLocalizedMessage());
+            return null;
+        }
+    });
 
     @Value("${server.aes.cbc.iv}")
     @Nullable
@@ -46,14 +55,9 @@ public class EncoderHelper {
 
     @NotNull
     public String encode(@NotNull final CharSequence rawPassword) {
-
+        final var md = MD.get();
         if (md == null) {
-            try {
-                md = MessageDigest.getInstance("SHA-512");
-            } catch (NoSuchAlgorithmException e) {
-                log.severe(e.getLocalizedMessage());
-                return "";
-            }
+            return "";
         }
 
         return bytesToHex(md.digest(rawPassword.toString().getBytes()));
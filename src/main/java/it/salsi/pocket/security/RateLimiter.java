@@ -0,0 +1,295 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.security;
+
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Token buckets per device uuid and per client address, checked by {@link AuthFilter} before any
+ * RSA decrypt or database lookup.
+ * <p>
+ * A bucket is a single {@link AtomicLong} holding the theoretical arrival time of the next request
+ * (GCRA): a request is let through while that time is less than {@code burst} intervals ahead,
+ * and takes one interval with a CAS. The address is checked first, a device bucket is looked up only
+ * for requests its address lets through.
+ * Repeated authentication failures block the key with an exponential backoff, reset by a success.
+ * <p>
+ * Both keys come from the caller, so each table is swept back under {@code max-entries} buckets once a new
+ * key goes past it, idle buckets first, then approximately the least recently used ones. The address is
+ * {@link jakarta.servlet.ServletRequest#getRemoteAddr()}, which honours {@code X-Forwarded-For} only when
+ * it comes from a proxy listed in {@code server.tomcat.remoteip.internal-proxies}.
+ */
+@Log
+@Component
+public class RateLimiter {
+
+    private static final class Bucket {
+        private final AtomicLong theoreticalArrival = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long lastFailure;
+        private volatile long blockedUntil;
+        private volatile long lastAccess;
+    }
+
+    /**
+     * Access times read to pick the least recently used buckets of a sweep
+     */
+    private static final int SAMPLE = 1_024;
+
+    /**
+     * A {@link ConcurrentHashMap} of buckets: a known key is a plain read, a new one locks only its hash bin.
+     * Recency is a counter stamped on every access; past {@code max-entries} one thread at a time sweeps the
+     * idle buckets, then the least recently used ones, found on a sample, down to 7/8 of the cap
+     */
+    private final class Buckets {
+        private final @NotNull ConcurrentHashMap<String, Bucket> map = new ConcurrentHashMap<>();
+        private final @NotNull AtomicLong clock = new AtomicLong();
+        private final @NotNull AtomicBoolean sweeping = new AtomicBoolean();
+
+        @NotNull
+        private Bucket get(@NotNull final String key, final long now) {
+            var ret = map.get(key);
+            if (ret == null) {
+                ret = map.computeIfAbsent(key, k -> new Bucket());
+                ret.lastAccess = clock.incrementAndGet();
+                if (map.size() > maxEntries) {
+                    sweep(now);
+                }
+            } else {
+                ret.lastAccess = clock.incrementAndGet();
+            }
+            return ret;
+        }
+
+        @Nullable
+        private Bucket peek(@NotNull final String key) {
+            return map.get(key);
+        }
+
+        private int removeIf(@NotNull final Predicate<Bucket> filter) {
+            var ret = 0;
+            for (final var it = map.values().iterator(); it.hasNext(); ) {
+                if (filter.test(it.next())) {
+                    it.remove();
+                    ret++;
+                }
+            }
+            return ret;
+        }
+
+        private int size() {
+            return map.size();
+        }
+
+        private void sweep(final long now) {
+            if (!sweeping.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                removeIf(bucket -> isIdle(bucket, now));
+                final var size = map.size();
+                final var excess = size - (maxEntries - maxEntries / 8);
+                if (excess <= 0) {
+                    return;
+                }
+
+                // the iteration order of the map follows the key hashes, its first entries are a fair sample
+                final var sample = new long[Math.min(SAMPLE, size)];
+                var count = 0;
+                for (final var bucket : map.values()) {
+                    if (count == sample.length) {
+                        break;
+                    }
+                    sample[count++] = bucket.lastAccess;
+                }
+                if (count == 0) {
+                    return;
+                }
+                Arrays.sort(sample, 0, count);
+                final var cutoff = sample[(int) Math.min(count - 1, (long) count * excess / size)];
+                removeIf(bucket -> bucket.lastAccess <= cutoff);
+            } finally {
+                sweeping.set(false);
+            }
+        }
+    }
+
+    @Value("${server.rate-limit.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${server.rate-limit.device-per-second:5}")
+    private double devicePerSecond = 5;
+
+    @Value("${server.rate-limit.device-burst:20}")
+    private int deviceBurst = 20;
+
+    @Value("${server.rate-limit.address-per-second:50}")
+    private double addressPerSecond = 50;
+
+    @Value("${server.rate-limit.address-burst:200}")
+    private int addressBurst = 200;
+
+    @Value("${server.rate-limit.device-backoff-after:3}")
+    private int deviceBackoffAfter = 3;
+
+    @Value("${server.rate-limit.address-backoff-after:20}")
+    private int addressBackoffAfter = 20;
+
+    @Value("${server.rate-limit.backoff-base-ms:1000}")
+    private long backoffBaseMs = 1_000;
+
+    @Value("${server.rate-limit.backoff-max-ms:300000}")
+    private long backoffMaxMs = 300_000;
+
+    @Value("${server.rate-limit.max-entries:100000}")
+    private int maxEntries = 100_000;
+
+    private final @NotNull Buckets devices = new Buckets();
+    private final @NotNull Buckets addresses = new Buckets();
+
+    private final @NotNull LongSupplier nanoTime;
+
+    /**
+     * {@link System#nanoTime()} may be negative, times are kept relative to this origin so 0 means "free"
+     */
+    private final long origin;
+
+    public RateLimiter() {
+        this(System::nanoTime);
+    }
+
+    RateLimiter(@NotNull final LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.origin = nanoTime.getAsLong() - 1;
+    }
+
+    /**
+     * @return 0 when the request can go on, otherwise the milliseconds to wait before retrying
+     */
+    public long acquire(@NotNull final String uuid, @NotNull final String address) {
+        if (!enabled) {
+            return 0;
+        }
+        final var now = nanoTime.getAsLong() - origin;
+        final var client = addresses.get(address, now);
+        var wait = client.blockedUntil - now;
+        if (wait <= 0) {
+            wait = take(client, now, addressPerSecond, addressBurst);
+        }
+        // an address over budget does not get to create device buckets
+        if (wait <= 0) {
+            final var device = devices.get(uuid, now);
+            wait = device.blockedUntil - now;
+            if (wait <= 0) {
+                wait = take(device, now, devicePerSecond, deviceBurst);
+            }
+        }
+        return wait <= 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait));
+    }
+
+    public void failure(@NotNull final String uuid, @NotNull final String address) {
+        if (!enabled) {
+            return;
+        }
+        final var now = nanoTime.getAsLong() - origin;
+        backoff(devices.get(uuid, now), now, deviceBackoffAfter);
+        backoff(addresses.get(address, now), now, addressBackoffAfter);
+    }
+
+    /**
+     * Clears the failures of the device, the address keeps its own count since several devices can share it
+     */
+    public void success(@NotNull final String uuid) {
+        final var device = devices.peek(uuid);
+        if (device != null && device.failures.get() != 0) {
+            device.failures.set(0);
+            device.blockedUntil = 0;
+        }
+    }
+
+    /**
+     * Drops the buckets that are full again and not blocked
+     */
+    public void evictIdle() {
+        final var now = nanoTime.getAsLong() - origin;
+        final var removed = devices.removeIf(bucket -> isIdle(bucket, now))
+                + addresses.removeIf(bucket -> isIdle(bucket, now));
+        if (removed > 0) {
+            log.fine(() -> "Rate limiter evicted " + removed + " idle buckets");
+        }
+    }
+
+    /**
+     * @return buckets held, devices and addresses together
+     */
+    public int size() {
+        return devices.size() + addresses.size();
+    }
+
+    /**
+     * @return nanoseconds to wait, not positive when a token has been taken
+     */
+    private static long take(@NotNull final Bucket bucket, final long now, final double perSecond, final int burst) {
+        final var interval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+        final var tolerance = interval * (burst - 1);
+        while (true) {
+            final var current = bucket.theoreticalArrival.get();
+            final var start = Math.max(current, now);
+            final var wait = start - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.theoreticalArrival.compareAndSet(current, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    private void backoff(@NotNull final Bucket bucket, final long now, final int after) {
+        if (bucket.lastFailure != 0 && now - bucket.lastFailure > TimeUnit.MILLISECONDS.toNanos(backoffMaxMs)) {
+            bucket.failures.set(0);
+        }
+        bucket.lastFailure = now;
+        final var failures = bucket.failures.incrementAndGet();
+        if (failures >= after) {
+            final var delay = Math.min(backoffMaxMs, backoffBaseMs << Math.min(failures - after, 20));
+            bucket.blockedUntil = now + TimeUnit.MILLISECONDS.toNanos(delay);
+        }
+    }
+
+    private boolean isIdle(@NotNull final Bucket bucket, final long now) {
+        return bucket.theoreticalArrival.get() <= now
+                && bucket.blockedUntil <= now
+                && (bucket.failures.get() == 0 || now - bucket.lastFailure > TimeUnit.MILLISECONDS.toNanos(backoffMaxMs));
+    }
+}
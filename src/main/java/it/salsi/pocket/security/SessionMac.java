@@ -0,0 +1,89 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.security;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * HMAC-SHA256 of a session, keyed by the secret the client sent in its last RSA token.
+ * <p>
+ * The key is {@code HMAC(secret, "pocket-heartbeat")} so the raw secret is never used twice,
+ * MACs travel as URL safe base64 without padding.
+ */
+public final class SessionMac {
+
+    public static final String ALGORITHM = "HmacSHA256";
+
+    private static final byte[] KEY_LABEL = "pocket-heartbeat".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Mac is stateful, one instance per thread
+     */
+    private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " not available", e);
+        }
+    });
+
+    private SessionMac() {
+    }
+
+    @NotNull
+    public static SecretKeySpec deriveKey(@NotNull final String secret) {
+        return new SecretKeySpec(mac(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM), KEY_LABEL), ALGORITHM);
+    }
+
+    @NotNull
+    public static String sign(@NotNull final SecretKeySpec key, @NotNull final String message) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac(key, message.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Constant time comparison, a malformed MAC is a mismatch
+     */
+    public static boolean verify(@NotNull final SecretKeySpec key, @NotNull final String message, @NotNull final String mac) {
+        final byte[] received;
+        try {
+            received = Base64.getUrlDecoder().decode(mac);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(mac(key, message.getBytes(StandardCharsets.UTF_8)), received);
+    }
+
+    private static byte @NotNull [] mac(@NotNull final SecretKeySpec key, final byte @NotNull [] message) {
+        final var mac = MAC.get();
+        try {
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Invalid session key", e);
+        }
+        return mac.doFinal(message);
+    }
+}
@@ -21,12 +21,15 @@ package it.salsi.pocket.services;
 
 import it.salsi.pocket.models.Device;
 import it.salsi.pocket.security.RSAHelper;
+import it.salsi.pocket.security.SessionMac;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import javax.crypto.spec.SecretKeySpec;
 import java.util.Optional;
 
 public interface CacheManager {
@@ -42,6 +45,10 @@ public interface CacheManager {
         @NotNull RSAHelper rsaHelper;
         long timestampLastUpdate;
 
+        @Getter(lombok.AccessLevel.NONE)
+        @Setter(lombok.AccessLevel.NONE)
+        @Nullable SecretKeySpec macKey;
+
         public CacheRecord(
                 @NotNull String uuid,
                 @NotNull String secret,
@@ -55,10 +62,32 @@ public interface CacheManager {
             this.rsaHelper = rsaHelper;
             this.timestampLastUpdate = timestampLastUpdate;
         }
+
+        public void setSecret(@NotNull final String secret) {
+            this.secret = secret;
+            this.macKey = null;
+        }
+
+        /**
+         * Heartbeat MAC key, derived from {@link #secret} on first use
+         */
+        @NotNull
+        public SecretKeySpec getMacKey() {
+            var ret = macKey;
+            if (ret == null) {
+                ret = macKey = SessionMac.deriveKey(secret);
+            }
+            return ret;
+        }
     }
 
     boolean add(@NotNull final CacheRecord record);
 
+    /**
+     * Stores the changes made in place to a record returned by {@link #get(String)}
+     */
+    void update(@NotNull final CacheRecord record);
+
     @NotNull Optional<CacheRecord> get(@NotNull final CacheRecord record);
 
     @NotNull Optional<CacheRecord> get(@NotNull final String uuid);
@@ -19,62 +19,63 @@
 
 package it.salsi.pocket.services;
 
-import it.salsi.pocket.models.User;
-import it.salsi.pocket.repositories.PropertyRepository;
-import it.salsi.pocket.repositories.UserRepository;
-import it.salsi.pocket.security.EncoderHelper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.java.Log;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import java.time.Clock;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static it.salsi.pocket.Constant.*;
+import static it.salsi.pocket.services.InvalidationBus.InvalidationEvent;
 import static java.time.Instant.ofEpochSecond;
 
+/**
+ * Sessions held by this node only, the default {@code server.session-store: local}
+ */
 @Log
 @Service
+@ConditionalOnProperty(name = "server.session-store", havingValue = "local", matchIfMissing = true)
 public final class CacheManagerImpl implements CacheManager {
 
     @NotNull
-    private final PropertyRepository propertyRepository;
+    private final PropertiesManager propertiesManager;
 
     @NotNull
-    private final UserRepository userRepository;
-
-    @Value("${server.auth.user}")
-    @Nullable
-    private String authUser;
-
-    @Value("${server.auth.passwd}")
-    @Nullable
-    private String authPasswd;
+    private final Map<String, CacheRecord> map = new ConcurrentHashMap<>();
 
     @NotNull
-    private final Map<String, CacheRecord> map = new HashMap<>();
-
-    public CacheManagerImpl(@Autowired @NotNull final PropertyRepository propertyRepository
-            , @Autowired @NotNull final UserRepository userRepository) {
-        this.propertyRepository = propertyRepository;
-        this.userRepository = userRepository;
+    private final Counter evictions;
+
+    public CacheManagerImpl(@Autowired @NotNull final PropertiesManager propertiesManager,
+                            @Autowired @NotNull final MeterRegistry meterRegistry) {
+        this.propertiesManager = propertiesManager;
+        Gauge.builder("pocket.cache.size", map, Map::size)
+                .description("Login sessions held in cache")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("pocket.cache.evictions")
+                .description("Login sessions dropped by the invalidator")
+                .register(meterRegistry);
     }
 
     @Override
     public boolean add(@NotNull final CacheRecord record) {
-        if(map.containsKey(record.getUuid())) {
-            return false;
-        }
-        map.put(record.getUuid(), record);
-        return true;
+        return map.putIfAbsent(record.getUuid(), record) == null;
+    }
+
+    @Override
+    public void update(@NotNull final CacheRecord record) {
+        // records are shared by reference, nothing to write back
     }
 
     @Override
@@ -84,17 +85,11 @@ public final class CacheManagerImpl implements CacheManager {
 
     @Override
     public @NotNull Optional<CacheRecord> get(@NotNull final String uuid) {
-        if(!map.containsKey(uuid)) {
-            return Optional.empty();
-        }
         return Optional.ofNullable(map.get(uuid));
     }
 
     @Override
     public boolean rm(@NotNull String uuid) {
-        if(!map.containsKey(uuid)) {
-            return false;
-        }
         return map.remove(uuid) != null;
     }
 
@@ -113,46 +108,37 @@ public final class CacheManagerImpl implements CacheManager {
         return map.containsKey(uuid);
     }
 
+    @EventListener
+    public void onInvalidation(@NotNull final InvalidationEvent event) {
+        switch (event.topic()) {
+            case DEVICE -> rm(event.key());
+            case USER -> map.values().removeIf(record -> event.key().equals(String.valueOf(record.getDevice().getUser().getId())));
+            default -> {
+            }
+        }
+    }
+
     @Override
     public void invalidate() {
         log.info("Start invalidate");
 
-        assert authUser != null;
-        assert authPasswd != null;
-        assert authPasswd.length() == EncoderHelper.KEY_SIZE;
-        AtomicReference<User> adminUser = new AtomicReference<>(new User());
-        userRepository.findByEmail(authUser).ifPresent(adminUser::set);
-
-        propertyRepository.getByUserIdAndKey(adminUser.get().getId(), PROPERTY_INVALIDATOR_ENABLE).ifPresentOrElse(invalidatorEnable -> {
-            if (Boolean.TRUE.toString().equals(invalidatorEnable.getValue())) {
-                try {
-                    propertyRepository.getByUserIdAndKey(adminUser.get().getId(), PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES).ifPresentOrElse(invalidatorCacheMaxMinutes -> {
-                        log.info("Start invalidator thread: " + Thread.currentThread().getName());
-
-                        final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
-
-                        for(final var key : map.keySet()) {
-                            
-                            final var maxMinutes = Integer.parseInt(invalidatorCacheMaxMinutes.getValue());
-                            if (ChronoUnit.MINUTES.between(ofEpochSecond(map.get(key).getTimestampLastUpdate()), ofEpochSecond(now)) > maxMinutes) {
-                                log.info("Invalidate: " + key);
-                                map.remove(key);
-                            }
-                        }
-
-                    }, () -> log.severe("Cron invalidator not stared: invalid conversion date"));
+        if (!propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE)) {
+            log.warning("Cron invalidator disabled");
+            return;
+        }
 
+        log.info("Start invalidator thread: " + Thread.currentThread().getName());
 
-                } catch (NumberFormatException e) {
-                    log.severe("Cron invalidator not stared: invalid date");
-                }
+        final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
 
-            } else {
-                log.warning("Cron invalidator disabled");
+        final var maxMinutes = propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES);
+        map.entrySet().removeIf(entry -> {
+            if (ChronoUnit.MINUTES.between(ofEpochSecond(entry.getValue().getTimestampLastUpdate()), ofEpochSecond(now)) > maxMinutes) {
+                log.info("Invalidate: " + entry.getKey());
+                evictions.increment();
+                return true;
             }
-
-        }, () -> log.warning("Property not found"));
-
-
+            return false;
+        });
     }
 }
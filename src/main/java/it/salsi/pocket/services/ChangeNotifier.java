@@ -0,0 +1,58 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Push channel telling the devices of a user that another one of its devices stored data, so they can
+ * call getData instead of polling for it.
+ * <p>
+ * Announcements travel on the {@link InvalidationBus}, a device is reached whichever node holds its stream.
+ */
+public interface ChangeNotifier {
+
+    /**
+     * Server sent event name of an announcement, its data is a {@link ChangeEvent}
+     */
+    String EVENT = "change";
+
+    record ChangeEvent(long userId, long timestampLastUpdate) {
+    }
+
+    /**
+     * Open the stream of a device, replacing the one it had
+     */
+    @NotNull
+    SseEmitter subscribe(@NotNull final String uuid, final long userId);
+
+    /**
+     * Announce to the other devices of {@code userId} that its data changed at {@code timestampLastUpdate}
+     *
+     * @param origin uuid of the device that wrote, not notified
+     */
+    void changed(final long userId, final long timestampLastUpdate, @NotNull final String origin);
+
+    /**
+     * Streams open on this node
+     */
+    int size();
+}
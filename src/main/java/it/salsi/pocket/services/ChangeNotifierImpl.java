@@ -0,0 +1,193 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.salsi.pocket.services.InvalidationBus.InvalidationEvent;
+import it.salsi.pocket.services.InvalidationBus.Topic;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static it.salsi.pocket.Constant.DIVISOR;
+
+/**
+ * Streams are servlet async requests, an idle one holds a socket and an {@link SseEmitter} but no thread.
+ * Writes run on virtual threads, a slow client only parks its own send.
+ */
+@Log
+@Service
+public final class ChangeNotifierImpl implements ChangeNotifier {
+
+    @NotNull
+    private final InvalidationBus invalidationBus;
+
+    /**
+     * Streams by user id, then by device uuid
+     */
+    @NotNull
+    private final Map<Long, Map<String, SseEmitter>> streams = new ConcurrentHashMap<>();
+
+    @NotNull
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${server.events-timeout-minutes:30}")
+    private long timeoutMinutes = 30;
+
+    public ChangeNotifierImpl(@Autowired @NotNull final InvalidationBus invalidationBus,
+                              @Autowired @NotNull final MeterRegistry meterRegistry) {
+        this.invalidationBus = invalidationBus;
+        Gauge.builder("pocket.events.streams", this, ChangeNotifier::size)
+                .description("Change notification streams open on this node")
+                .register(meterRegistry);
+    }
+
+    @NotNull
+    @Override
+    public SseEmitter subscribe(@NotNull final String uuid, final long userId) {
+        final var emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+        final Runnable remove = () -> remove(userId, uuid, emitter);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+
+        // put under the lock of the user entry: a remove emptying it cannot drop the map in between
+        final var previous = new AtomicReference<SseEmitter>();
+        streams.compute(userId, (k, devices) -> {
+            final var ret = devices == null ? new ConcurrentHashMap<String, SseEmitter>() : devices;
+            previous.set(ret.put(uuid, emitter));
+            return ret;
+        });
+        if (previous.get() != null) {
+            previous.get().complete();
+        }
+        // commits the response headers, the client knows the stream is open
+        send(userId, uuid, emitter, SseEmitter.event().comment("open"));
+        return emitter;
+    }
+
+    @Override
+    public void changed(final long userId, final long timestampLastUpdate, @NotNull final String origin) {
+        invalidationBus.publish(Topic.CHANGE, userId + DIVISOR.value + timestampLastUpdate + DIVISOR.value + origin);
+    }
+
+    @Override
+    public int size() {
+        return streams.values().stream().mapToInt(Map::size).sum();
+    }
+
+    @EventListener
+    public void onInvalidation(@NotNull final InvalidationEvent event) {
+        switch (event.topic()) {
+            case CHANGE -> {
+                final var split = event.key().split("[" + DIVISOR.value + "]", 3);
+                final var userId = Long.parseLong(split[0]);
+                final var devices = streams.get(userId);
+                if (devices == null) {
+                    return;
+                }
+                final var data = new ChangeEvent(userId, Long.parseLong(split[1]));
+                devices.forEach((uuid, emitter) -> {
+                    if (!uuid.equals(split[2])) {
+                        send(userId, uuid, emitter, SseEmitter.event().name(EVENT).data(data, MediaType.APPLICATION_JSON));
+                    }
+                });
+            }
+            case DEVICE -> streams.keySet().forEach(userId -> {
+                final var removed = new AtomicReference<SseEmitter>();
+                streams.computeIfPresent(userId, (k, devices) -> {
+                    removed.set(devices.remove(event.key()));
+                    return devices.isEmpty() ? null : devices;
+                });
+                if (removed.get() != null) {
+                    removed.get().complete();
+                }
+            });
+            case USER -> {
+                final var devices = streams.remove(Long.parseLong(event.key()));
+                if (devices != null) {
+                    devices.values().forEach(SseEmitter::complete);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Comment line on every stream, keeps proxies and load balancers from closing idle connections
+     */
+    @Scheduled(fixedDelayString = "${server.events-keepalive-ms:30000}")
+    public void keepAlive() {
+        streams.forEach((userId, devices) ->
+                devices.forEach((uuid, emitter) -> send(userId, uuid, emitter, SseEmitter.event().comment(""))));
+    }
+
+    /**
+     * Ends the streams before the graceful shutdown of the web server, which would otherwise wait for them
+     */
+    @EventListener(ContextClosedEvent.class)
+    public void closeStreams() {
+        streams.values().forEach(devices -> devices.values().forEach(SseEmitter::complete));
+        streams.clear();
+    }
+
+    @PreDestroy
+    public void close() {
+        senders.shutdown();
+    }
+
+    private void send(final long userId, @NotNull final String uuid, @NotNull final SseEmitter emitter,
+                      @NotNull final SseEmitter.SseEventBuilder event) {
+        senders.execute(() -> {
+            try {
+                emitter.send(event);
+            } catch (final IOException | IllegalStateException e) {
+                log.fine(() -> "Stream closed, uuid:" + uuid + " " + e.getMessage());
+                remove(userId, uuid, emitter);
+                emitter.completeWithError(e);
+            }
+        });
+    }
+
+    private void remove(final long userId, @NotNull final String uuid, @NotNull final SseEmitter emitter) {
+        streams.computeIfPresent(userId, (k, devices) -> {
+            devices.remove(uuid, emitter);
+            return devices.isEmpty() ? null : devices;
+        });
+    }
+}
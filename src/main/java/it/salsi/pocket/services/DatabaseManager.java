@@ -27,5 +27,10 @@ public interface DatabaseManager {
 
     void init() throws CommonsException;
 
-    void cleanOldData() throws CommonsException;
+    /**
+     * Purge the soft deleted rows already synced by every device
+     *
+     * @return number of purged rows
+     */
+    long cleanOldData() throws CommonsException;
 }
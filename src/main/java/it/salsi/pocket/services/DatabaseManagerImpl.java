@@ -21,9 +21,7 @@
 package it.salsi.pocket.services;
 
 import it.salsi.commons.CommonsException;
-import it.salsi.commons.utils.NumberUtils;
 import it.salsi.pocket.models.Device;
-import it.salsi.pocket.models.Property;
 import it.salsi.pocket.models.User;
 import it.salsi.pocket.repositories.*;
 import lombok.extern.java.Log;
@@ -31,9 +29,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntSupplier;
 
 import static it.salsi.pocket.Constant.*;
 
@@ -49,6 +50,15 @@ public final class DatabaseManagerImpl implements DatabaseManager {
     @Nullable
     private String authPasswd;
 
+    @Value("${server.clean-data.user-chunk:100}")
+    private int cleanDataUserChunk = 100;
+
+    @Value("${server.clean-data.batch-size:1000}")
+    private int cleanDataBatchSize = 1000;
+
+    @Value("${server.clean-data.throttle-ms:100}")
+    private long cleanDataThrottleMs = 100;
+
     @NotNull
     private final UserRepository userRepository;
 
@@ -56,7 +66,7 @@ public final class DatabaseManagerImpl implements DatabaseManager {
     private final DeviceRepository deviceRepository;
 
     @NotNull
-    private final PropertyRepository propertyRepository;
+    private final PropertiesManager propertiesManager;
 
     @NotNull
     private final GroupRepository groupRepository;
@@ -69,14 +79,14 @@ public final class DatabaseManagerImpl implements DatabaseManager {
 
     public DatabaseManagerImpl(@Autowired @NotNull final UserRepository userRepository,
                                @Autowired @NotNull final DeviceRepository deviceRepository,
-                               @Autowired @NotNull final PropertyRepository propertyRepository,
+                               @Autowired @NotNull final PropertiesManager propertiesManager,
                                @Autowired @NotNull final GroupRepository groupRepository,
                                @Autowired @NotNull final GroupFieldRepository groupFieldRepository,
                                @Autowired @NotNull final FieldRepository fieldRepository
     ) {
         this.userRepository = userRepository;
         this.deviceRepository = deviceRepository;
-        this.propertyRepository = propertyRepository;
+        this.propertiesManager = propertiesManager;
         this.groupRepository = groupRepository;
         this.groupFieldRepository = groupFieldRepository;
         this.fieldRepository = fieldRepository;
@@ -92,30 +102,18 @@ public final class DatabaseManagerImpl implements DatabaseManager {
             throw new CommonsException("authPasswd must be 32 byte");
         }
 
-        AtomicReference<User> adminUser = new AtomicReference<>(new User());
-        userRepository.findByEmail(authUser).ifPresent(adminUser::set);
-
-        propertyRepository.getByUserIdAndKey(adminUser.get().getId(), PROPERTY_DB_VERSION).ifPresentOrElse(property -> {
-            Integer version = (Integer) PROPERTY_DB_VERSION.getMetaProperty().defaultValue();
-            if (version == null) {
-                return;
-            }
-            try {
-                if (Integer.parseInt(property.getValue()) < version) {
-                    updateVersion(adminUser.get(), version);
-                }
-            } catch (NumberFormatException e) {
-                updateVersion(adminUser.get(), NumberUtils.parseInt(PROPERTY_DB_VERSION.value));
-            }
-
-        }, () ->
-                updateVersion(adminUser.get(), 0)
-        );
+        final var version = (Integer) PROPERTY_DB_VERSION.getMetaProperty().defaultValue();
+        final var current = propertiesManager.get(PROPERTY_DB_VERSION);
+        if (current.isEmpty() || !(current.get() instanceof Integer stored)) {
+            updateVersion(0);
+        } else if (version != null && stored < version) {
+            updateVersion(version);
+        }
 
     }
 
     @Override
-    public void cleanOldData()  throws CommonsException {
+    public long cleanOldData()  throws CommonsException {
         log.info("Start delete data");
         if(authUser == null || authPasswd == null) {
             throw new CommonsException("authUser or authPasswd not set");
@@ -124,67 +122,69 @@ public final class DatabaseManagerImpl implements DatabaseManager {
             throw new CommonsException("authPasswd must be 32 byte");
         }
 
-        AtomicReference<User> adminUser = new AtomicReference<>(new User());
-        userRepository.findByEmail(authUser).ifPresent(adminUser::set);
-
-        propertyRepository.getByUserIdAndKey(adminUser.get().getId(), PROPERTY_CLEAN_DATA_ENABLE).ifPresentOrElse(invalidatorEnable -> {
-
-            if (Boolean.TRUE.toString().equals(invalidatorEnable.getValue())) {
-                try {
-                    propertyRepository.getByUserIdAndKey(adminUser.get().getId(), PROPERTY_INVALIDATOR_MAX_LOGIN_DAYS).ifPresentOrElse(invalidatorMaxLoginDays -> {
-                        log.info("Start delete data thread: " + Thread.currentThread().getName());
-
-                        userRepository.findAll().forEach(user -> {
-                            if (user.getStatus() != User.Status.DELETED) {
-                                if(user.getDevices().isEmpty()) {
-                                    return;
-                                }
-
-                                var timestampLastUpdate = 0L;
-                                for(final var device : user.getDevices()) {
-                                    if(device.getTimestampLastUpdate() > timestampLastUpdate ) {
-                                        timestampLastUpdate = device.getTimestampLastUpdate();
-                                    }
-                                }
-
-
-                                if (deviceRepository.countAllByUserAndTimestampLastUpdateBeforeAndStatusIsNot(user, timestampLastUpdate, Device.Status.INVALIDATED) == 0) {
-                                    log.info("Start deleting data, user:" + user.getEmail() + "timestampLastUpdate:" + timestampLastUpdate);
-
-                                    fieldRepository.findByUserAndDeletedAndTimestampLastUpdateLessThan(user, true, timestampLastUpdate).forEach(fieldRepository::delete);
-                                    groupFieldRepository.findByUserAndDeletedAndTimestampLastUpdateLessThan(user, true, timestampLastUpdate).forEach(groupFieldRepository::delete);
-                                    groupRepository.findByUserAndDeletedAndTimestampLastUpdateLessThan(user, true, timestampLastUpdate).forEach(groupRepository::delete);
-
-                                    log.info("End deleting data");
-                                }
-
-                            }
-                        });
+        if (!propertiesManager.getBoolean(PROPERTY_CLEAN_DATA_ENABLE)) {
+            log.warning("Cron delete data disabled");
+            return 0;
+        }
 
+        // soft deleted rows older than the last sync of every still valid device of their user are not needed anymore
+        final var invalidated = Device.Status.INVALIDATED.ordinal();
+        var purged = 0L;
+        var after = 0L;
+        List<Long> userIds;
+        // an interrupted purge stops at the next statement, what is left goes with the next run
+        while (!Thread.currentThread().isInterrupted()
+                && !(userIds = userRepository.findIdsAfterAndStatusNot(after, User.Status.DELETED, Limit.of(cleanDataUserChunk))).isEmpty()) {
+            after = userIds.getLast();
+
+            final var ids = userIds;
+            purged += purge(() -> fieldRepository.purgeDeleted(ids, invalidated, cleanDataBatchSize));
+            purged += purge(() -> groupFieldRepository.purgeDeleted(ids, invalidated, cleanDataBatchSize));
+            purged += purge(() -> {
+                final var groupIds = groupRepository.findPurgeable(ids, invalidated, cleanDataBatchSize);
+                if (!groupIds.isEmpty()) {
+                    groupRepository.deleteAllByIdInBatch(groupIds);
+                }
+                return groupIds.size();
+            });
+        }
 
-                    }, () -> log.severe("Cron delete data not stared: invalid conversion date"));
+        if (Thread.currentThread().isInterrupted()) {
+            log.warning("Delete data interrupted, purged rows:" + purged);
+            return purged;
+        }
+        log.info("End delete data, purged rows:" + purged);
+        return purged;
+    }
 
-                } catch (NumberFormatException e) {
-                    log.severe("Cron delete data not stared: invalid conversion date");
+    /**
+     * Repeat a capped delete until nothing is left or the thread is interrupted, pausing between statements
+     * to leave room to the sync traffic
+     */
+    private long purge(@NotNull final IntSupplier batch) {
+        var ret = 0L;
+        while (!Thread.currentThread().isInterrupted()) {
+            final var deleted = batch.getAsInt();
+            ret += deleted;
+            if (deleted == 0) {
+                break;
+            }
+            if (cleanDataThrottleMs > 0) {
+                try {
+                    Thread.sleep(cleanDataThrottleMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
             }
-        }, () -> log.warning("Cron delete data disabled"));
-
-
-        log.info("End delete data");
+        }
+        return ret;
     }
 
-    private void updateVersion(@NotNull final User user, final int version) {
+    private void updateVersion(final int version) throws CommonsException {
         switch (version) {
-            case 0, 1, 2 -> {
-                final var metaProperty = PROPERTY_DB_VERSION.getMetaProperty();
-                final var property = new Property();
-                property.setUser(user);
-                property.setKey(PROPERTY_DB_VERSION);
-                property.setValue(metaProperty.defaultValue());
-                propertyRepository.save(property);
-            }
-            default -> System.out.print("At the last version");
+            case 0, 1, 2 -> propertiesManager.set(PROPERTY_DB_VERSION,
+                    Objects.requireNonNull(PROPERTY_DB_VERSION.getMetaProperty().defaultValue()));
+            default -> log.info("At the last version");
         }
     }
 }
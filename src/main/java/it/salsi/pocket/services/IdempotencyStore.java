@@ -0,0 +1,84 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import it.salsi.pocket.models.Container;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Recent persist answers by device uuid and client request id ({@link #HEADER}), so a persist retried
+ * after a timeout gets the answer of the first attempt instead of running again. A key is bound to the
+ * hash of the body it came with, the same key with another body is refused.
+ * <p>
+ * Held in the memory of this node only, bounded in entries, estimated bytes and age: with several nodes
+ * and no sticky sessions a retry reaching another node is persisted again.
+ */
+public interface IdempotencyStore {
+
+    String HEADER = "Idempotency-Key";
+
+    int KEY_MAX_LENGTH = 128;
+
+    enum State {
+        /**
+         * First request with this key, the caller must {@link #complete} or {@link #release} it
+         */
+        NEW,
+        /**
+         * The first request is still running
+         */
+        IN_PROGRESS,
+        /**
+         * The first request succeeded, {@link Claim#container()} holds its answer
+         */
+        DONE,
+        /**
+         * The key was first used with another body
+         */
+        MISMATCH
+    }
+
+    record Claim(@NotNull State state, @Nullable Container container) {
+    }
+
+    /**
+     * @param bodyHash hash of the request body, a claim of the same key must bring the same one
+     */
+    @NotNull
+    Claim claim(@NotNull final String uuid, @NotNull final String key, final byte @NotNull [] bodyHash);
+
+    /**
+     * Keep the answer of a claimed request for the retries
+     */
+    void complete(@NotNull final String uuid, @NotNull final String key, @NotNull final Container container);
+
+    /**
+     * Forget a claimed request that failed, a retry runs again
+     */
+    void release(@NotNull final String uuid, @NotNull final String key);
+
+    /**
+     * Drop the answers older than the ttl
+     */
+    void evictExpired();
+
+    int size();
+}
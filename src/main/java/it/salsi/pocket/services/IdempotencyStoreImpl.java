@@ -0,0 +1,215 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.salsi.pocket.models.Container;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entries kept in insertion order: with one ttl for all of them the eldest is also the first to
+ * expire, eviction only looks at the head, for age as for size. A claim is a map lookup under a lock,
+ * far below the cost of the persist it guards.
+ * <p>
+ * The size of an answer is estimated from its rows, a persist echoes a few ids per row
+ * ({@link it.salsi.pocket.core.BaseModel#echo()}); the answer just stored is never evicted to make
+ * room for itself.
+ */
+@Log
+@Service
+public final class IdempotencyStoreImpl implements IdempotencyStore {
+
+    /**
+     * Map node, key, body hash and an empty answer
+     */
+    static final int ENTRY_BYTES = 512;
+
+    /**
+     * Echo of one written row
+     */
+    static final int ROW_BYTES = 160;
+
+    private static final class Entry {
+        private final long created;
+        private final byte @NotNull [] bodyHash;
+        private @Nullable Container container;
+        private long bytes = ENTRY_BYTES;
+
+        private Entry(final long created, final byte @NotNull [] bodyHash) {
+            this.created = created;
+            this.bodyHash = bodyHash;
+        }
+    }
+
+    @Value("${server.idempotency.ttl-seconds:600}")
+    private long ttlSeconds = 600;
+
+    @Value("${server.idempotency.max-entries:10000}")
+    private int maxEntries = 10_000;
+
+    @Value("${server.idempotency.max-bytes:67108864}")
+    private long maxBytes = 67_108_864;
+
+    private final @NotNull Map<String, Entry> map = new LinkedHashMap<>();
+
+    private long bytes;
+
+    private final @NotNull Counter replays;
+
+    public IdempotencyStoreImpl(@Autowired @NotNull final MeterRegistry meterRegistry) {
+        Gauge.builder("pocket.idempotency.size", this, IdempotencyStore::size)
+                .description("Persist answers kept for retries")
+                .register(meterRegistry);
+        Gauge.builder("pocket.idempotency.bytes", this, IdempotencyStoreImpl::bytes)
+                .description("Estimated bytes of the persist answers kept for retries")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.replays = Counter.builder("pocket.idempotency.replays")
+                .description("Persist retries answered from the idempotency store")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public @NotNull Claim claim(@NotNull final String uuid, @NotNull final String key, final byte @NotNull [] bodyHash) {
+        final var now = System.nanoTime();
+        final var id = id(uuid, key);
+        synchronized (map) {
+            evictExpired(now);
+            final var entry = map.get(id);
+            if (entry == null) {
+                final var added = new Entry(now, bodyHash);
+                map.put(id, added);
+                bytes += added.bytes;
+                trim(added);
+                return new Claim(State.NEW, null);
+            }
+            if (!MessageDigest.isEqual(entry.bodyHash, bodyHash)) {
+                return new Claim(State.MISMATCH, null);
+            }
+            if (entry.container == null) {
+                return new Claim(State.IN_PROGRESS, null);
+            }
+            replays.increment();
+            return new Claim(State.DONE, entry.container);
+        }
+    }
+
+    @Override
+    public void complete(@NotNull final String uuid, @NotNull final String key, @NotNull final Container container) {
+        synchronized (map) {
+            final var entry = map.get(id(uuid, key));
+            if (entry != null) {
+                entry.container = container;
+                final var weight = weight(container);
+                bytes += weight - entry.bytes;
+                entry.bytes = weight;
+                trim(entry);
+            }
+        }
+    }
+
+    @Override
+    public void release(@NotNull final String uuid, @NotNull final String key) {
+        synchronized (map) {
+            final var entry = map.remove(id(uuid, key));
+            if (entry != null) {
+                bytes -= entry.bytes;
+            }
+        }
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${server.idempotency.ttl-seconds:600}", timeUnit = TimeUnit.SECONDS)
+    public void evictExpired() {
+        synchronized (map) {
+            evictExpired(System.nanoTime());
+        }
+    }
+
+    @Override
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    long bytes() {
+        synchronized (map) {
+            return bytes;
+        }
+    }
+
+    private void evictExpired(final long now) {
+        final var ttl = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        final var it = map.values().iterator();
+        var removed = 0;
+        while (it.hasNext()) {
+            final var entry = it.next();
+            if (now - entry.created <= ttl) {
+                break;
+            }
+            it.remove();
+            bytes -= entry.bytes;
+            removed++;
+        }
+        if (removed > 0) {
+            final var count = removed;
+            log.fine(() -> "Idempotency store evicted " + count + " entries");
+        }
+    }
+
+    /**
+     * Drop the eldest entries past {@code max-entries} or {@code max-bytes}, {@code keep} excepted
+     */
+    private void trim(@NotNull final Entry keep) {
+        final var it = map.values().iterator();
+        while ((map.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            final var entry = it.next();
+            if (entry == keep) {
+                continue;
+            }
+            it.remove();
+            bytes -= entry.bytes;
+        }
+    }
+
+    private static long weight(@NotNull final Container container) {
+        final var rows = (long) container.groups().size() + container.groupFields().size() + container.fields().size();
+        return ENTRY_BYTES + rows * ROW_BYTES;
+    }
+
+    @NotNull
+    private static String id(@NotNull final String uuid, @NotNull final String key) {
+        return uuid + '|' + key;
+    }
+}
@@ -0,0 +1,63 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Tells every node that a device, user or property changed, so that what they hold in memory is dropped,
+ * and that a user stored data, so that its devices are told.
+ * <p>
+ * Events reach the beans of each node as {@link InvalidationEvent} application events, the publishing node
+ * receives its own event before {@link #publish(Topic, String)} returns.
+ */
+public interface InvalidationBus {
+
+    enum Topic {
+        /**
+         * key is the device uuid
+         */
+        DEVICE,
+        /**
+         * key is the user id
+         */
+        USER,
+        /**
+         * key is the {@link it.salsi.pocket.Constant} value
+         */
+        PROPERTY,
+        /**
+         * data of a user stored by one of its devices, key is {@code userId|timestampLastUpdate|uuid},
+         * see {@link ChangeNotifier}
+         */
+        CHANGE
+    }
+
+    record InvalidationEvent(@NotNull Topic topic, @NotNull String key) {
+    }
+
+    void publish(@NotNull final Topic topic, @NotNull final String key);
+
+    /**
+     * Drops events every node already had time to receive
+     */
+    void purge();
+
+}
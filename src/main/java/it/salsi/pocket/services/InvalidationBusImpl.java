@@ -0,0 +1,51 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+/**
+ * Events delivered to this node only, the default {@code server.invalidation-bus: local}
+ */
+@Service
+@ConditionalOnProperty(name = "server.invalidation-bus", havingValue = "local", matchIfMissing = true)
+public final class InvalidationBusImpl implements InvalidationBus {
+
+    @NotNull
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    public InvalidationBusImpl(@Autowired @NotNull final ApplicationEventPublisher applicationEventPublisher) {
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public void publish(@NotNull final Topic topic, @NotNull final String key) {
+        applicationEventPublisher.publishEvent(new InvalidationEvent(topic, key));
+    }
+
+    @Override
+    public void purge() {
+        // nothing stored
+    }
+}
@@ -24,4 +24,9 @@ import org.springframework.scheduling.annotation.Async;
 public interface IpcSocketManager {
     @Async
     void start();
+
+    /**
+     * Stops the accept loop and releases the port, so the async executor is not kept busy on shutdown
+     */
+    void stop();
 }
@@ -48,6 +48,8 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static it.salsi.pocket.Constant.DIVISOR;
 import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.services.InvalidationBus.Topic.DEVICE;
+import static it.salsi.pocket.services.InvalidationBus.Topic.USER;
 import static it.salsi.pocket.services.IpcSocketManagerImpl.Response.*;
 
 @Setter
@@ -120,7 +122,10 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
 
     static public final int SOCKET_PORT = 8333;
 
-    private boolean loop = true;
+    private volatile boolean loop = true;
+
+    @Nullable
+    private volatile ServerSocket serverSocket;
 
     private @NotNull final DeviceRepository deviceRepository;
 
@@ -128,6 +133,8 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
 
     private @NotNull final EncoderHelper encoderHelper;
 
+    private @NotNull final InvalidationBus invalidationBus;
+
     private @Nullable PrintWriter out = null;
 
     @Value("${server.url}")
@@ -157,10 +164,12 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
     public IpcSocketManagerImpl(
             @Autowired @NotNull final DeviceRepository deviceRepository,
             @Autowired @NotNull final UserRepository userRepository,
-            @Autowired @NotNull final EncoderHelper encoderHelper) {
+            @Autowired @NotNull final EncoderHelper encoderHelper,
+            @Autowired @NotNull final InvalidationBus invalidationBus) {
         this.deviceRepository = deviceRepository;
         this.userRepository = userRepository;
         this.encoderHelper = encoderHelper;
+        this.invalidationBus = invalidationBus;
         if (socketPort == null) {
             socketPort = SOCKET_PORT;
         }
@@ -207,6 +216,7 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
                 ret.setPasswd(encoderHelper.encode(split[2]));
 
                 userRepository.save(ret);
+                invalidationBus.publish(USER, String.valueOf(ret.getId()));
 
                 break;
             case "RM_USER":
@@ -217,6 +227,7 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
 
                 ret = optUser.get();
                 userRepository.delete(ret);
+                invalidationBus.publish(USER, String.valueOf(ret.getId()));
 
                 break;
             case "GET_USER":
@@ -301,6 +312,7 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
 
                 ret = atmDevice.get().get();
                 deviceRepository.deleteDeviceById(ret.getId());
+                invalidationBus.publish(DEVICE, ret.getUuid());
 
                 break;
             case "GET_DEVICE":
@@ -343,6 +355,7 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
         assert authPasswd.length() == 32;
         assert socketPort != null;
         try (final var serverSocket = new ServerSocket(socketPort, 0, InetAddress.getByName(null))) {
+            this.serverSocket = serverSocket;
 
             while (loop && !serverSocket.isClosed()) {
 
@@ -424,7 +437,9 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
             }
 
         } catch (IOException e) {
-            log.severe("Server socket error: " + e.getMessage());
+            if (loop) {
+                log.severe("Server socket error: " + e.getMessage());
+            }
         } finally {
             try {
                 Thread.sleep(1_000);
@@ -439,4 +454,17 @@ public class IpcSocketManagerImpl implements IpcSocketManager {
 
         log.info("End socket");
     }
+
+    @Override
+    public void stop() {
+        loop = false;
+        final var socket = serverSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.warning("Close socket error: " + e.getMessage());
+            }
+        }
+    }
 }
@@ -0,0 +1,236 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.salsi.commons.CommonsException;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.security.RSAHelper;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static it.salsi.pocket.Constant.*;
+import static it.salsi.pocket.services.InvalidationBus.InvalidationEvent;
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+
+/**
+ * Sessions shared by every node through the {@code sessions} table, enabled by {@code server.session-store: jdbc}.
+ * <p>
+ * A row holds only uuid, device id, secret and timestamp; {@link Device} and {@link RSAHelper} are rebuilt
+ * from the devices table by the node that needs them and kept in a near-cache. Every lookup reads the row,
+ * the near-cache entry is reused while device and secret match and reloaded when another node moved the
+ * timestamp, so a login or logout on one node is seen by the others on the next call.
+ */
+@Log
+@Service
+@ConditionalOnProperty(name = "server.session-store", havingValue = "jdbc")
+public final class JdbcCacheManagerImpl implements CacheManager {
+
+    private record Row(long deviceId, @NotNull String secret, long timestampLastUpdate) {
+    }
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    @NotNull
+    private final DeviceRepository deviceRepository;
+
+    @NotNull
+    private final PropertiesManager propertiesManager;
+
+    @NotNull
+    private final Map<String, CacheRecord> near = new ConcurrentHashMap<>();
+
+    @NotNull
+    private final Counter evictions;
+
+    public JdbcCacheManagerImpl(@Autowired @NotNull final JdbcTemplate jdbcTemplate,
+                                @Autowired @NotNull final DeviceRepository deviceRepository,
+                                @Autowired @NotNull final PropertiesManager propertiesManager,
+                                @Autowired @NotNull final MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.deviceRepository = deviceRepository;
+        this.propertiesManager = propertiesManager;
+        Gauge.builder("pocket.cache.size", near, Map::size)
+                .description("Login sessions held in the near-cache of this node")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("pocket.cache.evictions")
+                .description("Login sessions dropped by the invalidator")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public boolean add(@NotNull final CacheRecord record) {
+        try {
+            jdbcTemplate.update("INSERT INTO sessions (uuid, device_id, secret, timestamp_last_update) VALUES (?, ?, ?, ?)",
+                    record.getUuid(), record.getDevice().getId(), record.getSecret(), record.getTimestampLastUpdate());
+        } catch (final DuplicateKeyException e) {
+            return false;
+        }
+        near.put(record.getUuid(), record);
+        return true;
+    }
+
+    @Override
+    public void update(@NotNull final CacheRecord record) {
+        jdbcTemplate.update("UPDATE sessions SET timestamp_last_update = ? WHERE uuid = ? AND secret = ?",
+                record.getTimestampLastUpdate(), record.getUuid(), record.getSecret());
+    }
+
+    @Override
+    public @NotNull Optional<CacheRecord> get(@NotNull final CacheRecord record) {
+        return get(record.getUuid());
+    }
+
+    @Override
+    public @NotNull Optional<CacheRecord> get(@NotNull final String uuid) {
+        final var row = jdbcTemplate.query("SELECT device_id, secret, timestamp_last_update FROM sessions WHERE uuid = ?",
+                rs -> rs.next() ? new Row(rs.getLong(1), rs.getString(2), rs.getLong(3)) : null, uuid);
+        if (row == null) {
+            near.remove(uuid);
+            return Optional.empty();
+        }
+
+        final var cached = near.get(uuid);
+        if (cached != null
+                && cached.getDevice().getId() == row.deviceId()
+                && cached.getSecret().equals(row.secret())
+                && cached.getTimestampLastUpdate() == row.timestampLastUpdate()) {
+            return Optional.of(cached);
+        }
+
+        final var ret = load(uuid, row, cached);
+        if (ret == null) {
+            rm(uuid);
+            return Optional.empty();
+        }
+        near.put(uuid, ret);
+        return Optional.of(ret);
+    }
+
+    @Override
+    public boolean rm(@NotNull final String uuid) {
+        near.remove(uuid);
+        return jdbcTemplate.update("DELETE FROM sessions WHERE uuid = ?", uuid) > 0;
+    }
+
+    @Override
+    public boolean rm(@NotNull final CacheRecord record) {
+        return rm(record.getUuid());
+    }
+
+    @Override
+    public boolean has(@NotNull final CacheRecord record) {
+        return has(record.getUuid());
+    }
+
+    @Override
+    public boolean has(@NotNull final String uuid) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM sessions WHERE uuid = ?", Integer.class, uuid).isEmpty();
+    }
+
+    /**
+     * Received by every node, the deletes are idempotent
+     */
+    @EventListener
+    public void onInvalidation(@NotNull final InvalidationEvent event) {
+        switch (event.topic()) {
+            case DEVICE -> rm(event.key());
+            case USER -> {
+                final var userId = Long.parseLong(event.key());
+                near.values().removeIf(record -> record.getDevice().getUser().getId() == userId);
+                jdbcTemplate.update("DELETE FROM sessions WHERE device_id IN (SELECT id FROM devices WHERE user_id = ?)", userId);
+            }
+            default -> {
+            }
+        }
+    }
+
+    /**
+     * Run by every node, the delete is idempotent
+     */
+    @Override
+    public void invalidate() {
+        log.info("Start invalidate");
+
+        if (!propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE)) {
+            log.warning("Cron invalidator disabled");
+            return;
+        }
+
+        final var now = Instant.now(Clock.systemUTC()).getEpochSecond();
+
+        // same bound as CacheManagerImpl: more than max whole minutes since the last update
+        final var limit = now - (propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES) + 1L) * 60;
+        final var removed = jdbcTemplate.update("DELETE FROM sessions WHERE timestamp_last_update <= ?", limit);
+        near.values().removeIf(record -> record.getTimestampLastUpdate() <= limit);
+        if (removed > 0) {
+            log.info("Invalidate: " + removed + " sessions");
+            evictions.increment(removed);
+        }
+    }
+
+    /**
+     * Device is read again since another node may have changed it, the keys are parsed only when they differ
+     */
+    @Nullable
+    private CacheRecord load(@NotNull final String uuid, @NotNull final Row row, @Nullable final CacheRecord cached) {
+        final var optDevice = deviceRepository.findById(row.deviceId());
+        if (optDevice.isEmpty() || !uuid.equals(optDevice.get().getUuid())) {
+            log.warning("Session of a missing device, uuid:" + uuid);
+            return null;
+        }
+        final var device = optDevice.get();
+
+        RSAHelper rsaHelper;
+        try {
+            if (cached != null && cached.getDevice().getId().equals(device.getId())
+                    && device.getPrivateKey().equals(cached.getDevice().getPrivateKey())) {
+                rsaHelper = cached.getRsaHelper();
+            } else {
+                rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+                rsaHelper.loadPublicKey(Base64.getDecoder().decode(device.getPublicKey()));
+                rsaHelper.loadPrivateKey(Base64.getDecoder().decode(device.getPrivateKey()));
+            }
+        } catch (final CommonsException e) {
+            log.warning("Session keys not loadable, uuid:" + uuid + " " + e.getMessage());
+            return null;
+        }
+        return new CacheRecord(uuid, row.secret(), device, rsaHelper, row.timestampLastUpdate());
+    }
+}
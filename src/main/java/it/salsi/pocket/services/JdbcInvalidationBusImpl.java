@@ -0,0 +1,146 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Events shared by every node through the {@code invalidations} outbox table, enabled by
+ * {@code server.invalidation-bus: jdbc}.
+ * <p>
+ * A node inserts a row and delivers the event locally, the others find it on their next poll
+ * ({@code server.invalidation-poll-ms}); rows written by this node are skipped by its own poll.
+ * <p>
+ * Ids are taken at insert and become visible at commit, so a row can show up after a higher one:
+ * ids skipped by a poll are kept as gaps and read again for {@code server.invalidation-gap-ms},
+ * rows already delivered are not delivered twice.
+ */
+@Log
+@Service
+@ConditionalOnProperty(name = "server.invalidation-bus", havingValue = "jdbc")
+public final class JdbcInvalidationBusImpl implements InvalidationBus {
+
+    private record Row(long id, @NotNull String origin, @NotNull Topic topic, @NotNull String key) {
+    }
+
+    @NotNull
+    private final JdbcTemplate jdbcTemplate;
+
+    @NotNull
+    private final ApplicationEventPublisher applicationEventPublisher;
+
+    @NotNull
+    private final String origin = UUID.randomUUID().toString();
+
+    /**
+     * Ids skipped at once past which only the closest ones are waited for, a jump of the identity after
+     * a restart is not a pending transaction
+     */
+    static final int GAPS_MAX = 1_000;
+
+    @Value("${server.invalidation-retention-minutes:60}")
+    private int retentionMinutes = 60;
+
+    @Value("${server.invalidation-gap-ms:30000}")
+    private long gapMs = 30_000;
+
+    /**
+     * Last row seen, -1 until the first poll starts from the current tail of the table
+     */
+    private long lastId = -1;
+
+    /**
+     * Ids below {@link #lastId} not seen yet, with the time they were first skipped
+     */
+    private final @NotNull TreeMap<Long, Long> gaps = new TreeMap<>();
+
+    public JdbcInvalidationBusImpl(@Autowired @NotNull final JdbcTemplate jdbcTemplate,
+                                   @Autowired @NotNull final ApplicationEventPublisher applicationEventPublisher) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.applicationEventPublisher = applicationEventPublisher;
+    }
+
+    @Override
+    public void publish(@NotNull final Topic topic, @NotNull final String key) {
+        jdbcTemplate.update("INSERT INTO invalidations (origin, topic, item_key, timestamp_creation) VALUES (?, ?, ?, ?)",
+                origin, topic.name(), key, Instant.now(Clock.systemUTC()).getEpochSecond());
+        applicationEventPublisher.publishEvent(new InvalidationEvent(topic, key));
+    }
+
+    @Scheduled(fixedDelayString = "${server.invalidation-poll-ms:1000}")
+    public synchronized void poll() {
+        try {
+            if (lastId < 0) {
+                lastId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM invalidations", Long.class);
+                return;
+            }
+
+            // from the oldest gap, rows between it and lastId were delivered already and are skipped
+            final var from = gaps.isEmpty() ? lastId : gaps.firstKey() - 1;
+            final var rows = jdbcTemplate.query("SELECT id, origin, topic, item_key FROM invalidations WHERE id > ? ORDER BY id",
+                    (rs, i) -> new Row(rs.getLong(1), rs.getString(2), Topic.valueOf(rs.getString(3)), rs.getString(4)),
+                    from);
+            final var now = System.currentTimeMillis();
+            for (final var row : rows) {
+                if (row.id() <= lastId) {
+                    if (gaps.remove(row.id()) == null) {
+                        continue;
+                    }
+                } else {
+                    for (var id = Math.max(lastId + 1, row.id() - GAPS_MAX); id < row.id(); id++) {
+                        gaps.put(id, now);
+                    }
+                    lastId = row.id();
+                }
+                if (!origin.equals(row.origin())) {
+                    log.fine(() -> "Invalidation " + row.topic() + " " + row.key());
+                    applicationEventPublisher.publishEvent(new InvalidationEvent(row.topic(), row.key()));
+                }
+            }
+            // rolled back inserts leave gaps that never fill
+            gaps.values().removeIf(skipped -> now - skipped > gapMs);
+        } catch (final DataAccessException e) {
+            log.warning("Invalidations poll error: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void purge() {
+        final var limit = Instant.now(Clock.systemUTC()).getEpochSecond() - retentionMinutes * 60L;
+        final var removed = jdbcTemplate.update("DELETE FROM invalidations WHERE timestamp_creation < ?", limit);
+        if (removed > 0) {
+            log.info("Purge: " + removed + " invalidations");
+        }
+    }
+}
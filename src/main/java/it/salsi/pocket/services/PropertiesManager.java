@@ -22,9 +22,42 @@ package it.salsi.pocket.services;
 
 
 import it.salsi.commons.CommonsException;
+import it.salsi.pocket.Constant;
+import org.jetbrains.annotations.NotNull;
 
+import java.util.Optional;
+
+/**
+ * Registry of the admin properties.
+ * <p>
+ * Values are parsed once according to their {@link Constant.MetaProperty} type and kept in memory,
+ * reads never touch the database; {@link #set(Constant, Object)} persists and refreshes the registry.
+ */
 public interface PropertiesManager {
 
     void checkAll() throws CommonsException;
 
+    /**
+     * Reload every property from the database
+     */
+    void reload();
+
+    /**
+     * @return parsed value, empty if the property was never stored
+     */
+    @NotNull
+    Optional<Object> get(@NotNull final Constant key);
+
+    /**
+     * @return stored value or {@link Constant.MetaProperty#defaultValue()} if missing or not a boolean
+     */
+    boolean getBoolean(@NotNull final Constant key);
+
+    /**
+     * @return stored value or {@link Constant.MetaProperty#defaultValue()} if missing or not an integer
+     */
+    int getInt(@NotNull final Constant key);
+
+    void set(@NotNull final Constant key, @NotNull final Object value) throws CommonsException;
+
 }
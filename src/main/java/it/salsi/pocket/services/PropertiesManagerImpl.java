@@ -22,7 +22,6 @@ package it.salsi.pocket.services;
 import it.salsi.commons.CommonsException;
 import it.salsi.pocket.Constant;
 import it.salsi.pocket.models.Property;
-import it.salsi.pocket.models.User;
 import it.salsi.pocket.repositories.PropertyRepository;
 import it.salsi.pocket.repositories.UserRepository;
 import lombok.extern.java.Log;
@@ -30,10 +29,16 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
+import java.util.EnumMap;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.atomic.AtomicReference;
+
+import static it.salsi.pocket.Constant.FOO;
+import static it.salsi.pocket.services.InvalidationBus.InvalidationEvent;
+import static it.salsi.pocket.services.InvalidationBus.Topic.PROPERTY;
 
 @Log
 @Service
@@ -53,10 +58,21 @@ public final class PropertiesManagerImpl implements PropertiesManager {
     @NotNull
     private final UserRepository userRepository;
 
+    @NotNull
+    private final InvalidationBus invalidationBus;
+
+    /**
+     * Immutable snapshot, replaced as a whole on every write
+     */
+    @Nullable
+    private volatile EnumMap<Constant, Object> values;
+
     public PropertiesManagerImpl(@Autowired @NotNull final PropertyRepository propertyRepository,
-                                 @Autowired @NotNull final UserRepository userRepository) {
+                                 @Autowired @NotNull final UserRepository userRepository,
+                                 @Autowired @NotNull final InvalidationBus invalidationBus) {
         this.propertyRepository = propertyRepository;
         this.userRepository = userRepository;
+        this.invalidationBus = invalidationBus;
     }
 
     @Override
@@ -70,36 +86,111 @@ public final class PropertiesManagerImpl implements PropertiesManager {
 
         log.info("Start checks");
 
-
-        AtomicReference<User> adminUser = new AtomicReference<>(new User());
-        userRepository.findByEmail(authUser).ifPresent(adminUser::set);
-
-
+        reload();
         for (final var constant : Constant.values()) {
             final var metaProperty = constant.getMetaProperty();
 
-            if (metaProperty.mandatory()) {
-                final var opt = propertyRepository.getByUserIdAndKey(adminUser.get().getId(), constant);
-                if (opt.isEmpty()) {
-                    var property = new Property();
-                    property.setKey(metaProperty.constant());
-
-                    Optional.ofNullable(
-                            metaProperty.defaultValue()
-                    ).ifPresentOrElse(
-                            property::setValue,
-                            () -> property.setValue("")
-                    );
-
-                    property.setUser(adminUser.get());
-                    property.setType(metaProperty.type());
-                    propertyRepository.save(property);
-                    log.info("add property: " + property);
-                }
+            if (metaProperty.mandatory() && !values().containsKey(constant)) {
+                set(constant, Objects.requireNonNullElse(metaProperty.defaultValue(), ""));
+                log.info("add property: " + constant.value);
             }
         }
 
         log.info("End checks");
     }
 
+    @Override
+    public synchronized void reload() {
+        final var loaded = new EnumMap<Constant, Object>(Constant.class);
+        if (authUser != null) {
+            userRepository.findByEmail(authUser).ifPresent(adminUser -> {
+                for (final var property : propertyRepository.findAllByUserId(adminUser.getId())) {
+                    final var key = Constant.getEnum(property.getKey());
+                    if (key != FOO && property.getValue() != null) {
+                        loaded.put(key, parse(key, property.getValue()));
+                    }
+                }
+            });
+        }
+        values = loaded;
+    }
+
+    @Override
+    public @NotNull Optional<Object> get(@NotNull final Constant key) {
+        return Optional.ofNullable(values().get(key));
+    }
+
+    @Override
+    public boolean getBoolean(@NotNull final Constant key) {
+        if (values().get(key) instanceof Boolean ret) {
+            return ret;
+        }
+        return key.getMetaProperty().defaultValue() instanceof Boolean ret && ret;
+    }
+
+    @Override
+    public int getInt(@NotNull final Constant key) {
+        if (values().get(key) instanceof Integer ret) {
+            return ret;
+        }
+        return key.getMetaProperty().defaultValue() instanceof Integer ret ? ret : 0;
+    }
+
+    @Override
+    public synchronized void set(@NotNull final Constant key, @NotNull final Object value) throws CommonsException {
+        if (authUser == null) {
+            throw new CommonsException("authUser not set");
+        }
+        final var adminUser = userRepository.findByEmail(authUser)
+                .orElseThrow(() -> new CommonsException("Admin user not found"));
+
+        final var property = propertyRepository.getByUserIdAndKey(adminUser.getId(), key).orElseGet(Property::new);
+        property.setUser(adminUser);
+        property.setKey(key);
+        property.setType(key.getMetaProperty().type());
+        property.setValue(value);
+        propertyRepository.save(property);
+
+        final var updated = new EnumMap<>(values());
+        updated.put(key, parse(key, property.getValue()));
+        values = updated;
+
+        invalidationBus.publish(PROPERTY, key.value);
+    }
+
+    /**
+     * Properties are few and rarely written, any change reloads them all
+     */
+    @EventListener
+    public void onInvalidation(@NotNull final InvalidationEvent event) {
+        if (event.topic() == PROPERTY) {
+            reload();
+        }
+    }
+
+    @NotNull
+    private EnumMap<Constant, Object> values() {
+        var ret = values;
+        if (ret == null) {
+            reload();
+            ret = Objects.requireNonNull(values);
+        }
+        return ret;
+    }
+
+    @NotNull
+    private static Object parse(@NotNull final Constant key, @NotNull final String value) {
+        try {
+            return switch (key.getMetaProperty().type()) {
+                case BOOLEAN -> Boolean.parseBoolean(value.trim());
+                case INTEGER -> Integer.parseInt(value.trim());
+                case REAL -> Double.parseDouble(value.trim());
+                case STRING -> value;
+            };
+        } catch (final NumberFormatException e) {
+            log.warning("Property " + key.value + " is not a valid " + key.getMetaProperty().type() + ": " + value);
+            return value;
+        }
+    }
+
 }
@@ -0,0 +1,42 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Supplier;
+
+/**
+ * Sends read only sync queries to a replica that already applied the last write to the vault of the user.
+ * <p>
+ * The watermark is the {@code sync_version} of the user read on the primary: every persist, from any device
+ * of the user, increments it in the same transaction as the data, so a replica whose copy of the user row
+ * reached it holds every row the response is going to claim as synced.
+ */
+public interface ReplicaRouter {
+
+    /**
+     * @param userId    user whose writes must be visible
+     * @param watermark {@code sync_version} of the user on the primary before this request
+     * @return result of {@code query}, run on a replica that caught up or on the primary
+     */
+    <T> T read(final long userId, final long watermark, @NotNull final Supplier<T> query);
+
+}
@@ -0,0 +1,101 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.salsi.pocket.configs.ReplicaRoutingDataSource;
+import lombok.extern.java.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Replicas are tried round robin, the first one holding the user at or past the watermark runs the query;
+ * without {@code server.replica.urls} every query runs on the primary
+ */
+@Log
+@Service
+public final class ReplicaRouterImpl implements ReplicaRouter {
+
+    @Nullable
+    private final ReplicaRoutingDataSource routing;
+
+    @NotNull
+    private final List<JdbcTemplate> replicas;
+
+    @NotNull
+    private final AtomicInteger next = new AtomicInteger();
+
+    @NotNull
+    private final Counter replicaReads;
+
+    @NotNull
+    private final Counter primaryReads;
+
+    public ReplicaRouterImpl(@Autowired @NotNull final DataSource dataSource,
+                             @Autowired @NotNull final MeterRegistry meterRegistry) {
+        this.routing = dataSource instanceof ReplicaRoutingDataSource ret ? ret : null;
+        this.replicas = routing == null ? List.of() : routing.getReplicas().stream().map(JdbcTemplate::new).toList();
+        this.replicaReads = Counter.builder("pocket.replica.reads")
+                .description("Sync reads by target database")
+                .tag("target", "replica")
+                .register(meterRegistry);
+        this.primaryReads = Counter.builder("pocket.replica.reads")
+                .description("Sync reads by target database")
+                .tag("target", "primary")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public <T> T read(final long userId, final long watermark, @NotNull final Supplier<T> query) {
+        if (routing != null) {
+            final var start = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                final var index = (start + i) % replicas.size();
+                if (caughtUp(index, userId, watermark)) {
+                    replicaReads.increment();
+                    return routing.on(index, query);
+                }
+            }
+        }
+        primaryReads.increment();
+        return query.get();
+    }
+
+    private boolean caughtUp(final int index, final long userId, final long watermark) {
+        try {
+            final var versions = replicas.get(index).queryForList(
+                    "SELECT sync_version FROM users WHERE id = ?", Long.class, userId);
+            return !versions.isEmpty() && versions.getFirst() != null && versions.getFirst() >= watermark;
+        } catch (final DataAccessException e) {
+            log.warning("Replica " + index + " not available: " + e.getMessage());
+            return false;
+        }
+    }
+}
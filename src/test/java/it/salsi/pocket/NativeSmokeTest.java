@@ -0,0 +1,118 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket;
+
+import it.salsi.pocket.client.PocketApiClient;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.EncoderHelper;
+import it.salsi.pocket.security.RSAHelper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledInNativeImage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Boots the native binary on H2 and serves one login, printing time since process start and resident memory.
+ * Runs only inside the image built by {@code mvn -P nativeTest test}
+ */
+@EnabledInNativeImage
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:native;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=none",
+        "spring.jpa.show-sql=false",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:h2-schema.sql",
+        "server.aes.cbc.iv=1234567890123456",
+        "server.socket-port=0",
+        "logging.level.it.salsi.pocket=WARN",
+        "logging.level.org.springframework=WARN"
+})
+@DisplayName("Native image smoke test")
+class NativeSmokeTest {
+
+    private static final String PASSWD = "passwd";
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private EncoderHelper encoderHelper;
+
+    @Test
+    @DisplayName("Should start and serve a login")
+    void shouldStartAndServeLogin() throws Exception {
+        final var started = Duration.between(ProcessHandle.current().info().startInstant().orElseThrow(), Instant.now());
+
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+        final var user = userRepository.save(new User("native", UUID.randomUUID() + "@pocket.local",
+                encoderHelper.encode(PASSWD)));
+        final var device = new Device(user);
+        device.setUuid(UUID.randomUUID().toString());
+        device.setPublicKey(rsaHelper.getPublicKeyString());
+        device.setPrivateKey(rsaHelper.getPrivateKeyString());
+        final var saved = deviceRepository.save(device);
+
+        final var plain = saved.getId() + "|secret|0|" + user.getEmail() + "|" + PASSWD;
+        final var token = Base64.getEncoder()
+                .encodeToString(rsaHelper.encrypt(plain.getBytes(StandardCharsets.UTF_8)))
+                .replace('+', '-')
+                .replace('/', '_');
+
+        final var response = new PocketApiClient("http://localhost:" + port).getData(saved.getUuid(), token);
+        assertTrue(response.isSuccess(), response.getErrorMessage());
+        assertNotNull(response.getData());
+
+        System.out.printf("native startup %d ms, %s%n", started.toMillis(), rss());
+    }
+
+    private static String rss() throws Exception {
+        return Files.readAllLines(Path.of("/proc/self/status")).stream()
+                .filter(line -> line.startsWith("VmRSS:"))
+                .findFirst()
+                .map(line -> line.replaceAll("\\s+", " "))
+                .orElse("VmRSS: n/a");
+    }
+}
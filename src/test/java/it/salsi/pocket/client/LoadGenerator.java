@@ -0,0 +1,490 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import it.salsi.commons.CommonsException;
+import it.salsi.pocket.Application;
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.security.RSAHelper;
+import it.salsi.pocket.security.SessionMac;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.MariaDBContainer;
+import org.testcontainers.utility.MountableFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static it.salsi.pocket.Constant.DIVISOR;
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+
+/**
+ * Open loop load generator built on {@link PocketApiClient}.
+ * <p>
+ * Starts the server locally (H2 or a MariaDB container), provisions users and devices through the IPC socket,
+ * then fires a getData/persist/heartbeat mix at a fixed rate and reports throughput and latency percentiles.
+ * Latency is measured from the scheduled start of each request, so a slow server is not hidden by a
+ * generator that falls behind. Heap and GC figures cover the whole JVM, server and generator: compare runs
+ * of the two {@code load.api} values under the same options rather than reading them as absolute numbers.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.mainClass=it.salsi.pocket.client.LoadGenerator -Dexec.classpathScope=test \
+ *     -Dload.users=20 -Dload.rate=200 -Dload.duration=60
+ * </pre>
+ * Options (system properties):
+ * <ul>
+ *     <li>{@code load.db}: {@code h2} (default) or {@code mariadb}, needs docker</li>
+ *     <li>{@code load.users}: users to provision, one device each (10)</li>
+ *     <li>{@code load.rate}: requests per second (100)</li>
+ *     <li>{@code load.duration}, {@code load.warmup}: seconds (30, 5)</li>
+ *     <li>{@code load.mix}: getData,persist,heartbeat weights (20,30,50)</li>
+ *     <li>{@code load.api}: {@code servlet} (default) or {@code rx}, the reactive endpoints under {@code /api/v5/rx}</li>
+ *     <li>{@code load.out}: json report ({@code target/load-result.json})</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+
+    enum Operation {
+        GET_DATA, PERSIST, HEARTBEAT
+    }
+
+    private static final String ADMIN_PASSWD = "____admin_password_change_me____";
+    private static final String USER_PASSWD = "load_passwd";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final PocketApiClient client;
+    private final boolean rx;
+    private final int[] mix;
+    private final long warmupEnd;
+
+    /**
+     * Latencies in nanoseconds, one sample list per operation
+     */
+    private final Samples[] samples = {new Samples(), new Samples(), new Samples()};
+    private final long[] errors = new long[Operation.values().length];
+
+    /**
+     * Highest heap occupancy sampled after the warm up, GC count and time over the same span
+     */
+    private volatile long heapPeak;
+    private long @Nullable [] gcStart;
+    private long gcCount;
+    private long gcMillis;
+
+    private LoadGenerator(@NotNull final String baseUrl, final boolean rx, final int @NotNull [] mix, final long warmupEnd) {
+        this.client = new PocketApiClient(baseUrl, "__cors_token_change_me__", rx ? "/api/v5/rx" : "/api/v5");
+        this.rx = rx;
+        this.mix = mix;
+        this.warmupEnd = warmupEnd;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final var db = System.getProperty("load.db", "h2");
+        final var users = Integer.getInteger("load.users", 10);
+        final var rate = Integer.getInteger("load.rate", 100);
+        final var duration = Duration.ofSeconds(Integer.getInteger("load.duration", 30));
+        final var warmup = Duration.ofSeconds(Integer.getInteger("load.warmup", 5));
+        final var mix = Arrays.stream(System.getProperty("load.mix", "20,30,50").split(","))
+                .mapToInt(weight -> Integer.parseInt(weight.trim()))
+                .toArray();
+        final var out = Path.of(System.getProperty("load.out", "target/load-result.json"));
+        final var api = System.getProperty("load.api", "servlet");
+        if (!"servlet".equals(api) && !"rx".equals(api)) {
+            throw new IllegalArgumentException("load.api must be servlet or rx");
+        }
+        if (mix.length != Operation.values().length) {
+            throw new IllegalArgumentException("load.mix needs " + Operation.values().length + " weights");
+        }
+
+        final var httpPort = freePort();
+        final var ipcPort = freePort();
+        MariaDBContainer<?> mariadb = null;
+        ConfigurableApplicationContext context = null;
+        try {
+            if ("mariadb".equals(db)) {
+                mariadb = new MariaDBContainer<>("mariadb:11")
+                        .withDatabaseName("pocket5")
+                        .withCopyFileToContainer(MountableFile.forHostPath("scripts/pocket5.sql"),
+                                "/docker-entrypoint-initdb.d/pocket5.sql");
+                mariadb.start();
+                context = new SpringApplicationBuilder(Application.class).run(
+                        "--spring.datasource.url=" + mariadb.getJdbcUrl(),
+                        "--spring.datasource.username=" + mariadb.getUsername(),
+                        "--spring.datasource.password=" + mariadb.getPassword(),
+                        "--server.port=" + httpPort,
+                        "--server.socket-port=" + ipcPort,
+                        "--server.auth.passwd=" + ADMIN_PASSWD,
+                        "--server.aes.cbc.iv=1234567890123456",
+                        "--server.rate-limit.enabled=false",
+                        "--logging.level.it.salsi.pocket=WARN");
+            } else {
+                context = EmbeddedH2.start("load",
+                        "server.port=" + httpPort,
+                        "server.socket-port=" + ipcPort,
+                        "server.auth.passwd=" + ADMIN_PASSWD,
+                        // every simulated device comes from the same address
+                        "server.rate-limit.enabled=false");
+            }
+
+            final var devices = provision(ipcPort, users);
+            final var start = System.nanoTime();
+            final var generator = new LoadGenerator("http://localhost:" + httpPort, "rx".equals(api), mix, start + warmup.toNanos());
+            generator.run(devices, rate, start, warmup.plus(duration));
+
+            final var report = generator.report(duration);
+            System.out.println(report.text());
+            Files.createDirectories(out.toAbsolutePath().getParent());
+            Files.writeString(out, report.json());
+            System.out.println("Report written to " + out);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+            if (mariadb != null) {
+                mariadb.stop();
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Issue requests at a fixed rate until the run ends, every request goes to the next device in round-robin
+     */
+    private void run(@NotNull final List<DeviceSession> devices, final int rate, final long start, @NotNull final Duration length)
+            throws InterruptedException {
+        final var interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        final var end = start + length.toNanos();
+        final var memory = ManagementFactory.getMemoryMXBean();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor();
+             final var sampler = Executors.newSingleThreadScheduledExecutor()) {
+            sampler.scheduleAtFixedRate(() -> {
+                if (System.nanoTime() >= warmupEnd) {
+                    if (gcStart == null) {
+                        gcStart = gcTotals();
+                    }
+                    heapPeak = Math.max(heapPeak, memory.getHeapMemoryUsage().getUsed());
+                }
+            }, 0, 100, TimeUnit.MILLISECONDS);
+            var scheduled = start;
+            for (long i = 0; scheduled < end; i++, scheduled = start + i * interval) {
+                final var wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                final var device = devices.get((int) (i % devices.size()));
+                final var intended = scheduled;
+                executor.submit(() -> execute(device, pick(), intended));
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.err.println("Requests still running after the end of the run");
+            }
+        }
+        if (gcStart != null) {
+            final var gcEnd = gcTotals();
+            gcCount = gcEnd[0] - gcStart[0];
+            gcMillis = gcEnd[1] - gcStart[1];
+        }
+    }
+
+    /**
+     * Collections and milliseconds spent collecting since the JVM started, all collectors
+     */
+    private static long @NotNull [] gcTotals() {
+        final var ret = new long[2];
+        for (final var gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ret[0] += Math.max(0, gc.getCollectionCount());
+            ret[1] += Math.max(0, gc.getCollectionTime());
+        }
+        return ret;
+    }
+
+    @NotNull
+    private Operation pick() {
+        var value = ThreadLocalRandom.current().nextInt(Arrays.stream(mix).sum());
+        for (final var operation : Operation.values()) {
+            value -= mix[operation.ordinal()];
+            if (value < 0) {
+                return operation;
+            }
+        }
+        return Operation.HEARTBEAT;
+    }
+
+    /**
+     * A device is used by one request at a time, like a real client; the time spent waiting for it counts as latency
+     */
+    private void execute(@NotNull final DeviceSession device, @NotNull Operation operation, final long intended) {
+        device.lock.lock();
+        try {
+            if (device.secret == null) {
+                operation = Operation.GET_DATA;
+            }
+            final var ok = switch (operation) {
+                case GET_DATA -> getData(device);
+                case PERSIST -> persist(device);
+                case HEARTBEAT -> heartbeat(device);
+            };
+            if (!ok) {
+                device.secret = null;
+            }
+            if (intended >= warmupEnd) {
+                synchronized (samples[operation.ordinal()]) {
+                    samples[operation.ordinal()].add(System.nanoTime() - intended);
+                    if (!ok) {
+                        errors[operation.ordinal()]++;
+                    }
+                }
+            }
+        } catch (final CommonsException e) {
+            device.secret = null;
+            System.err.println("Token error: " + e.getMessage());
+        } finally {
+            device.lock.unlock();
+        }
+    }
+
+    private boolean getData(@NotNull final DeviceSession device) throws CommonsException {
+        final var secret = UUID.randomUUID().toString();
+        final var token = device.token(device.id, secret, device.timestampLastUpdate, device.email, USER_PASSWD);
+        final Container data;
+        if (rx) {
+            final var response = client.getDataStream(device.uuid, token);
+            data = response.isSuccess() && response.getData() != null && !response.getData().isEmpty()
+                    ? response.getData().getFirst() : null;
+        } else {
+            final var response = client.getData(device.uuid, token);
+            data = response.isSuccess() ? response.getData() : null;
+        }
+        if (data == null) {
+            return false;
+        }
+        device.secret = secret;
+        device.timestampLastUpdate = data.timestampLastUpdate();
+        device.timestampLastHeartbeat = device.timestampLastUpdate;
+        return true;
+    }
+
+    private boolean persist(@NotNull final DeviceSession device) throws CommonsException {
+        final var group = new Group();
+        group.setId(++device.localId);
+        group.setTitle("load " + device.localId);
+        group.setIcon("icon");
+        final var response = client.postData(device.uuid,
+                device.token(device.id, device.secret, device.timestampLastUpdate, device.email, USER_PASSWD),
+                new Container(device.timestampLastUpdate, null, null, List.of(group), List.of(), List.of()));
+        if (!response.isSuccess() || response.getData() == null) {
+            return false;
+        }
+        device.timestampLastUpdate = response.getData().timestampLastUpdate();
+        device.timestampLastHeartbeat = device.timestampLastUpdate;
+        return true;
+    }
+
+    /**
+     * MAC heartbeat, the RSA one is only sent by old clients
+     */
+    private boolean heartbeat(@NotNull final DeviceSession device) {
+        assert device.secret != null;
+        final var message = String.join(DIVISOR.value, device.uuid, String.valueOf(device.id), String.valueOf(device.timestampLastHeartbeat));
+        final var response = client.heartbeat(device.uuid, device.timestampLastHeartbeat,
+                SessionMac.sign(SessionMac.deriveKey(device.secret), message));
+        if (!response.isSuccess() || response.getData() == null || response.getData().timestampLastUpdate() == 0) {
+            return false;
+        }
+        device.timestampLastHeartbeat = response.getData().timestampLastUpdate();
+        return true;
+    }
+
+    /**
+     * ADD_USER and ADD_DEVICE for every user through the IPC socket, as the admin tooling does
+     */
+    @NotNull
+    private static List<DeviceSession> provision(final int ipcPort, final int users) throws Exception {
+        final var mapper = new ObjectMapper();
+        final var ret = new ArrayList<DeviceSession>(users);
+        try (final var socket = connect(ipcPort);
+             final var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             final var out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8)) {
+            ipc(in, out, ADMIN_PASSWD, false);
+            for (int i = 0; i < users; i++) {
+                final var email = "load" + i + "@pocket.local";
+                ipc(in, out, String.join(DIVISOR.value, "ADD_USER", email, USER_PASSWD, "load" + i), true);
+                final var device = mapper.readTree(ipc(in, out, String.join(DIVISOR.value, "ADD_DEVICE", email), true));
+                ret.add(new DeviceSession(device, email));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return json line of the reply when expected, the server closes each reply with the {@code OK} code
+     */
+    @Nullable
+    private static String ipc(@NotNull final BufferedReader in, @NotNull final PrintWriter out,
+                              @NotNull final String line, final boolean json) throws IOException {
+        out.println(line);
+        var reply = in.readLine();
+        String ret = null;
+        if (json && reply != null && reply.startsWith("{")) {
+            ret = reply;
+            reply = in.readLine();
+        }
+        if (!"0".equals(reply) || (json && ret == null)) {
+            throw new IOException("IPC " + line.split("[" + DIVISOR.value + "]")[0] + " failed: " + reply);
+        }
+        return ret;
+    }
+
+    /**
+     * The IPC socket is opened asynchronously once the application is ready
+     */
+    @NotNull
+    private static Socket connect(final int port) throws IOException, InterruptedException {
+        for (int i = 0; ; i++) {
+            try {
+                return new Socket("localhost", port);
+            } catch (final IOException e) {
+                if (i == 50) {
+                    throw e;
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (final var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @NotNull
+    private Report report(@NotNull final Duration duration) {
+        final var text = new StringBuilder(String.format("%-10s %9s %7s %9s %9s %9s %9s %9s%n",
+                "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        final var json = new StringBuilder("{\"seconds\":").append(duration.toSeconds()).append(",\"operations\":{");
+        var total = 0L;
+        for (final var operation : Operation.values()) {
+            final var values = samples[operation.ordinal()].sorted();
+            final var count = values.length;
+            total += count;
+            final var throughput = (double) count / duration.toSeconds();
+            final double p50 = millis(values, 0.5), p99 = millis(values, 0.99), p999 = millis(values, 0.999), max = millis(values, 1);
+            text.append(String.format(Locale.ROOT, "%-10s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                    operation.name().toLowerCase(Locale.ROOT), count, errors[operation.ordinal()], throughput, p50, p99, p999, max));
+            json.append(operation.ordinal() == 0 ? "" : ",")
+                    .append(String.format(Locale.ROOT,
+                            "\"%s\":{\"count\":%d,\"errors\":%d,\"throughput\":%.1f,\"p50\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}",
+                            operation.name().toLowerCase(Locale.ROOT), count, errors[operation.ordinal()], throughput, p50, p99, p999, max));
+        }
+        final var heapPeakMb = heapPeak / (1024.0 * 1024.0);
+        text.append(String.format(Locale.ROOT, "total %d requests, %.1f req/s%n", total, (double) total / duration.toSeconds()));
+        text.append(String.format(Locale.ROOT, "api %s, heap peak %.1f MB, gc %d collections %d ms",
+                rx ? "rx" : "servlet", heapPeakMb, gcCount, gcMillis));
+        json.append("},").append(String.format(Locale.ROOT, "\"api\":\"%s\",\"heapPeakMb\":%.1f,\"gcCount\":%d,\"gcMillis\":%d}",
+                rx ? "rx" : "servlet", heapPeakMb, gcCount, gcMillis));
+        return new Report(text.toString(), json.toString());
+    }
+
+    private static double millis(final long @NotNull [] sorted, final double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final var index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1_000_000.0;
+    }
+
+    private record Report(@NotNull String text, @NotNull String json) {
+    }
+
+    private static final class Samples {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(final long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long @NotNull [] sorted() {
+            final var ret = Arrays.copyOf(values, size);
+            Arrays.sort(ret);
+            return ret;
+        }
+    }
+
+    /**
+     * Client side state of a provisioned device
+     */
+    private static final class DeviceSession {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long id;
+        private final String uuid;
+        private final String email;
+        private final RSAHelper rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        private @Nullable String secret;
+        private long timestampLastUpdate;
+        private long timestampLastHeartbeat;
+        private long localId;
+
+        DeviceSession(@NotNull final JsonNode device, @NotNull final String email) throws CommonsException {
+            this.id = device.get("id").asLong();
+            this.uuid = device.get("uuid").asText();
+            this.email = email;
+            final var pem = device.get("hostPublicKey").asText()
+                    .replaceAll("-----[A-Z ]+-----", "")
+                    .replaceAll("\\s", "");
+            rsaHelper.loadPublicKey(Base64.getDecoder().decode(pem));
+        }
+
+        @NotNull
+        String token(final Object @NotNull ... parts) throws CommonsException {
+            final var plain = String.join(DIVISOR.value, Arrays.stream(parts).map(String::valueOf).toList());
+            return Base64.getEncoder()
+                    .encodeToString(rsaHelper.encrypt(plain.getBytes(StandardCharsets.UTF_8)))
+                    .replace('+', '-')
+                    .replace('/', '_');
+        }
+    }
+}
@@ -25,13 +25,17 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 /**
  * Mock client for testing Pocket Backend API endpoints.
@@ -42,20 +46,45 @@ public class PocketApiClient {
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
     private final String baseUrl;
+    private final String apiUrl;
     private final String defaultUserAgent;
+    private final String apiKey;
 
     /**
-     * Creates a new Pocket API client.
+     * Creates a new Pocket API client with the default API key.
      *
      * @param baseUrl The base URL of the Pocket API (e.g., "http://localhost:8081")
      */
     public PocketApiClient(@NotNull String baseUrl) {
+        this(baseUrl, "__cors_token_change_me__");
+    }
+
+    /**
+     * Creates a new Pocket API client.
+     *
+     * @param baseUrl The base URL of the Pocket API (e.g., "http://localhost:8081")
+     * @param apiKey  The value sent in the X-API-Key header (security.cors.header-token)
+     */
+    public PocketApiClient(@NotNull String baseUrl, @NotNull String apiKey) {
+        this(baseUrl, apiKey, "/api/v5");
+    }
+
+    /**
+     * Creates a new Pocket API client.
+     *
+     * @param baseUrl The base URL of the Pocket API (e.g., "http://localhost:8081")
+     * @param apiKey  The value sent in the X-API-Key header (security.cors.header-token)
+     * @param apiPath The path of the sync endpoints, "/api/v5" or "/api/v5/rx" for the reactive ones
+     */
+    public PocketApiClient(@NotNull String baseUrl, @NotNull String apiKey, @NotNull String apiPath) {
         this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.apiUrl = this.baseUrl + apiPath;
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(10))
                 .build();
         this.objectMapper = new ObjectMapper();
         this.defaultUserAgent = "PocketApiClient/1.0";
+        this.apiKey = apiKey;
     }
 
     /**
@@ -67,11 +96,12 @@ public class PocketApiClient {
      */
     public ApiResponse<Container> getData(@NotNull String uuid, @NotNull String crypt) {
         try {
-            String url = String.format("%s/api/v5/%s/%s", baseUrl, uuid, crypt);
+            String url = String.format("%s/%s/%s", apiUrl, uuid, crypt);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .header("Accept", "application/json")
                     .GET()
                     .build();
@@ -85,6 +115,44 @@ public class PocketApiClient {
         }
     }
 
+    /**
+     * Gets session data from the reactive API, one container per page.
+     *
+     * @param uuid  The device UUID
+     * @param crypt The encrypted authentication token
+     * @return API response containing the pages in the order they were streamed
+     */
+    public ApiResponse<List<Container>> getDataStream(@NotNull String uuid, @NotNull String crypt) {
+        try {
+            String url = String.format("%s/%s/%s", apiUrl, uuid, crypt);
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(url))
+                    .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
+                    .header("Accept", "application/x-ndjson")
+                    .GET()
+                    .build();
+
+            HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                    return ApiResponse.error("HTTP " + response.statusCode(), response.statusCode());
+                }
+                List<Container> pages = new ArrayList<>();
+                for (String line : (Iterable<String>) lines::iterator) {
+                    if (!line.isBlank()) {
+                        pages.add(objectMapper.readValue(line, Container.class));
+                    }
+                }
+                return ApiResponse.success(pages, response.statusCode());
+            }
+
+        } catch (URISyntaxException | IOException | InterruptedException | UncheckedIOException e) {
+            return ApiResponse.error("Request failed: " + e.getMessage());
+        }
+    }
+
     /**
      * Posts session data to the API.
      *
@@ -95,12 +163,13 @@ public class PocketApiClient {
      */
     public ApiResponse<Container> postData(@NotNull String uuid, @NotNull String crypt, @NotNull Container container) {
         try {
-            String url = String.format("%s/api/v5/%s/%s", baseUrl, uuid, crypt);
+            String url = String.format("%s/%s/%s", apiUrl, uuid, crypt);
             String jsonBody = objectMapper.writeValueAsString(container);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .header("Content-Type", "application/json")
                     .header("Accept", "application/json")
                     .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
@@ -125,11 +194,12 @@ public class PocketApiClient {
      */
     public ApiResponse<Boolean> changePassword(@NotNull String uuid, @NotNull String crypt, boolean changePasswdDataOnServer) {
         try {
-            String url = String.format("%s/api/v5/%s/%s/%s", baseUrl, uuid, crypt, changePasswdDataOnServer);
+            String url = String.format("%s/%s/%s/%s", apiUrl, uuid, crypt, changePasswdDataOnServer);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .header("Accept", "application/json")
                     .PUT(HttpRequest.BodyPublishers.noBody())
                     .build();
@@ -152,11 +222,12 @@ public class PocketApiClient {
      */
     public ApiResponse<Void> deleteCacheRecord(@NotNull String uuid, @NotNull String crypt) {
         try {
-            String url = String.format("%s/api/v5/%s/%s", baseUrl, uuid, crypt);
+            String url = String.format("%s/%s/%s", apiUrl, uuid, crypt);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .DELETE()
                     .build();
 
@@ -178,11 +249,12 @@ public class PocketApiClient {
      */
     public ApiResponse<Void> checkCacheRecord(@NotNull String uuid, @NotNull String crypt) {
         try {
-            String url = String.format("%s/api/v5/%s/%s/check", baseUrl, uuid, crypt);
+            String url = String.format("%s/%s/%s/check", apiUrl, uuid, crypt);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .GET()
                     .build();
 
@@ -195,6 +267,63 @@ public class PocketApiClient {
         }
     }
 
+    /**
+     * Keeps the session of a logged device alive.
+     *
+     * @param uuid  The device UUID
+     * @param crypt The encrypted heartbeat token (deviceId|secret|timestampLastUpdate)
+     * @return API response, an empty container with timestamp 0 when the session is gone
+     */
+    public ApiResponse<Container> heartbeat(@NotNull String uuid, @NotNull String crypt) {
+        try {
+            String url = String.format("%s/heartbeat/%s/%s", apiUrl, uuid, crypt);
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(url))
+                    .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            return handleResponse(response, Container.class);
+
+        } catch (URISyntaxException | IOException | InterruptedException e) {
+            return ApiResponse.error("Request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Keeps the session of a logged device alive without an RSA token.
+     *
+     * @param uuid                The device UUID
+     * @param timestampLastUpdate The timestamp returned by the last call
+     * @param mac                 SessionMac of uuid|deviceId|timestampLastUpdate
+     * @return API response, an empty container with timestamp 0 when the session is gone
+     */
+    public ApiResponse<Container> heartbeat(@NotNull String uuid, long timestampLastUpdate, @NotNull String mac) {
+        try {
+            String url = String.format("%s/heartbeat/%s/%d/%s", apiUrl, uuid, timestampLastUpdate, mac);
+
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(new URI(url))
+                    .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
+                    .header("Accept", "application/json")
+                    .GET()
+                    .build();
+
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            return handleResponse(response, Container.class);
+
+        } catch (URISyntaxException | IOException | InterruptedException e) {
+            return ApiResponse.error("Request failed: " + e.getMessage());
+        }
+    }
+
     /**
      * Gets application health status.
      *
@@ -207,6 +336,7 @@ public class PocketApiClient {
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .header("Accept", "application/json")
                     .GET()
                     .build();
@@ -229,11 +359,12 @@ public class PocketApiClient {
      */
     public CompletableFuture<ApiResponse<Container>> getDataAsync(@NotNull String uuid, @NotNull String crypt) {
         try {
-            String url = String.format("%s/api/v5/%s/%s", baseUrl, uuid, crypt);
+            String url = String.format("%s/%s/%s", apiUrl, uuid, crypt);
             
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(new URI(url))
                     .header("User-Agent", defaultUserAgent)
+                    .header("X-API-Key", apiKey)
                     .header("Accept", "application/json")
                     .GET()
                     .build();
@@ -293,7 +424,7 @@ public class PocketApiClient {
                     return ApiResponse.success(result, response.statusCode());
                 }
             } else {
-                return ApiResponse.error("HTTP " + response.statusCode() + ": " + response.body());
+                return ApiResponse.error("HTTP " + response.statusCode() + ": " + response.body(), response.statusCode());
             }
         } catch (Exception e) {
             return ApiResponse.error("Failed to parse response: " + e.getMessage());
@@ -304,7 +435,7 @@ public class PocketApiClient {
         if (response.statusCode() >= 200 && response.statusCode() < 300) {
             return ApiResponse.success(null, response.statusCode());
         } else {
-            return ApiResponse.error("HTTP " + response.statusCode() + ": " + response.body());
+            return ApiResponse.error("HTTP " + response.statusCode() + ": " + response.body(), response.statusCode());
         }
     }
 
@@ -329,7 +460,11 @@ public class PocketApiClient {
         }
 
         public static <T> ApiResponse<T> error(@NotNull String errorMessage) {
-            return new ApiResponse<>(false, null, errorMessage, -1);
+            return error(errorMessage, -1);
+        }
+
+        public static <T> ApiResponse<T> error(@NotNull String errorMessage, int statusCode) {
+            return new ApiResponse<>(false, null, errorMessage, statusCode);
         }
 
         public boolean isSuccess() {
@@ -0,0 +1,81 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import it.salsi.pocket.Application;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Full application on an in-memory H2 in MariaDB mode, schema from {@code h2-schema.sql},
+ * for benchmarks and load runs on a single machine
+ */
+public final class EmbeddedH2 {
+
+    @Nullable
+    private static ConfigurableApplicationContext shared;
+
+    private EmbeddedH2() {
+    }
+
+    /**
+     * One context on a random port with the default properties for every test class that needs nothing else, started on first
+     * use and closed by the shutdown hook at the end of the run; classes keep apart by using their own users
+     */
+    @NotNull
+    public static synchronized ConfigurableApplicationContext shared() {
+        if (shared == null) {
+            shared = start("shared", "server.port=0");
+        }
+        return shared;
+    }
+
+    /**
+     * @param properties extra {@code key=value} pairs, replacing the defaults with the same key
+     */
+    @NotNull
+    public static ConfigurableApplicationContext start(@NotNull final String name, @NotNull final String... properties) {
+        final var args = new LinkedHashMap<String, String>();
+        Stream.concat(Stream.of(
+                        "spring.datasource.url=jdbc:h2:mem:" + name + ";MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "spring.jpa.hibernate.ddl-auto=none",
+                        "spring.jpa.show-sql=false",
+                        "spring.sql.init.mode=always",
+                        "spring.sql.init.schema-locations=classpath:h2-schema.sql",
+                        "server.aes.cbc.iv=1234567890123456",
+                        "server.socket-port=0",
+                        "logging.level.it.salsi.pocket=WARN",
+                        "logging.level.org.springframework=WARN",
+                        "logging.level.org.springframework.security=WARN",
+                        "logging.level.org.springframework.web=WARN"), Stream.of(properties))
+                .forEach(property -> args.put(property.substring(0, property.indexOf('=')), property));
+
+
+        // command line arguments, so they win over application.yaml and the test profile
+        return new SpringApplicationBuilder(Application.class)
+                .profiles("test")
+                .run(args.values().stream().map(property -> "--" + property).toArray(String[]::new));
+    }
+}
@@ -0,0 +1,68 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import it.salsi.pocket.models.Group;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("NativeHints Tests")
+class NativeHintsTest {
+
+    private static final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeAll
+    static void register() {
+        new NativeHints().registerHints(hints, NativeHintsTest.class.getClassLoader());
+    }
+
+    @Test
+    @DisplayName("Should register Jackson bindings for every serialized type")
+    void shouldRegisterBindings() throws Exception {
+        for (final var type : NativeHints.BINDINGS) {
+            assertTrue(RuntimeHintsPredicates.reflection().onType(type).test(hints), type.getName());
+        }
+        assertTrue(RuntimeHintsPredicates.reflection().onMethodInvocation(Group.class, "getTitle").test(hints));
+    }
+
+    @Test
+    @DisplayName("Should point at the IPC device class that exists")
+    void shouldRegisterIpcDevice() {
+        assertDoesNotThrow(() -> Class.forName(NativeHints.DEVICE_EXTENDED));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(TypeReference.of(NativeHints.DEVICE_EXTENDED))
+                .withMemberCategory(MemberCategory.ACCESS_DECLARED_FIELDS).test(hints));
+    }
+
+    @Test
+    @DisplayName("Should register resources present on the classpath")
+    void shouldRegisterResources() {
+        for (final var resource : NativeHints.RESOURCES) {
+            assertNotNull(NativeHintsTest.class.getClassLoader().getResource(resource), resource);
+            assertTrue(RuntimeHintsPredicates.resource().forResource(resource).test(hints), resource);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.configs;
+
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.EncoderHelper;
+import it.salsi.pocket.security.RSAHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+
+/**
+ * Users, devices and session tokens of the tests driving {@link SessionController} on an {@link EmbeddedH2} context
+ */
+public final class SessionFixture {
+
+    public static final String PASSWD = "passwd";
+
+    public static final String ADDRESS = "127.0.0.1";
+
+    /**
+     * A device with its key pair and the session secret its tokens carry
+     */
+    public record Session(@NotNull RSAHelper rsaHelper, @NotNull Device device, @NotNull String secret) {
+
+        @NotNull
+        public String uuid() {
+            return device.getUuid();
+        }
+
+        @NotNull
+        public User user() {
+            return device.getUser();
+        }
+
+        @NotNull
+        public String token(final long timestampLastUpdate) throws Exception {
+            return SessionFixture.token(rsaHelper, device, secret, timestampLastUpdate);
+        }
+    }
+
+    private @NotNull final ConfigurableApplicationContext context;
+
+    public SessionFixture(@NotNull final ConfigurableApplicationContext context) {
+        this.context = context;
+    }
+
+    @NotNull
+    public SessionController controller() {
+        return context.getBean(SessionController.class);
+    }
+
+    @NotNull
+    public User user(@NotNull final String name) {
+        final var encoderHelper = context.getBean(EncoderHelper.class);
+        return context.getBean(UserRepository.class)
+                .save(new User(name, UUID.randomUUID() + "@pocket.local", encoderHelper.encode(PASSWD)));
+    }
+
+    @NotNull
+    public Device device(@NotNull final RSAHelper rsaHelper, @NotNull final User user) {
+        final var device = new Device(user);
+        device.setUuid(UUID.randomUUID().toString());
+        device.setPublicKey(rsaHelper.getPublicKeyString());
+        device.setPrivateKey(rsaHelper.getPrivateKeyString());
+        return context.getBean(DeviceRepository.class).save(device);
+    }
+
+    /**
+     * Device of a new user, not logged in yet
+     */
+    @NotNull
+    public Session session(@NotNull final String secret) throws Exception {
+        return session(secret, user(secret));
+    }
+
+    /**
+     * New device of {@code user}, not logged in yet
+     */
+    @NotNull
+    public Session session(@NotNull final String secret, @NotNull final User user) throws Exception {
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+        return new Session(rsaHelper, device(rsaHelper, user), secret);
+    }
+
+    @NotNull
+    public ResponseEntity<Container> getData(@NotNull final Session session, final long timestampLastUpdate) throws Exception {
+        return controller().getData(session.uuid(), session.token(timestampLastUpdate), ADDRESS);
+    }
+
+    @NotNull
+    public ResponseEntity<Container> persist(@NotNull final Session session, final long timestampLastUpdate,
+                                             @NotNull final String body) throws Exception {
+        return persist(session, timestampLastUpdate, body, null);
+    }
+
+    @NotNull
+    public ResponseEntity<Container> persist(@NotNull final Session session, final long timestampLastUpdate,
+                                             @NotNull final String body, @Nullable final String idempotencyKey) throws Exception {
+        return controller().persist(session.uuid(), session.token(timestampLastUpdate),
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "application/json", ADDRESS, idempotencyKey);
+    }
+
+    /**
+     * RSA token of the sync calls, {@code deviceId|secret|timestampLastUpdate|email|passwd} in url safe base64
+     */
+    @NotNull
+    public static String token(@NotNull final RSAHelper rsaHelper, @NotNull final Device device,
+                               @NotNull final String secret, final long timestampLastUpdate) throws Exception {
+        final var plain = device.getId() + "|" + secret + "|" + timestampLastUpdate + "|"
+                + device.getUser().getEmail() + "|" + PASSWD;
+        return Base64.getEncoder()
+                .encodeToString(rsaHelper.encrypt(plain.getBytes(StandardCharsets.UTF_8)))
+                .replace('+', '-')
+                .replace('/', '_');
+    }
+}
@@ -0,0 +1,97 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.repositories.FieldRepository;
+import it.salsi.pocket.repositories.GroupRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.EncoderHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static it.salsi.pocket.configs.SessionFixture.ADDRESS;
+import static it.salsi.pocket.configs.SessionFixture.PASSWD;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController change password Tests")
+class SessionChangePasswdTest {
+
+    private static final String NEW_PASSWD = "new-passwd";
+
+    private static final String GROUP = """
+            {"id":1,"serverId":0,"version":0,"groupId":0,"serverGroupId":0,"title":"%s","icon":"%s","note":"%s","deleted":false}""";
+    private static final String FIELD = """
+            {"id":1,"serverId":0,"version":0,"groupId":1,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"%s","value":"%s","isHidden":false,"deleted":false}""";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should store the vault re-encrypted with the new password")
+    void shouldReEncryptOnServer() throws Exception {
+        final var encoderHelper = context.getBean(EncoderHelper.class);
+        final var aesOld = encoderHelper.getCrypto(PASSWD);
+        final var aesNew = encoderHelper.getCrypto(NEW_PASSWD);
+
+        final var session = fixture.session("change-passwd");
+        final var login = fixture.getData(session, 0);
+        final var body = "{\"groups\":[" + GROUP.formatted(aesOld.encryptToString("g"), aesOld.encryptToString("i"),
+                aesOld.encryptToString("n")) + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(aesOld.encryptToString("f"), aesOld.encryptToString("secret")) + "]}";
+        final var persist = fixture.persist(session, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        final var users = context.getBean(UserRepository.class);
+        final var syncVersion = users.findSyncVersion(session.user().getId());
+        final var fieldId = persist.getBody().fields().getFirst().getServerId();
+        final var groupId = persist.getBody().groups().getFirst().getServerId();
+
+        final var plain = session.device().getId() + "|" + session.secret() + "|" + persist.getBody().timestampLastUpdate()
+                + "|" + session.user().getEmail() + "|" + PASSWD + "|" + NEW_PASSWD;
+        final var crypt = Base64.getEncoder()
+                .encodeToString(session.rsaHelper().encrypt(plain.getBytes(StandardCharsets.UTF_8)))
+                .replace('+', '-')
+                .replace('/', '_');
+        final var response = fixture.controller().changePasswd(session.uuid(), crypt, true, ADDRESS);
+        assertEquals(200, response.getStatusCode().value());
+
+        final var field = context.getBean(FieldRepository.class).findById(fieldId).orElseThrow();
+        assertEquals("f", aesNew.decryptToString(field.getTitle()));
+        assertEquals("secret", aesNew.decryptToString(field.getValue()));
+        final var group = context.getBean(GroupRepository.class).findById(groupId).orElseThrow();
+        assertEquals("g", aesNew.decryptToString(group.getTitle()));
+
+        final var user = users.findById(session.user().getId()).orElseThrow();
+        assertEquals(encoderHelper.encode(NEW_PASSWD), user.getPasswd());
+        assertEquals(syncVersion + 1, users.findSyncVersion(user.getId()));
+    }
+}
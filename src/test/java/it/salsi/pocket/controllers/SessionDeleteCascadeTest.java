@@ -0,0 +1,193 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.core.BaseModel;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.repositories.FieldRepository;
+import it.salsi.pocket.repositories.GroupFieldRepository;
+import it.salsi.pocket.repositories.GroupRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tree of every test user: {@code a} and {@code b} at the top level, {@code c} below {@code a}, {@code d} below
+ * {@code c}; one field per group, named after it, and a group field in {@code c}
+ */
+@DisplayName("SessionController delete cascade Tests")
+class SessionDeleteCascadeTest {
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    private record Tree(Session session, long timestampLastUpdate,
+                        Map<String, Group> groups, Map<String, Field> fields) {
+    }
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should soft delete the whole subtree of a deleted group")
+    void shouldCascadeToSubtree() throws Exception {
+        final var tree = tree();
+        final var a = tree.groups().get("a");
+        final var response = persist(tree, """
+                {"groups":[{"id":1,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"a","icon":"","deleted":true}],
+                 "groupFields":[],"fields":[]}
+                """.formatted(a.getServerId(), a.getVersion()));
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(1, response.getBody().groups().size());
+        final var now = response.getBody().timestampLastUpdate();
+
+        final var user = tree.session().user();
+        final var groups = byTitle(context.getBean(GroupRepository.class).findByUser(user), Group::getTitle);
+        final var fields = byTitle(context.getBean(FieldRepository.class).findByUser(user), Field::getTitle);
+        for (final var title : List.of("a", "c", "d")) {
+            assertTrue(groups.get(title).getDeleted(), title);
+            assertEquals(now, groups.get(title).getTimestampLastUpdate(), title);
+            assertTrue(fields.get(title).getDeleted(), title);
+            assertEquals(now, fields.get(title).getTimestampLastUpdate(), title);
+        }
+        assertEquals(tree.groups().get("d").getVersion() + 1, groups.get("d").getVersion());
+        assertFalse(groups.get("b").getDeleted());
+        assertFalse(fields.get("b").getDeleted());
+        assertTrue(context.getBean(GroupFieldRepository.class).findByUser(user).getFirst().getDeleted());
+
+        // other devices of the user learn about the cascade from their next getData
+        final var sync = fixture.getData(tree.session(), now);
+        assertEquals(List.of("a", "c", "d"), sync.getBody().groups().stream()
+                .filter(Group::getDeleted).map(Group::getTitle).sorted().toList());
+        assertEquals(List.of("a", "c", "d"), sync.getBody().fields().stream()
+                .filter(Field::getDeleted).map(Field::getTitle).sorted().toList());
+    }
+
+    @Test
+    @DisplayName("Should acknowledge descendants still sent by the client without a version conflict")
+    void shouldAcknowledgeAlreadyDeleted() throws Exception {
+        final var tree = tree();
+        final var a = tree.groups().get("a");
+        final var c = tree.groups().get("c");
+        final var d = tree.fields().get("d");
+        final var response = persist(tree, """
+                {"groups":[
+                  {"id":1,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"a","icon":"","deleted":true},
+                  {"id":3,"serverId":%d,"version":%d,"groupId":1,"serverGroupId":%d,"title":"c","icon":"","deleted":true}],
+                 "groupFields":[],
+                 "fields":[
+                  {"id":4,"serverId":%d,"version":%d,"groupId":4,"serverGroupId":%d,"groupFieldId":0,"serverGroupFieldId":0,"title":"d","value":"v","isHidden":false,"deleted":true}]}
+                """.formatted(a.getServerId(), a.getVersion(), c.getServerId(), c.getVersion(), a.getServerId(),
+                d.getServerId(), d.getVersion(), tree.groups().get("d").getServerId()));
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(2, response.getBody().groups().size());
+        assertEquals(1, response.getBody().fields().size());
+        assertTrue(response.getBody().fields().getFirst().getDeleted());
+    }
+
+    @Test
+    @DisplayName("Should leave rows moved out of a deleted group in the same sync where they were moved")
+    void shouldKeepMovedOut() throws Exception {
+        final var tree = tree();
+        final var a = tree.groups().get("a");
+        final var b = tree.groups().get("b");
+        final var c = tree.groups().get("c");
+        final var field = tree.fields().get("a");
+        final var response = persist(tree, """
+                {"groups":[
+                  {"id":1,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"a","icon":"","deleted":true},
+                  {"id":3,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"c","icon":"","deleted":false}],
+                 "groupFields":[],
+                 "fields":[
+                  {"id":1,"serverId":%d,"version":%d,"groupId":2,"serverGroupId":%d,"groupFieldId":0,"serverGroupFieldId":0,"title":"a","value":"v","isHidden":false,"deleted":false}]}
+                """.formatted(a.getServerId(), a.getVersion(), c.getServerId(), c.getVersion(),
+                field.getServerId(), field.getVersion(), b.getServerId()));
+        assertEquals(200, response.getStatusCode().value());
+
+        final var user = tree.session().user();
+        final var groups = byTitle(context.getBean(GroupRepository.class).findByUser(user), Group::getTitle);
+        final var fields = byTitle(context.getBean(FieldRepository.class).findByUser(user), Field::getTitle);
+        assertTrue(groups.get("a").getDeleted());
+        for (final var title : List.of("b", "c", "d")) {
+            assertFalse(groups.get(title).getDeleted(), title);
+        }
+        assertFalse(fields.get("a").getDeleted());
+        assertEquals(b.getServerId(), fields.get("a").getGroup().getId());
+        assertFalse(fields.get("c").getDeleted());
+
+        // the versions echoed for the moved rows are the stored ones, the next sync of the field goes through
+        final var moved = response.getBody().fields().getFirst();
+        assertEquals(fields.get("a").getVersion(), moved.getVersion());
+        final var next = fixture.persist(tree.session(), response.getBody().timestampLastUpdate(), """
+                {"groups":[],"groupFields":[],"fields":[
+                  {"id":1,"serverId":%d,"version":%d,"groupId":2,"serverGroupId":%d,"groupFieldId":0,"serverGroupFieldId":0,"title":"a","value":"w","isHidden":false,"deleted":false}]}
+                """.formatted(moved.getServerId(), moved.getVersion(), b.getServerId()));
+        assertEquals(200, next.getStatusCode().value());
+    }
+
+    private static Tree tree() throws Exception {
+        final var session = fixture.session("cascade");
+        final var login = fixture.getData(session, 0);
+
+        final var body = """
+                {"groups":[
+                  {"id":1,"serverId":0,"groupId":0,"serverGroupId":0,"title":"a","icon":"","deleted":false},
+                  {"id":2,"serverId":0,"groupId":0,"serverGroupId":0,"title":"b","icon":"","deleted":false},
+                  {"id":3,"serverId":0,"groupId":1,"serverGroupId":0,"title":"c","icon":"","deleted":false},
+                  {"id":4,"serverId":0,"groupId":3,"serverGroupId":0,"title":"d","icon":"","deleted":false}],
+                 "groupFields":[
+                  {"id":1,"serverId":0,"groupId":3,"serverGroupId":0,"title":"gc","isHidden":false,"deleted":false}],
+                 "fields":[
+                  {"id":1,"serverId":0,"groupId":1,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"a","value":"v","isHidden":false,"deleted":false},
+                  {"id":2,"serverId":0,"groupId":2,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"b","value":"v","isHidden":false,"deleted":false},
+                  {"id":3,"serverId":0,"groupId":3,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"c","value":"v","isHidden":false,"deleted":false},
+                  {"id":4,"serverId":0,"groupId":4,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"d","value":"v","isHidden":false,"deleted":false}]}
+                """;
+        final var persist = fixture.persist(session, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        return new Tree(session, persist.getBody().timestampLastUpdate(),
+                byTitle(persist.getBody().groups(), Group::getTitle), byTitle(persist.getBody().fields(), Field::getTitle));
+    }
+
+    private static ResponseEntity<Container> persist(final Tree tree, final String body) throws Exception {
+        return fixture.persist(tree.session(), tree.timestampLastUpdate(), body);
+    }
+
+    private static <T extends BaseModel<T>> Map<String, T> byTitle(final List<T> elements, final Function<T, String> title) {
+        return elements.stream().collect(Collectors.toMap(title, Function.identity()));
+    }
+}
@@ -0,0 +1,133 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.repositories.GroupRepository;
+import it.salsi.pocket.services.IdempotencyStore;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.UUID;
+
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.IDEMPOTENCY_KEY_MISMATCH;
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.REQUEST_IN_PROGRESS;
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.VERSION_CONFLICT;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController idempotent persist Tests")
+class SessionIdempotencyTest {
+
+    private static final String NEW_GROUP = """
+            {"groups":[{"id":1,"serverId":0,"groupId":0,"serverGroupId":0,"title":"g","icon":"","deleted":false}],
+             "groupFields":[],"fields":[]}""";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    private record Login(Session session, long timestampLastUpdate) {
+    }
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should answer a retried persist with the first answer without writing again")
+    void shouldReplayRetry() throws Exception {
+        final var login = login();
+        final var key = UUID.randomUUID().toString();
+
+        final var first = persist(login, NEW_GROUP, key);
+        assertEquals(200, first.getStatusCode().value());
+        assertNull(first.getHeaders().getFirst(SessionController.REPLAYED_HEADER));
+
+        // same token as the first attempt, its timestamp is no longer the device one
+        final var retry = persist(login, NEW_GROUP, key);
+        assertEquals(200, retry.getStatusCode().value());
+        assertEquals("true", retry.getHeaders().getFirst(SessionController.REPLAYED_HEADER));
+        assertSame(first.getBody(), retry.getBody());
+        assertEquals(1, context.getBean(GroupRepository.class).findByUser(login.session().user()).size());
+    }
+
+    @Test
+    @DisplayName("Should run again a retry of a failed persist and refuse one of a persist still running")
+    void shouldNotKeepFailures() throws Exception {
+        final var login = login();
+        final var stored = persist(login, NEW_GROUP, null);
+        final var group = stored.getBody().groups().getFirst();
+        final var stale = """
+                {"groups":[{"id":1,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"h","icon":"","deleted":false}],
+                 "groupFields":[],"fields":[]}""".formatted(group.getServerId(), group.getVersion() - 1);
+        final var current = new Login(login.session(), stored.getBody().timestampLastUpdate());
+
+        final var key = UUID.randomUUID().toString();
+        assertEquals(VERSION_CONFLICT.code, persist(current, stale, key).getStatusCode().value());
+        assertEquals(VERSION_CONFLICT.code, persist(current, stale, key).getStatusCode().value());
+
+        final var running = UUID.randomUUID().toString();
+        final var store = context.getBean(IdempotencyStore.class);
+        assertEquals(IdempotencyStore.State.NEW, store.claim(login.session().uuid(), running, sha256(NEW_GROUP)).state());
+        assertEquals(REQUEST_IN_PROGRESS.code, persist(current, NEW_GROUP, running).getStatusCode().value());
+        store.release(login.session().uuid(), running);
+    }
+
+    @Test
+    @DisplayName("Should refuse a key sent again with another body")
+    void shouldRejectKeyWithOtherBody() throws Exception {
+        final var login = login();
+        final var key = UUID.randomUUID().toString();
+        assertEquals(200, persist(login, NEW_GROUP, key).getStatusCode().value());
+
+        final var other = NEW_GROUP.replace("\"title\":\"g\"", "\"title\":\"h\"");
+        final var retry = persist(login, other, key);
+        assertEquals(IDEMPOTENCY_KEY_MISMATCH.code, retry.getStatusCode().value());
+        assertNull(retry.getBody());
+        assertEquals(1, context.getBean(GroupRepository.class).findByUser(login.session().user()).size());
+
+        // the first body still gets its answer
+        assertEquals("true", persist(login, NEW_GROUP, key).getHeaders().getFirst(SessionController.REPLAYED_HEADER));
+    }
+
+    private static byte[] sha256(final String body) throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Login login() throws Exception {
+        final var session = fixture.session("idempotency");
+        final var login = fixture.getData(session, 0);
+        assertEquals(200, login.getStatusCode().value());
+        return new Login(session, login.getBody().timestampLastUpdate());
+    }
+
+    private static ResponseEntity<Container> persist(final Login login, final String body, final String key) throws Exception {
+        return fixture.persist(login.session(), login.timestampLastUpdate(), body, key);
+    }
+}
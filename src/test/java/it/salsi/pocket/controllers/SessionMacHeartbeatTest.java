@@ -0,0 +1,75 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.security.SessionMac;
+import it.salsi.pocket.services.CacheManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.TIMESTAMP_LAST_UPDATE_NOT_MATCH;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController MAC heartbeat Tests")
+class SessionMacHeartbeatTest {
+
+    private static final String SECRET = "heartbeat";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should refuse a replayed heartbeat without dropping the session")
+    void shouldKeepSessionOnReplay() throws Exception {
+        final var session = fixture.session(SECRET);
+        final var login = fixture.getData(session, 0).getBody().timestampLastUpdate();
+
+        // a second later, so the heartbeat moves the timestamp
+        Thread.sleep(1_100);
+        final var first = heartbeat(session, login);
+        assertEquals(200, first.getStatusCode().value());
+        final var current = ((Container) first.getBody()).timestampLastUpdate();
+        assertNotEquals(login, current);
+
+        assertEquals(TIMESTAMP_LAST_UPDATE_NOT_MATCH.code, heartbeat(session, login).getStatusCode().value());
+        assertTrue(context.getBean(CacheManager.class).get(session.uuid()).isPresent());
+        assertEquals(200, heartbeat(session, current).getStatusCode().value());
+    }
+
+    private static ResponseEntity<?> heartbeat(final Session session, final long timestampLastUpdate) throws Exception {
+        final var device = session.device();
+        final var mac = SessionMac.sign(SessionMac.deriveKey(SECRET),
+                device.getUuid() + "|" + device.getId() + "|" + timestampLastUpdate);
+        return fixture.controller().macHeartbeat(device.getUuid(), timestampLastUpdate, mac);
+    }
+}
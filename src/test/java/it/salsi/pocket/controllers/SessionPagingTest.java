@@ -0,0 +1,142 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.core.SyncCursor;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.security.RSAHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static it.salsi.pocket.configs.SessionFixture.token;
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.CURSOR_NOT_VALID;
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController paged getData Tests")
+class SessionPagingTest {
+
+    private static final int GROUPS = 5;
+    private static final int FIELDS = 4;
+
+    private static SessionFixture fixture;
+    private static SessionController sessionController;
+
+    @BeforeAll
+    static void start() {
+        fixture = new SessionFixture(EmbeddedH2.shared());
+        sessionController = fixture.controller();
+    }
+
+    @Test
+    @DisplayName("Should return every element once across bounded pages")
+    void shouldPageWholeVault() throws Exception {
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+        final var device = fill(rsaHelper);
+
+        final var first = sessionController.getData(device.getUuid(), token(rsaHelper, device, "paged", 0), "127.0.0.1", 3);
+        assertEquals(200, first.getStatusCode().value());
+        assertNotNull(first.getBody().user());
+        final var snapshot = first.getBody().timestampLastUpdate();
+
+        final var groups = new ArrayList<Long>();
+        final var fields = new ArrayList<Long>();
+        var page = first;
+        var pages = 0;
+        while (true) {
+            pages++;
+            final var body = page.getBody();
+            assertTrue(body.groups().size() + body.groupFields().size() + body.fields().size() <= 3);
+            assertEquals(snapshot, body.timestampLastUpdate());
+            body.groups().forEach(g -> groups.add(g.getServerId()));
+            body.fields().forEach(f -> fields.add(f.getServerId()));
+
+            final var cursor = cursorOf(page);
+            if (cursor == null) {
+                break;
+            }
+            page = sessionController.getPage(device.getUuid(), cursor);
+            assertEquals(200, page.getStatusCode().value());
+            assertNull(page.getBody().user());
+        }
+
+        assertEquals(GROUPS, groups.size());
+        assertEquals(GROUPS, new HashSet<>(groups).size());
+        assertEquals(FIELDS, fields.size());
+        assertEquals(FIELDS, new HashSet<>(fields).size());
+        assertTrue(pages >= 3);
+    }
+
+    @Test
+    @DisplayName("Should reject a tampered cursor and one of an ended session")
+    void shouldRejectForeignCursor() throws Exception {
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        rsaHelper.enroll();
+        final var device = fill(rsaHelper);
+
+        final var first = sessionController.getData(device.getUuid(), token(rsaHelper, device, "first", 0), "127.0.0.1", 2);
+        final var cursor = cursorOf(first);
+        assertNotNull(cursor);
+
+        final var tampered = (cursor.charAt(0) == 'A' ? 'B' : 'A') + cursor.substring(1);
+        assertEquals(CURSOR_NOT_VALID.code, sessionController.getPage(device.getUuid(), tampered).getStatusCode().value());
+
+        // a new login replaces the session key
+        sessionController.getData(device.getUuid(), token(rsaHelper, device, "second", 0), "127.0.0.1");
+        assertEquals(CURSOR_NOT_VALID.code, sessionController.getPage(device.getUuid(), cursor).getStatusCode().value());
+    }
+
+    /**
+     * Device of a new user owning {@link #GROUPS} groups and {@link #FIELDS} fields, all with the same timestamp
+     */
+    private static Device fill(final RSAHelper rsaHelper) throws Exception {
+        final var saved = fixture.device(rsaHelper, fixture.user("paging"));
+
+        final var login = sessionController.getData(saved.getUuid(), token(rsaHelper, saved, "fill", 0), "127.0.0.1");
+        final var groups = IntStream.rangeClosed(1, GROUPS)
+                .mapToObj(i -> "{\"id\":" + i + ",\"serverId\":0,\"title\":\"g" + i + "\",\"icon\":\"\",\"deleted\":false}")
+                .collect(Collectors.joining(","));
+        final var fields = IntStream.rangeClosed(1, FIELDS)
+                .mapToObj(i -> "{\"id\":" + i + ",\"serverId\":0,\"groupId\":1,\"serverGroupId\":0,\"groupFieldId\":0,"
+                        + "\"serverGroupFieldId\":0,\"title\":\"f" + i + "\",\"value\":\"v\",\"isHidden\":false,\"deleted\":false}")
+                .collect(Collectors.joining(","));
+        final var body = "{\"groups\":[" + groups + "],\"groupFields\":[],\"fields\":[" + fields + "]}";
+        final var persist = fixture.persist(new Session(rsaHelper, saved, "fill"), login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        return saved;
+    }
+
+    private static String cursorOf(final ResponseEntity<Container> response) {
+        return response.getHeaders().getFirst(SyncCursor.HEADER);
+    }
+}
@@ -0,0 +1,167 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.security.SessionMac;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.SECRET_NOT_MATCH;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tree of the test user: {@code a} and {@code b} at the top level, {@code c} below {@code a}, {@code d} below
+ * {@code c}; one field per group, named after it, and a group field in {@code c}
+ */
+@DisplayName("SessionController subtree Tests")
+class SessionSubtreeTest {
+
+    private static final String SECRET = "subtree";
+
+    private static SessionFixture fixture;
+    private static SessionController sessionController;
+    private static Device device;
+    private static long timestampLastUpdate;
+    private static Map<String, Long> groupIds;
+
+    @BeforeAll
+    static void start() throws Exception {
+        fixture = new SessionFixture(EmbeddedH2.shared());
+        sessionController = fixture.controller();
+
+        final var session = fixture.session(SECRET);
+        device = session.device();
+        final var login = fixture.getData(session, 0);
+
+        final var body = """
+                {"groups":[
+                  {"id":1,"serverId":0,"groupId":0,"serverGroupId":0,"title":"a","icon":"","deleted":false},
+                  {"id":2,"serverId":0,"groupId":0,"serverGroupId":0,"title":"b","icon":"","deleted":false},
+                  {"id":3,"serverId":0,"groupId":1,"serverGroupId":0,"title":"c","icon":"","deleted":false},
+                  {"id":4,"serverId":0,"groupId":3,"serverGroupId":0,"title":"d","icon":"","deleted":false}],
+                 "groupFields":[
+                  {"id":1,"serverId":0,"groupId":3,"serverGroupId":0,"title":"gc","isHidden":false,"deleted":false}],
+                 "fields":[
+                  {"id":1,"serverId":0,"groupId":1,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"a","value":"v","isHidden":false,"deleted":false},
+                  {"id":2,"serverId":0,"groupId":2,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"b","value":"v","isHidden":false,"deleted":false},
+                  {"id":3,"serverId":0,"groupId":3,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"c","value":"v","isHidden":false,"deleted":false},
+                  {"id":4,"serverId":0,"groupId":4,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"d","value":"v","isHidden":false,"deleted":false}]}
+                """;
+        final var persist = fixture.persist(session, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        timestampLastUpdate = persist.getBody().timestampLastUpdate();
+        groupIds = persist.getBody().groups().stream().collect(Collectors.toMap(Group::getTitle, Group::getServerId));
+    }
+
+    @Test
+    @DisplayName("Should return the whole subtree, parents first")
+    void shouldReturnWholeSubtree() throws Exception {
+        final var body = subtree(groupIds.get("a"), -1);
+        assertEquals(List.of("a", "c", "d"), titles(body.groups()));
+        assertEquals(List.of("a", "c", "d"), fieldTitles(body));
+        assertEquals(1, body.groupFields().size());
+        assertEquals(groupIds.get("c"), body.groupFields().getFirst().getServerGroupId());
+    }
+
+    @Test
+    @DisplayName("Should stop at the requested depth")
+    void shouldLimitDepth() throws Exception {
+        assertEquals(List.of("a"), titles(subtree(groupIds.get("a"), 0).groups()));
+        assertEquals(List.of("a"), fieldTitles(subtree(groupIds.get("a"), 0)));
+
+        final var body = subtree(groupIds.get("a"), 1);
+        assertEquals(List.of("a", "c"), titles(body.groups()));
+        assertEquals(List.of("a", "c"), fieldTitles(body));
+    }
+
+    @Test
+    @DisplayName("Should start from the top level groups for group 0")
+    void shouldReturnTopLevel() throws Exception {
+        final var body = subtree(0, 0);
+        assertEquals(List.of("a", "b"), titles(body.groups()));
+        assertEquals(List.of("a", "b"), fieldTitles(body));
+    }
+
+    @Test
+    @DisplayName("Should reject a wrong MAC and ignore groups of other users")
+    void shouldRejectForeignRequests() throws Exception {
+        final var groupId = groupIds.get("a");
+        final var mac = mac("other", device, timestampLastUpdate, groupId, -1);
+        assertEquals(SECRET_NOT_MATCH.code, sessionController.getSubtree(device.getUuid(), groupId, -1, mac).getStatusCode().value());
+
+        final var otherSession = fixture.session(SECRET);
+        final var other = otherSession.device();
+        final var login = fixture.getData(otherSession, 0).getBody().timestampLastUpdate();
+        final var otherMac = mac(SECRET, other, login, groupId, -1);
+        final var response = sessionController.getSubtree(other.getUuid(), groupId, -1, otherMac);
+        assertEquals(200, response.getStatusCode().value());
+        assertTrue(response.getBody().groups().isEmpty());
+        assertTrue(response.getBody().fields().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should refuse a MAC signed for an older session timestamp")
+    void shouldBindToSessionTimestamp() throws Exception {
+        final var session = fixture.session(SECRET);
+        final var other = session.device();
+        final var login = fixture.getData(session, 0).getBody().timestampLastUpdate();
+        final var mac = mac(SECRET, other, login, 0, -1);
+        assertEquals(200, sessionController.getSubtree(other.getUuid(), 0, -1, mac).getStatusCode().value());
+
+        // a second later, so the heartbeat moves the session timestamp
+        Thread.sleep(1_100);
+        final var heartbeat = SessionMac.sign(SessionMac.deriveKey(SECRET), other.getUuid() + "|" + other.getId() + "|" + login);
+        assertEquals(200, sessionController.macHeartbeat(other.getUuid(), login, heartbeat)
+                .getStatusCode().value());
+        assertEquals(SECRET_NOT_MATCH.code, sessionController.getSubtree(other.getUuid(), 0, -1, mac).getStatusCode().value());
+    }
+
+    private static String mac(final String secret, final Device device, final long timestampLastUpdate,
+                              final long groupId, final int depth) {
+        return SessionMac.sign(SessionMac.deriveKey(secret),
+                device.getUuid() + "|" + device.getId() + "|" + timestampLastUpdate + "|" + groupId + "|" + depth);
+    }
+
+    private static Container subtree(final long groupId, final int depth) throws Exception {
+        final var mac = mac(SECRET, device, timestampLastUpdate, groupId, depth);
+        final var response = sessionController.getSubtree(device.getUuid(), groupId, depth, mac);
+        assertEquals(200, response.getStatusCode().value());
+        return response.getBody();
+    }
+
+    private static List<String> titles(final List<Group> groups) {
+        return groups.stream().map(Group::getTitle).toList();
+    }
+
+    private static List<String> fieldTitles(final Container container) {
+        return container.fields().stream().map(Field::getTitle).sorted().toList();
+    }
+}
@@ -0,0 +1,141 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.repositories.FieldRepository;
+import it.salsi.pocket.repositories.GroupRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController unchanged rows Tests")
+class SessionUnchangedTest {
+
+    private static final String GROUP = """
+            {"id":1,"serverId":%d,"version":%d,"groupId":0,"serverGroupId":0,"title":"g","icon":"","note":"","deleted":false}""";
+    private static final String FIELD = """
+            {"id":%d,"serverId":%d,"version":%d,"groupId":1,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"%s","value":"%s","isHidden":false,"deleted":false}""";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    private record Vault(Session session, long timestampLastUpdate, Group group, Field field) {
+    }
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should not write nor echo rows sent again as they are stored")
+    void shouldSkipUnchanged() throws Exception {
+        final var vault = vault();
+        final var group = vault.group();
+        final var field = vault.field();
+
+        // the new field refers to the skipped group by its client id
+        final var response = persist(vault, "{\"groups\":[" + GROUP.formatted(group.getServerId(), group.getVersion())
+                + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, field.getServerId(), field.getVersion(), "f", "v") + ","
+                + FIELD.formatted(2, 0, 0, "n", "v") + "]}");
+        assertEquals(200, response.getStatusCode().value());
+        assertTrue(response.getBody().groups().isEmpty());
+        assertEquals(1, response.getBody().fields().size());
+        final var added = response.getBody().fields().getFirst();
+        assertEquals("n", added.getTitle());
+        assertEquals(group.getServerId(), added.getServerGroupId());
+
+        final var storedGroup = context.getBean(GroupRepository.class).findById(group.getServerId()).orElseThrow();
+        assertEquals(group.getVersion(), storedGroup.getVersion());
+        assertEquals(vault.timestampLastUpdate(), storedGroup.getTimestampLastUpdate());
+        final var storedField = context.getBean(FieldRepository.class).findById(field.getServerId()).orElseThrow();
+        assertEquals(field.getVersion(), storedField.getVersion());
+        assertEquals(vault.timestampLastUpdate(), storedField.getTimestampLastUpdate());
+    }
+
+    @Test
+    @DisplayName("Should keep the session timestamp when every row is skipped")
+    void shouldKeepTimestampWhenNothingWritten() throws Exception {
+        final var vault = vault();
+        final var group = GROUP.formatted(vault.group().getServerId(), vault.group().getVersion());
+        final var field = vault.field();
+
+        final var unchanged = persist(vault, "{\"groups\":[" + group + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, field.getServerId(), field.getVersion(), "f", "v") + "]}");
+        assertEquals(200, unchanged.getStatusCode().value());
+        assertTrue(unchanged.getBody().groups().isEmpty());
+        assertTrue(unchanged.getBody().fields().isEmpty());
+        assertEquals(vault.timestampLastUpdate(), unchanged.getBody().timestampLastUpdate());
+
+        // the next sync carries the timestamp just returned
+        final var next = fixture.persist(vault.session(), unchanged.getBody().timestampLastUpdate(),
+                "{\"groups\":[" + group + "],\"groupFields\":[],\"fields\":["
+                        + FIELD.formatted(1, field.getServerId(), field.getVersion(), "f", "w") + "]}");
+        assertEquals(200, next.getStatusCode().value());
+        assertEquals(1, next.getBody().fields().size());
+    }
+
+    @Test
+    @DisplayName("Should write a row whose content changed")
+    void shouldStoreChanged() throws Exception {
+        final var vault = vault();
+        final var field = vault.field();
+
+        final var response = persist(vault, "{\"groups\":[],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, field.getServerId(), field.getVersion(), "f", "w") + "]}");
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(1, response.getBody().fields().size());
+
+        final var stored = context.getBean(FieldRepository.class).findById(field.getServerId()).orElseThrow();
+        assertEquals("w", stored.getValue());
+        assertEquals(field.getVersion() + 1, stored.getVersion());
+        assertEquals(stored.fingerprint(), stored.getContentHash());
+    }
+
+    private static Vault vault() throws Exception {
+        final var session = fixture.session("unchanged");
+        final var login = fixture.getData(session, 0);
+
+        final var body = "{\"groups\":[" + GROUP.formatted(0, 0) + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, 0, 0, "f", "v") + "]}";
+        final var persist = fixture.persist(session, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        return new Vault(session, persist.getBody().timestampLastUpdate(),
+                persist.getBody().groups().getFirst(), persist.getBody().fields().getFirst());
+    }
+
+    private static ResponseEntity<Container> persist(final Vault vault, final String body) throws Exception {
+        // a second later, so a write would move the timestamp
+        Thread.sleep(1_100);
+        return fixture.persist(vault.session(), vault.timestampLastUpdate(), body);
+    }
+}
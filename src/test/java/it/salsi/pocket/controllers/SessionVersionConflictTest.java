@@ -0,0 +1,128 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.controllers;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.FieldRepository;
+import it.salsi.pocket.repositories.GroupRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.VERSION_CONFLICT;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionController version conflict and user scope Tests")
+class SessionVersionConflictTest {
+
+    private static final String GROUP = """
+            {"id":1,"serverId":%d,"version":%s,"groupId":0,"serverGroupId":0,"title":"g","icon":"","note":"","deleted":%b}""";
+    private static final String FIELD = """
+            {"id":%d,"serverId":%d,"version":%s,"groupId":1,"serverGroupId":%d,"groupFieldId":0,"serverGroupFieldId":0,"title":"f","value":"%s","isHidden":false,"deleted":false}""";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+
+    private record Vault(Session session, long timestampLastUpdate, Group group, Field field) {
+    }
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+    }
+
+    @Test
+    @DisplayName("Should answer 610 to a stale version and roll back every write of the sync")
+    void shouldRollBackOnConflict() throws Exception {
+        final var vault = vault("conflict");
+        final var field = vault.field();
+        final var users = context.getBean(UserRepository.class);
+        final var syncVersion = users.findSyncVersion(vault.session().user().getId());
+
+        // a new field before the stale one, written then rolled back
+        final var body = "{\"groups\":[],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(2, 0, 0, vault.group().getServerId(), "new") + ","
+                + FIELD.formatted(1, field.getServerId(), field.getVersion() + 1, vault.group().getServerId(), "stale") + "]}";
+        final var response = fixture.persist(vault.session(), vault.timestampLastUpdate(), body);
+        assertEquals(VERSION_CONFLICT.code, response.getStatusCode().value());
+
+        final var fields = context.getBean(FieldRepository.class).findByUser(vault.session().user());
+        assertEquals(1, fields.size());
+        assertEquals("v", fields.getFirst().getValue());
+        assertEquals(field.getVersion(), fields.getFirst().getVersion());
+        assertEquals(syncVersion, users.findSyncVersion(vault.session().user().getId()));
+        final var device = context.getBean(DeviceRepository.class).findByUuid(vault.session().uuid()).orElseThrow();
+        assertEquals(vault.timestampLastUpdate(), device.getTimestampLastUpdate());
+
+        // the same session syncs again once it has the current version
+        final var retry = fixture.persist(vault.session(), vault.timestampLastUpdate(), "{\"groups\":[],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, field.getServerId(), field.getVersion(), vault.group().getServerId(), "w") + "]}");
+        assertEquals(200, retry.getStatusCode().value());
+    }
+
+    @Test
+    @DisplayName("Should not update nor delete rows of another user")
+    void shouldScopeByUser() throws Exception {
+        final var victim = vault("scope-victim");
+        final var attacker = vault("scope-attacker");
+
+        // server ids of the victim, without a version and with its current one
+        final var body = "{\"groups\":[" + GROUP.formatted(victim.group().getServerId(), victim.group().getVersion(), true)
+                + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, victim.field().getServerId(), "null", 0, "stolen") + ","
+                + FIELD.formatted(2, victim.field().getServerId(), victim.field().getVersion(), 0, "stolen") + "]}";
+        final var response = fixture.persist(attacker.session(), attacker.timestampLastUpdate(), body);
+        assertEquals(200, response.getStatusCode().value());
+        assertTrue(response.getBody().groups().isEmpty());
+
+        final var group = context.getBean(GroupRepository.class).findById(victim.group().getServerId()).orElseThrow();
+        assertFalse(group.getDeleted());
+        assertEquals(victim.session().user().getId(), group.getUser().getId());
+        final var field = context.getBean(FieldRepository.class).findById(victim.field().getServerId()).orElseThrow();
+        assertEquals("v", field.getValue());
+        assertEquals(victim.field().getVersion(), field.getVersion());
+        assertEquals(victim.session().user().getId(), field.getUser().getId());
+
+        // stored as new rows of the attacker
+        for (final var stored : response.getBody().fields()) {
+            assertNotEquals(victim.field().getServerId(), stored.getServerId());
+        }
+    }
+
+    private static Vault vault(final String secret) throws Exception {
+        final var session = fixture.session(secret);
+        final var login = fixture.getData(session, 0);
+
+        final var body = "{\"groups\":[" + GROUP.formatted(0, 0, false) + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, 0, 0, 0, "v") + "]}";
+        final var persist = fixture.persist(session, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+        return new Vault(session, persist.getBody().timestampLastUpdate(),
+                persist.getBody().groups().getFirst(), persist.getBody().fields().getFirst());
+    }
+}
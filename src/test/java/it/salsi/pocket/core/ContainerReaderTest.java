@@ -0,0 +1,140 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import it.salsi.pocket.models.Field;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.models.GroupField;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ContentTooLargeException;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ContainerReader Tests")
+class ContainerReaderTest {
+
+    private static final String JSON = "application/json";
+
+    private static final String GROUP = """
+            {"id":%d,"serverId":0,"version":0,"groupId":0,"serverGroupId":0,"title":"g","icon":"","note":"","deleted":false}""";
+    private static final String GROUP_FIELD = """
+            {"id":%d,"serverId":0,"version":0,"groupId":1,"serverGroupId":0,"title":"gf","isHidden":false,"deleted":false}""";
+    private static final String FIELD = """
+            {"id":%d,"serverId":0,"version":0,"groupId":1,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"%s","value":"v","isHidden":false,"deleted":false}""";
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final CBORMapper cborMapper = CBORMapper.builder().build();
+
+    private ContainerReader reader;
+
+    @BeforeEach
+    void setUp() {
+        reader = new ContainerReader(jsonMapper, cborMapper, Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(reader, "batchSize", 2);
+    }
+
+    @Test
+    @DisplayName("Should hand the sections in dependency order whatever order they come in")
+    void shouldReadOutOfOrder() throws Exception {
+        final var body = "{\"fields\":[" + FIELD.formatted(1, "f1") + "," + FIELD.formatted(2, "f2") + ","
+                + FIELD.formatted(3, "f3") + "],\"groupFields\":[" + GROUP_FIELD.formatted(1)
+                + "],\"groups\":[" + GROUP.formatted(1) + "]}";
+
+        final var calls = read(body.getBytes(StandardCharsets.UTF_8), JSON);
+        assertEquals(List.of("groups:1", "groupFields:1", "fields:2", "fields:1"), calls);
+    }
+
+    @Test
+    @DisplayName("Should read a CBOR upload")
+    void shouldReadCbor() throws Exception {
+        final var container = jsonMapper.readValue("{\"groups\":[" + GROUP.formatted(1) + "],\"groupFields\":[],\"fields\":["
+                + FIELD.formatted(1, "f") + "]}", Map.class);
+
+        final var calls = read(cborMapper.writeValueAsBytes(container), "application/cbor");
+        assertEquals(List.of("groups:1", "fields:1"), calls);
+    }
+
+    @Test
+    @DisplayName("Should refuse a malformed upload")
+    void shouldRefuseMalformed() {
+        assertThrows(IllegalArgumentException.class, () -> spool("{\"groups\":[" + GROUP.formatted(1)));
+        assertThrows(IllegalArgumentException.class, () -> spool("[]"));
+        assertThrows(IllegalArgumentException.class, () -> spool("{\"fields\":{}}"));
+    }
+
+    @Test
+    @DisplayName("Should refuse an upload with an invalid element")
+    void shouldRefuseInvalid() {
+        assertThrows(ConstraintViolationException.class,
+                () -> spool("{\"fields\":[" + FIELD.formatted(1, "f".repeat(300)) + "]}"));
+    }
+
+    @Test
+    @DisplayName("Should refuse an upload over the limit and delete its temporary file")
+    void shouldRefuseTooLarge() throws Exception {
+        ReflectionTestUtils.setField(reader, "spoolMemoryBytes", 64);
+        ReflectionTestUtils.setField(reader, "maxBytes", 1_024L);
+        final var before = spools();
+
+        final var fields = new ArrayList<String>();
+        for (int i = 1; i <= 20; i++) {
+            fields.add(FIELD.formatted(i, "f" + i));
+        }
+        assertThrows(ContentTooLargeException.class, () -> spool("{\"fields\":[" + String.join(",", fields) + "]}"));
+        assertEquals(before, spools());
+    }
+
+    private List<String> read(final byte[] body, final String contentType) throws Exception {
+        final var ret = new ArrayList<String>();
+        try (final var spool = reader.spool(new ByteArrayInputStream(body), contentType)) {
+            reader.read(spool, contentType,
+                    (List<Group> batch) -> ret.add("groups:" + batch.size()),
+                    (List<GroupField> batch) -> ret.add("groupFields:" + batch.size()),
+                    (List<Field> batch) -> ret.add("fields:" + batch.size()));
+        }
+        return ret;
+    }
+
+    private void spool(final String body) throws Exception {
+        reader.spool(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), JSON).close();
+    }
+
+    private static List<Path> spools() throws IOException {
+        try (final var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(file -> file.getFileName().toString().startsWith("pocket-upload")).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.core;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.salsi.commons.CommonsException;
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.controllers.SessionController;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+
+import static it.salsi.pocket.controllers.SessionController.ErrorCode.*;
+import static it.salsi.pocket.core.SyncMetrics.Operation.*;
+import static it.salsi.pocket.core.SyncMetrics.Stage.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SyncMetrics Tests")
+class SyncMetricsTest {
+
+    private SimpleMeterRegistry registry;
+    private SyncMetrics syncMetrics;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        syncMetrics = new SyncMetrics(registry);
+    }
+
+    @Test
+    @DisplayName("Should count each error code under its own tag")
+    void shouldTagErrorsPerCode() throws Exception {
+        syncMetrics.call(GET_DATA, () -> status(USER_NOT_FOUND));
+        syncMetrics.call(GET_DATA, () -> status(SECRET_NOT_MATCH));
+        syncMetrics.call(GET_DATA, () -> status(SECRET_NOT_MATCH));
+        syncMetrics.call(PERSIST, () -> status(VERSION_CONFLICT));
+        syncMetrics.call(PERSIST, () -> status(OK));
+
+        assertEquals(1, errors("get_data", USER_NOT_FOUND));
+        assertEquals(2, errors("get_data", SECRET_NOT_MATCH));
+        assertEquals(1, errors("persist", VERSION_CONFLICT));
+        assertNull(registry.find("pocket.sync.errors").tags("operation", "persist", "code", "200").counter());
+        assertEquals(2, registry.get("pocket.sync").tags("operation", "get_data", "status", "604").timer().count());
+        assertEquals(1, registry.get("pocket.sync").tags("operation", "persist", "status", "200").timer().count());
+    }
+
+    @Test
+    @DisplayName("Should record a call ended by an exception as status 500 and not as an error code")
+    void shouldRecordExceptionAs500() {
+        assertThrows(CommonsException.class, () -> syncMetrics.call(HEARTBEAT, () -> {
+            throw new CommonsException("boom");
+        }));
+
+        assertEquals(1, registry.get("pocket.sync").tags("operation", "heartbeat", "status", "500").timer().count());
+        assertTrue(registry.find("pocket.sync.errors").counters().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should record the time of each stage, also when it throws")
+    void shouldRecordStages() throws Exception {
+        assertEquals("ok", syncMetrics.stage(PERSIST, READ, () -> "ok"));
+        syncMetrics.stage(PERSIST, WRITE, () -> "ok");
+        syncMetrics.stage(PERSIST, WRITE, () -> "ok");
+        assertThrows(CommonsException.class, () -> syncMetrics.stage(PERSIST, DECRYPT, () -> {
+            throw new CommonsException("boom");
+        }));
+
+        assertEquals(1, stage("persist", "read"));
+        assertEquals(2, stage("persist", "write"));
+        assertEquals(1, stage("persist", "decrypt"));
+        assertEquals(0, stage("persist", "query"));
+        assertEquals(0, stage("get_data", "write"));
+    }
+
+    @Test
+    @DisplayName("Should meter the stages and the error codes of the session controller")
+    void shouldMeterSessionController() throws Exception {
+        final var fixture = new SessionFixture(EmbeddedH2.shared());
+        final var controller = fixture.controller();
+        final var session = fixture.session("metrics");
+
+        final var previous = ReflectionTestUtils.getField(controller, "syncMetrics");
+        ReflectionTestUtils.setField(controller, "syncMetrics", syncMetrics);
+        try {
+            assertEquals(OK.code, fixture.getData(session, 0).getStatusCode().value());
+            assertEquals(DEVICE_NOT_FOUND.code, controller.getData(UUID.randomUUID().toString(),
+                    session.token(0), SessionFixture.ADDRESS).getStatusCode().value());
+        } finally {
+            ReflectionTestUtils.setField(controller, "syncMetrics", previous);
+        }
+
+        assertEquals(1, registry.get("pocket.sync").tags("operation", "get_data", "status", "200").timer().count());
+        assertEquals(1, errors("get_data", DEVICE_NOT_FOUND));
+        assertEquals(1, stage("get_data", "decrypt"));
+        assertEquals(1, stage("get_data", "user_lookup"));
+        assertEquals(1, stage("get_data", "query"));
+    }
+
+    private double errors(final String operation, final SessionController.ErrorCode code) {
+        return registry.get("pocket.sync.errors")
+                .tags("operation", operation, "code", Integer.toString(code.code))
+                .counter()
+                .count();
+    }
+
+    private long stage(final String operation, final String stage) {
+        return registry.get("pocket.sync.stage")
+                .tags("operation", operation, "stage", stage)
+                .timer()
+                .count();
+    }
+
+    private static ResponseEntity<Void> status(final SessionController.ErrorCode code) {
+        return ResponseEntity.status(HttpStatusCode.valueOf(code.code)).build();
+    }
+}
@@ -0,0 +1,135 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.rests;
+
+import it.salsi.pocket.client.PocketApiClient;
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Group;
+import it.salsi.pocket.security.SessionMac;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ReactiveSessionRest Tests")
+class ReactiveSessionRestTest {
+
+    private static final String SECRET = "reactive";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+    private static PocketApiClient client;
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.start("reactive", "server.port=0", "server.rx.page-size=2");
+        fixture = new SessionFixture(context);
+        client = new PocketApiClient("http://localhost:" + context.getEnvironment().getProperty("local.server.port"),
+                "__cors_token_change_me__", "/api/v5/rx");
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Should persist, stream the changes in pages and heartbeat")
+    void shouldSyncThroughReactiveEndpoints() throws Exception {
+        final var session = fixture.session(SECRET);
+        final var device = session.device();
+
+        final var login = client.getDataStream(device.getUuid(), session.token(0));
+        assertTrue(login.isSuccess(), login.getErrorMessage());
+        assertEquals(1, login.getData().size());
+        final var timestamp = login.getData().getFirst().timestampLastUpdate();
+
+        final var groups = new ArrayList<Group>();
+        for (long i = 1; i <= 3; i++) {
+            final var group = new Group();
+            group.setId(i);
+            group.setTitle("g" + i);
+            group.setIcon("icon");
+            groups.add(group);
+        }
+        final var persist = client.postData(device.getUuid(), session.token(timestamp),
+                new Container(timestamp, null, null, groups, List.of(), List.of()));
+        assertTrue(persist.isSuccess(), persist.getErrorMessage());
+        assertEquals(3, persist.getData().groups().size());
+
+        // a full sync from 0 comes as pages of server.rx.page-size
+        final var pages = client.getDataStream(device.getUuid(), session.token(0));
+        assertTrue(pages.isSuccess(), pages.getErrorMessage());
+        assertEquals(List.of(2, 1), pages.getData().stream().map(page -> page.groups().size()).toList());
+        final var login2 = pages.getData().getFirst().timestampLastUpdate();
+        pages.getData().forEach(page -> assertEquals(login2, page.timestampLastUpdate()));
+
+        final var mac = SessionMac.sign(SessionMac.deriveKey(SECRET), device.getUuid() + "|" + device.getId() + "|" + login2);
+        final var heartbeat = client.heartbeat(device.getUuid(), login2, mac);
+        assertTrue(heartbeat.isSuccess(), heartbeat.getErrorMessage());
+        assertNotEquals(0L, heartbeat.getData().timestampLastUpdate());
+    }
+
+    @Test
+    @DisplayName("Should answer the login error as the status of the stream")
+    void shouldReturnLoginError() throws Exception {
+        final var session = fixture.session(SECRET);
+
+        final var response = client.getDataStream(UUID.randomUUID().toString(), session.token(0));
+        assertFalse(response.isSuccess());
+        assertEquals(SessionController.ErrorCode.DEVICE_NOT_FOUND.code, response.getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should back off a device failing authentication under rx")
+    void shouldBackOffAuthFailures() throws Exception {
+        final var session = fixture.session(SECRET);
+        final var device = session.device();
+        final var login = client.getDataStream(device.getUuid(), session.token(0));
+        assertTrue(login.isSuccess(), login.getErrorMessage());
+        final var timestamp = login.getData().getFirst().timestampLastUpdate();
+
+        final var mac = SessionMac.sign(SessionMac.deriveKey("other"), device.getUuid() + "|" + device.getId() + "|" + timestamp);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(SessionController.ErrorCode.SECRET_NOT_MATCH.code,
+                    client.heartbeat(device.getUuid(), timestamp, mac).getStatusCode());
+        }
+        assertEquals(429, client.heartbeat(device.getUuid(), timestamp, mac).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Should reject the RSA heartbeat under rx")
+    void shouldRejectRsaHeartbeat() throws Exception {
+        final var session = fixture.session(SECRET);
+
+        final var response = client.heartbeat(session.uuid(), session.token(0));
+        assertEquals(401, response.getStatusCode());
+    }
+}
@@ -0,0 +1,205 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.rests;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.core.ContainerReader;
+import it.salsi.pocket.models.Container;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SessionRest over HTTP Tests")
+class SessionRestHttpTest {
+
+    private static final String FIELD = """
+            {"id":1,"serverId":0,"version":0,"groupId":0,"serverGroupId":0,"groupFieldId":0,"serverGroupFieldId":0,"title":"%s","value":"v","isHidden":false,"deleted":false}""";
+
+    private static final String CBOR = "application/cbor";
+
+    private static final JsonMapper JSON = JsonMapper.builder().build();
+
+    private static final CBORMapper CBOR_MAPPER = CBORMapper.builder().build();
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+    private static HttpClient httpClient;
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void stop() {
+        httpClient.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should answer 400 to a malformed persist body")
+    void shouldRefuseMalformed() throws Exception {
+        final var session = login("http-malformed");
+        assertEquals(400, persist(session.session(), session.timestampLastUpdate(), "{\"fields\":[").statusCode());
+    }
+
+    @Test
+    @DisplayName("Should answer 400 to a persist body with an invalid element")
+    void shouldRefuseInvalid() throws Exception {
+        final var session = login("http-invalid");
+        final var body = "{\"groups\":[],\"groupFields\":[],\"fields\":[" + FIELD.formatted("f".repeat(300)) + "]}";
+        assertEquals(400, persist(session.session(), session.timestampLastUpdate(), body).statusCode());
+    }
+
+    @Test
+    @DisplayName("Should answer 413 to a persist body over server.persist-max-bytes")
+    void shouldRefuseTooLarge() throws Exception {
+        final var session = login("http-too-large");
+        final var reader = context.getBean(ContainerReader.class);
+        final var maxBytes = ReflectionTestUtils.getField(reader, "maxBytes");
+        ReflectionTestUtils.setField(reader, "maxBytes", 256L);
+        try {
+            final var body = "{\"groups\":[],\"groupFields\":[],\"fields\":[" + FIELD.formatted("f".repeat(250)) + "]}";
+            assertEquals(413, persist(session.session(), session.timestampLastUpdate(), body).statusCode());
+        } finally {
+            ReflectionTestUtils.setField(reader, "maxBytes", maxBytes);
+        }
+    }
+
+    @Test
+    @DisplayName("Should echo the whole written rows by default")
+    void shouldEchoRows() throws Exception {
+        final var session = login("http-echo-rows");
+        final var body = "{\"groups\":[],\"groupFields\":[],\"fields\":[" + FIELD.formatted("f") + "]}";
+        final var response = persist(session.session(), session.timestampLastUpdate(), body);
+        assertEquals(200, response.statusCode());
+
+        final var field = JSON.readTree(response.body()).get("fields").get(0);
+        assertEquals(1, field.get("id").asLong());
+        assertTrue(field.get("serverId").asLong() > 0);
+        assertEquals("f", field.get("title").asString());
+        assertEquals("v", field.get("value").asString());
+    }
+
+    @Test
+    @DisplayName("Should echo only ids and versions when asked with X-Pocket-Echo")
+    void shouldEchoIds() throws Exception {
+        final var session = login("http-echo-ids");
+        final var body = "{\"groups\":[],\"groupFields\":[],\"fields\":[" + FIELD.formatted("f") + "]}";
+        final var response = persist(session.session(), session.timestampLastUpdate(), body,
+                SessionController.ECHO_HEADER, SessionController.ECHO_IDS);
+        assertEquals(200, response.statusCode());
+
+        final var field = JSON.readTree(response.body()).get("fields").get(0);
+        assertEquals(1, field.get("id").asLong());
+        assertTrue(field.get("serverId").asLong() > 0);
+        assertEquals(0, field.get("version").asLong());
+        assertFalse(field.has("title"));
+        assertFalse(field.has("value"));
+    }
+
+    @Test
+    @DisplayName("Should answer getData in CBOR when asked with Accept")
+    void shouldNegotiateCbor() throws Exception {
+        final var session = fixture.session("http-cbor-get");
+        final var request = HttpRequest.newBuilder(uri(session, 0))
+                .header("X-API-Key", "__cors_token_change_me__")
+                .header("Accept", CBOR)
+                .GET()
+                .build();
+        final var response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith(CBOR));
+
+        final var container = CBOR_MAPPER.readValue(response.body(), Container.class);
+        assertTrue(container.timestampLastUpdate() > 0);
+        assertEquals(session.uuid(), container.device().getUuid());
+    }
+
+    @Test
+    @DisplayName("Should accept a CBOR persist body")
+    void shouldPersistCbor() throws Exception {
+        final var session = login("http-cbor-persist");
+        final var body = CBOR_MAPPER.writeValueAsBytes(JSON.readValue(
+                "{\"groups\":[],\"groupFields\":[],\"fields\":[" + FIELD.formatted("f") + "]}", Map.class));
+        final var response = persist(session.session(), session.timestampLastUpdate(), body, CBOR, "Accept", CBOR);
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith(CBOR));
+
+        final var container = CBOR_MAPPER.readValue(response.body(), Container.class);
+        assertEquals(1, container.fields().size());
+        assertEquals("f", container.fields().getFirst().getTitle());
+        assertTrue(container.fields().getFirst().getServerId() > 0);
+    }
+
+    private record Login(Session session, long timestampLastUpdate) {
+    }
+
+    private static Login login(final String secret) throws Exception {
+        final var session = fixture.session(secret);
+        final var login = fixture.getData(session, 0);
+        assertEquals(200, login.getStatusCode().value());
+        return new Login(session, login.getBody().timestampLastUpdate());
+    }
+
+    /**
+     * @param headers extra name and value pairs
+     */
+    private static HttpResponse<byte[]> persist(final Session session, final long timestampLastUpdate,
+                                                final String body, final String... headers) throws Exception {
+        return persist(session, timestampLastUpdate, body.getBytes(StandardCharsets.UTF_8), "application/json", headers);
+    }
+
+    private static HttpResponse<byte[]> persist(final Session session, final long timestampLastUpdate, final byte[] body,
+                                                final String contentType, final String... headers) throws Exception {
+        final var builder = HttpRequest.newBuilder(uri(session, timestampLastUpdate))
+                .header("X-API-Key", "__cors_token_change_me__")
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body));
+        if (headers.length > 0) {
+            builder.headers(headers);
+        }
+        final var request = builder.build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private static URI uri(final Session session, final long timestampLastUpdate) throws Exception {
+        final var port = context.getEnvironment().getProperty("local.server.port");
+        return URI.create("http://localhost:" + port + "/api/v5/" + session.uuid() + "/" + session.token(timestampLastUpdate));
+    }
+}
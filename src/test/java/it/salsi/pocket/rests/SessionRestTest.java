@@ -32,6 +32,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -65,19 +67,19 @@ class SessionRestTest {
         Container expectedContainer = createTestContainer();
         ResponseEntity<Container> expectedResponse = ResponseEntity.ok(expectedContainer);
         
-        when(sessionController.getData(eq(VALID_UUID), eq(VALID_CRYPT), anyString()))
+        when(sessionController.getData(eq(VALID_UUID), eq(VALID_CRYPT), anyString(), isNull()))
                 .thenReturn(expectedResponse);
 
         // When
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.setRemoteAddr("127.0.0.1");
-        ResponseEntity<Container> response = sessionRest.getData(VALID_UUID, VALID_CRYPT, request);
+        ResponseEntity<Container> response = sessionRest.getData(VALID_UUID, VALID_CRYPT, null, request);
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(expectedContainer, response.getBody());
-        verify(sessionController).getData(VALID_UUID, VALID_CRYPT, "127.0.0.1");
+        verify(sessionController).getData(VALID_UUID, VALID_CRYPT, "127.0.0.1", null);
     }
 
     @Test
@@ -88,41 +90,44 @@ class SessionRestTest {
         ResponseEntity<Container> expectedResponse = ResponseEntity.ok(expectedContainer);
         String forwardedIP = "192.168.1.100";
         
-        when(sessionController.getData(eq(VALID_UUID), eq(VALID_CRYPT), eq(forwardedIP)))
+        when(sessionController.getData(eq(VALID_UUID), eq(VALID_CRYPT), eq(forwardedIP), isNull()))
                 .thenReturn(expectedResponse);
 
         // When
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.setRemoteAddr("127.0.0.1");
         request.addHeader("x-forwarded-for", forwardedIP);
-        ResponseEntity<Container> response = sessionRest.getData(VALID_UUID, VALID_CRYPT, request);
+        ResponseEntity<Container> response = sessionRest.getData(VALID_UUID, VALID_CRYPT, null, request);
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        verify(sessionController).getData(VALID_UUID, VALID_CRYPT, forwardedIP);
+        verify(sessionController).getData(VALID_UUID, VALID_CRYPT, forwardedIP, null);
     }
 
     @Test
     @DisplayName("Should persist data successfully")
     void shouldPersistDataSuccessfully() throws Exception {
         // Given
-        Container inputContainer = createTestContainer();
-        ResponseEntity<Container> expectedResponse = ResponseEntity.ok(inputContainer);
-        
-        when(sessionController.persist(eq(VALID_UUID), eq(VALID_CRYPT), eq(inputContainer), anyString()))
+        Container expectedContainer = createTestContainer();
+        ResponseEntity<Container> expectedResponse = ResponseEntity.ok(expectedContainer);
+        byte[] body = "{\"groups\":[],\"groupFields\":[],\"fields\":[]}".getBytes(StandardCharsets.UTF_8);
+
+        when(sessionController.persist(eq(VALID_UUID), eq(VALID_CRYPT), any(InputStream.class), eq("application/json"), anyString(), isNull(), eq(false)))
                 .thenReturn(expectedResponse);
 
         // When
         MockHttpServletRequest request = new MockHttpServletRequest();
         request.setRemoteAddr("127.0.0.1");
-        ResponseEntity<Container> response = sessionRest.persist(VALID_UUID, VALID_CRYPT, inputContainer, request);
+        request.setContentType("application/json");
+        request.setContent(body);
+        ResponseEntity<Container> response = sessionRest.persist(VALID_UUID, VALID_CRYPT, null, null, request);
 
         // Then
         assertNotNull(response);
         assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals(inputContainer, response.getBody());
-        verify(sessionController).persist(VALID_UUID, VALID_CRYPT, inputContainer, "127.0.0.1");
+        assertEquals(expectedContainer, response.getBody());
+        verify(sessionController).persist(eq(VALID_UUID), eq(VALID_CRYPT), any(InputStream.class), eq("application/json"), eq("127.0.0.1"), isNull(), eq(false));
     }
 
     @Test
@@ -198,6 +203,22 @@ class SessionRestTest {
         verify(sessionController).heartbeat(VALID_UUID, VALID_CRYPT, "2001:db8::1");
     }
 
+    @Test
+    @DisplayName("Should execute MAC heartbeat successfully")
+    void shouldExecuteMacHeartbeatSuccessfully() throws Exception {
+        // Given
+        String mac = "Yx3nGQ0d0r8Jd2tqLrQfYv3lM8qD9sH2aVbXcW1eZ4k";
+        when(sessionController.macHeartbeat(anyString(), anyLong(), anyString()))
+                .thenAnswer(invocation -> ResponseEntity.ok(createTestContainer()));
+
+        // When
+        ResponseEntity<?> response = sessionRest.macHeartbeat(VALID_UUID, 1696693200L, mac);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(sessionController).macHeartbeat(VALID_UUID, 1696693200L, mac);
+    }
+
     @Test
     @DisplayName("Should validate heartbeat crypt parameter format")
     void shouldValidateHeartbeatCryptParameterFormat() throws Exception {
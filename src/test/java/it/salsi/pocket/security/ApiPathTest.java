@@ -0,0 +1,165 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.security;
+
+import it.salsi.pocket.security.ApiPath.Result;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.stream.Stream;
+
+import static it.salsi.pocket.security.ApiPath.Result.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+@DisplayName("ApiPath Unit Tests")
+class ApiPathTest {
+
+    private static final String UUID = "12345678-1234-1234-1234-123456789012";
+    private static final String TIMESTAMP = "1696693200";
+    private static final String MAC = "a".repeat(ApiPath.MAC_LENGTH);
+    private static final String CRYPT = crypt(ApiPath.CRYPT_MIN_LENGTH);
+
+    static Stream<Arguments> paths() {
+        return Stream.of(
+                // outside the api
+                arguments("/", NOT_API),
+                arguments("/api/v5", NOT_API),
+                arguments("/api/v4/" + UUID + "/" + CRYPT, NOT_API),
+                arguments("//api/v5/" + UUID + "/" + CRYPT, NOT_API),
+
+                // missing segments
+                arguments("/api/v5/", INVALID_PATH),
+                arguments("/api/v5/" + UUID, INVALID_PATH),
+                arguments("/api/v5/" + UUID + "/", INVALID_PATH),
+
+                // uuid
+                arguments("/api/v5/" + UUID + "/" + CRYPT, SESSION),
+                arguments("/api/v5/" + UUID.toUpperCase() + "/" + CRYPT, SESSION),
+                arguments("/api/v5/ABCDEF01-abcd-ABCD-abcd-0123456789aB/" + CRYPT, SESSION),
+                arguments("/api/v5/" + UUID.substring(1) + "/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/" + UUID + "0/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/" + UUID.replace("-", "") + "abcd/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/123456789-234-1234-1234-123456789012/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/12345678-12345-234-1234-123456789012/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/12345678-1234-1234-1234-12345678901-/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/12345678-1234-1234-1234-12345678901g/" + CRYPT, INVALID_UUID),
+
+                // crypt length and padding
+                arguments("/api/v5/" + UUID + "/" + crypt(9), INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/" + crypt(10), SESSION),
+                arguments("/api/v5/" + UUID + "/" + crypt(2048), SESSION),
+                arguments("/api/v5/" + UUID + "/" + crypt(2049), INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/" + crypt(9) + "=", INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/" + crypt(10) + "=", SESSION),
+                arguments("/api/v5/" + UUID + "/" + crypt(10) + "==", SESSION),
+                arguments("/api/v5/" + UUID + "/" + crypt(10) + "===", INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/" + crypt(2048) + "==", SESSION),
+                arguments("/api/v5/" + UUID + "/aaaaa=aaaaa", INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/aaaaa+aaaaa", INVALID_CRYPT),
+                arguments("/api/v5/" + UUID + "/-_-_-_-_-_", SESSION),
+
+                // trailing segments of getData/persist
+                arguments("/api/v5/" + UUID + "/" + CRYPT + "/", SESSION),
+                arguments("/api/v5/" + UUID + "/" + CRYPT + "/true", SESSION),
+
+                // RSA and MAC heartbeat
+                arguments("/api/v5/heartbeat/" + UUID + "/" + CRYPT, HEARTBEAT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + crypt(9), INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + CRYPT + "/", INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID, INVALID_PATH),
+                arguments("/api/v5/heartbeat/bad/" + TIMESTAMP + "/" + MAC, INVALID_UUID),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC, HEARTBEAT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC + "/", INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC.substring(1), INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC + "a", INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC.substring(1) + "=", INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + "9".repeat(18) + "/" + MAC, HEARTBEAT),
+                arguments("/api/v5/heartbeat/" + UUID + "/" + "9".repeat(19) + "/" + MAC, INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "//" + MAC, INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/-1/" + MAC, INVALID_CRYPT),
+                arguments("/api/v5/heartbeat/" + UUID + "/12a/" + MAC, INVALID_CRYPT),
+
+                // sync pages
+                arguments("/api/v5/page/" + UUID + "/" + CRYPT, PAGE),
+                arguments("/api/v5/page/" + UUID + "/" + crypt(9), INVALID_CRYPT),
+                arguments("/api/v5/page/" + UUID + "/" + CRYPT + "/", INVALID_PATH),
+                arguments("/api/v5/page/" + UUID + "/" + CRYPT + "/x", INVALID_PATH),
+
+                // subtree
+                arguments("/api/v5/subtree/" + UUID + "/0/" + MAC, SUBTREE),
+                arguments("/api/v5/subtree/" + UUID + "/" + "9".repeat(18) + "/" + MAC, SUBTREE),
+                arguments("/api/v5/subtree/" + UUID + "/" + "9".repeat(19) + "/" + MAC, INVALID_CRYPT),
+                arguments("/api/v5/subtree/" + UUID + "/-1/" + MAC, INVALID_CRYPT),
+                arguments("/api/v5/subtree/" + UUID + "/0/" + MAC + "/", INVALID_CRYPT),
+                arguments("/api/v5/subtree/" + UUID + "/0/" + MAC.substring(1), INVALID_CRYPT),
+                arguments("/api/v5/subtree/" + UUID + "/" + MAC, INVALID_CRYPT),
+
+                // change stream
+                arguments("/api/v5/events/" + UUID + "/" + MAC, EVENTS),
+                arguments("/api/v5/events/" + UUID + "/" + MAC + "/", INVALID_CRYPT),
+                arguments("/api/v5/events/" + UUID + "/" + MAC.substring(1), INVALID_CRYPT),
+                arguments("/api/v5/events/" + UUID + "/" + MAC + "a", INVALID_CRYPT),
+                arguments("/api/v5/events/bad/" + MAC, INVALID_UUID),
+
+                // reactive: getData/persist without trailing segments and the MAC heartbeat only
+                arguments("/api/v5/rx", INVALID_PATH),
+                arguments("/api/v5/rx/", INVALID_PATH),
+                arguments("/api/v5/rx/" + UUID + "/" + CRYPT, RX),
+                arguments("/api/v5/rx/" + UUID + "/" + crypt(2048) + "==", RX),
+                arguments("/api/v5/rx/" + UUID + "/" + CRYPT + "/", INVALID_PATH),
+                arguments("/api/v5/rx/" + UUID + "/" + CRYPT + "/true", INVALID_PATH),
+                arguments("/api/v5/rx/" + UUID + "/" + crypt(9), INVALID_CRYPT),
+                arguments("/api/v5/rx/bad/" + CRYPT, INVALID_UUID),
+                arguments("/api/v5/rx/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC, RX),
+                arguments("/api/v5/rx/heartbeat/" + UUID + "/" + TIMESTAMP + "/" + MAC + "/", INVALID_CRYPT),
+                arguments("/api/v5/rx/heartbeat/" + UUID + "/" + CRYPT, INVALID_PATH),
+                arguments("/api/v5/rx/page/" + UUID + "/" + CRYPT, INVALID_PATH),
+                arguments("/api/v5/rx/subtree/" + UUID + "/0/" + MAC, INVALID_PATH),
+                arguments("/api/v5/rx/events/" + UUID + "/" + MAC, INVALID_PATH),
+                arguments("/api/v5/rx/rx/" + UUID + "/" + CRYPT, INVALID_UUID)
+        );
+    }
+
+    @ParameterizedTest(name = "{1} {0}")
+    @MethodSource("paths")
+    @DisplayName("Should classify the path")
+    void shouldValidate(final String path, final Result expected) {
+        assertEquals(expected, ApiPath.validate(path));
+    }
+
+    @Test
+    @DisplayName("Should find the uuid after every prefix")
+    void shouldFindUuid() {
+        for (final var prefix : new String[]{"/api/v5/", "/api/v5/heartbeat/", "/api/v5/page/", "/api/v5/subtree/",
+                "/api/v5/events/", "/api/v5/rx/", "/api/v5/rx/heartbeat/"}) {
+            final var path = prefix + UUID + "/" + MAC;
+            final var start = ApiPath.uuidStart(path);
+            assertEquals(UUID, path.substring(start, ApiPath.segmentEnd(path, start)), prefix);
+        }
+    }
+
+    private static String crypt(final int length) {
+        return "a".repeat(length);
+    }
+}
@@ -33,10 +33,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.io.PrintWriter;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -66,6 +68,9 @@ class AuthenticationFilterTest {
     @Mock
     private PrintWriter printWriter;
 
+    @Spy
+    private RateLimiter rateLimiter = new RateLimiter();
+
     @InjectMocks
     private AuthFilter authenticationFilter;
 
@@ -82,6 +87,7 @@ class AuthenticationFilterTest {
 
         // Mock response writer
         lenient().when(response.getWriter()).thenReturn(printWriter);
+        lenient().when(request.getRemoteAddr()).thenReturn("127.0.0.1");
 
         // Setup test data
         testUser = new User();
@@ -215,4 +221,24 @@ class AuthenticationFilterTest {
         // Note: The actual clearing behavior depends on the filter implementation
         // This test structure ensures the filter handles failure cases
     }
-}
\ No newline at end of file
+
+    @Test
+    @DisplayName("Should answer 429 without authenticating once the device budget is spent")
+    void shouldRateLimitBeforeAuthentication() throws Exception {
+        // Given - a device that keeps failing authentication
+        when(request.getRequestURI()).thenReturn("/api/v5/12345678-1234-1234-1234-123456789012/validCryptData123");
+        when(deviceRepository.findByUuid(VALID_UUID)).thenReturn(Optional.empty());
+
+        // When - three failures start the backoff
+        for (int i = 0; i < 4; i++) {
+            authenticationFilter.doFilterInternal(request, response, filterChain);
+        }
+
+        // Then - the last call is rejected without touching the repository
+        verify(deviceRepository, times(3)).findByUuid(VALID_UUID);
+        verify(response).setStatus(429);
+        verify(response).setHeader(eq("Retry-After"), anyString());
+        verify(printWriter).write("{\"error\":\"Too many requests\"}");
+        verifyNoInteractions(filterChain);
+    }
+}
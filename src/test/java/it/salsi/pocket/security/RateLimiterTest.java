@@ -0,0 +1,137 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RateLimiter Unit Tests")
+class RateLimiterTest {
+
+    private static final String UUID_A = "12345678-1234-1234-1234-123456789012";
+    private static final String ADDRESS = "10.0.0.1";
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new RateLimiter(clock::get);
+        ReflectionTestUtils.setField(rateLimiter, "devicePerSecond", 1.0);
+        ReflectionTestUtils.setField(rateLimiter, "deviceBurst", 2);
+        ReflectionTestUtils.setField(rateLimiter, "addressPerSecond", 1_000.0);
+        ReflectionTestUtils.setField(rateLimiter, "addressBurst", 1_000);
+    }
+
+    @Test
+    @DisplayName("Should let a burst through and refill one token per interval")
+    void shouldRefill() {
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+        assertEquals(1_000, rateLimiter.acquire(UUID_A, ADDRESS));
+
+        advance(400);
+        assertEquals(600, rateLimiter.acquire(UUID_A, ADDRESS));
+
+        advance(600);
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+        assertEquals(1_000, rateLimiter.acquire(UUID_A, ADDRESS));
+    }
+
+    @Test
+    @DisplayName("Should double the backoff on every failure past the threshold and clear it on success")
+    void shouldDoubleBackoff() {
+        ReflectionTestUtils.setField(rateLimiter, "devicePerSecond", 1_000.0);
+        ReflectionTestUtils.setField(rateLimiter, "deviceBurst", 1_000);
+
+        rateLimiter.failure(UUID_A, ADDRESS);
+        rateLimiter.failure(UUID_A, ADDRESS);
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+
+        for (final long expected : new long[]{1_000, 2_000, 4_000, 8_000}) {
+            rateLimiter.failure(UUID_A, ADDRESS);
+            assertEquals(expected, rateLimiter.acquire(UUID_A, ADDRESS));
+            advance(expected);
+            assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+        }
+
+        rateLimiter.success(UUID_A);
+        rateLimiter.failure(UUID_A, ADDRESS);
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+    }
+
+    @Test
+    @DisplayName("Should cap the buckets held however many keys are invented")
+    void shouldCapEntries() {
+        ReflectionTestUtils.setField(rateLimiter, "maxEntries", 64);
+
+        for (int i = 0; i < 10_000; i++) {
+            rateLimiter.acquire(UUID.randomUUID().toString(), "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+            rateLimiter.failure(UUID.randomUUID().toString(), ADDRESS);
+        }
+        assertTrue(rateLimiter.size() <= 2 * 64, "size " + rateLimiter.size());
+
+        // the failing address is backing off, a device seen again elsewhere is served from its own bucket
+        assertTrue(rateLimiter.acquire(UUID_A, ADDRESS) > 0);
+        assertEquals(0, rateLimiter.acquire(UUID_A, "10.1.0.1"));
+        assertEquals(0, rateLimiter.acquire(UUID_A, "10.1.0.1"));
+        assertEquals(1_000, rateLimiter.acquire(UUID_A, "10.1.0.1"));
+    }
+
+    @Test
+    @DisplayName("Should not create device buckets for an address over budget")
+    void shouldCheckAddressFirst() {
+        ReflectionTestUtils.setField(rateLimiter, "addressPerSecond", 1.0);
+        ReflectionTestUtils.setField(rateLimiter, "addressBurst", 1);
+
+        assertEquals(0, rateLimiter.acquire(UUID_A, ADDRESS));
+        assertEquals(2, rateLimiter.size());
+        for (int i = 0; i < 100; i++) {
+            assertTrue(rateLimiter.acquire(UUID.randomUUID().toString(), ADDRESS) > 0);
+        }
+        assertEquals(2, rateLimiter.size());
+    }
+
+    @Test
+    @DisplayName("Should keep the recently used buckets when the table is swept")
+    void shouldSweepLeastRecentlyUsed() {
+        ReflectionTestUtils.setField(rateLimiter, "maxEntries", 64);
+
+        // a blocked address in use all along survives the sweeps, older addresses go first
+        for (int i = 0; i < 1_000; i++) {
+            rateLimiter.failure(UUID_A, ADDRESS);
+            rateLimiter.acquire(UUID_A, "10.0." + (i >> 8 & 0xff) + "." + (i & 0xff));
+        }
+        assertTrue(rateLimiter.size() <= 64 + 1, "size " + rateLimiter.size());
+        assertTrue(rateLimiter.acquire(UUID.randomUUID().toString(), ADDRESS) > 0);
+    }
+
+    private void advance(final long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+}
@@ -0,0 +1,183 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.security.SessionMac;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ChangeNotifier Tests")
+class ChangeNotifierTest {
+
+    private static final String SECRET = "events";
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+    private static HttpClient httpClient;
+
+    @BeforeAll
+    static void start() {
+        context = EmbeddedH2.shared();
+        fixture = new SessionFixture(context);
+        httpClient = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void stop() {
+        httpClient.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("Should announce a persist to the other devices of the user only")
+    void shouldNotifyOtherDevices() throws Exception {
+        final var writer = fixture.session(SECRET);
+        final var user = writer.user();
+        final var reader = fixture.session(SECRET, user);
+        final var stranger = fixture.session(SECRET);
+
+        final var login = fixture.getData(writer, 0);
+        fixture.getData(reader, 0);
+        fixture.getData(stranger, 0);
+
+        // the context is shared, other classes may hold streams of their own
+        final var notifier = context.getBean(ChangeNotifier.class);
+        final var streams = notifier.size() + 3;
+        final var writerLines = open(writer.device());
+        final var readerLines = open(reader.device());
+        final var strangerLines = open(stranger.device());
+        final var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (notifier.size() < streams && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(streams, notifier.size());
+
+        final var body = "{\"groups\":[{\"id\":1,\"serverId\":0,\"title\":\"g\",\"icon\":\"\",\"deleted\":false}],\"groupFields\":[],\"fields\":[]}";
+        final var persist = fixture.persist(writer, login.getBody().timestampLastUpdate(), body);
+        assertEquals(200, persist.getStatusCode().value());
+
+        assertEquals("event:" + ChangeNotifier.EVENT, next(readerLines, "event:"));
+        final var data = next(readerLines, "data:");
+        assertTrue(data.contains("\"userId\":" + user.getId()), data);
+        assertTrue(data.contains("\"timestampLastUpdate\":" + persist.getBody().timestampLastUpdate()), data);
+
+        assertNull(writerLines.poll(500, TimeUnit.MILLISECONDS));
+        assertNull(strangerLines.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("Should refuse a stream with a wrong MAC")
+    void shouldRejectWrongMac() throws Exception {
+        final var session = fixture.session(SECRET);
+        final var device = session.device();
+        fixture.getData(session, 0);
+
+        final var mac = SessionMac.sign(SessionMac.deriveKey("other"),
+                device.getUuid() + "|" + device.getId() + "|" + SessionController.EVENTS_MAC_LABEL);
+        final var response = httpClient.send(request(device, mac), HttpResponse.BodyHandlers.discarding());
+        assertEquals(SessionController.ErrorCode.SECRET_NOT_MATCH.code, response.statusCode());
+    }
+
+    @Test
+    @DisplayName("Should keep a stream opened while the last other stream of the user closes")
+    void shouldKeepConcurrentSubscribe() throws Exception {
+        final var notifier = new ChangeNotifierImpl(context.getBean(InvalidationBus.class), new SimpleMeterRegistry());
+        final var executor = Executors.newFixedThreadPool(2);
+        try {
+            final var users = 2_000;
+            for (long userId = 1; userId <= users; userId++) {
+                final var id = userId;
+                final var closing = notifier.subscribe("closing", id);
+                final var barrier = new CyclicBarrier(2);
+                final var closed = executor.submit(() -> {
+                    barrier.await();
+                    ReflectionTestUtils.invokeMethod(notifier, "remove", id, "closing", closing);
+                    return null;
+                });
+                final var opened = executor.submit(() -> {
+                    barrier.await();
+                    return notifier.subscribe("opening", id);
+                });
+                closed.get();
+                opened.get();
+            }
+            assertEquals(users, notifier.size());
+        } finally {
+            executor.shutdownNow();
+            notifier.close();
+        }
+    }
+
+    /**
+     * Event and data lines of the stream of {@code device}, comments and blank lines left out
+     */
+    private static BlockingQueue<String> open(final Device device) {
+        final var mac = SessionMac.sign(SessionMac.deriveKey(SECRET),
+                device.getUuid() + "|" + device.getId() + "|" + SessionController.EVENTS_MAC_LABEL);
+        final var ret = new LinkedBlockingQueue<String>();
+        httpClient.sendAsync(request(device, mac), HttpResponse.BodyHandlers.ofLines())
+                .thenAccept(response -> {
+                    assertEquals(200, response.statusCode());
+                    try (final Stream<String> lines = response.body()) {
+                        lines.filter(line -> line.startsWith("event:") || line.startsWith("data:")).forEach(ret::add);
+                    }
+                });
+        return ret;
+    }
+
+    private static HttpRequest request(final Device device, final String mac) {
+        final var port = context.getEnvironment().getProperty("local.server.port");
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v5/events/" + device.getUuid() + "/" + mac))
+                .header("X-API-Key", "__cors_token_change_me__")
+                .header("Accept", "text/event-stream")
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+    }
+
+    private static String next(final BlockingQueue<String> lines, final String prefix) throws InterruptedException {
+        final var line = lines.poll(10, TimeUnit.SECONDS);
+        assertNotNull(line, "no " + prefix + " line");
+        assertTrue(line.startsWith(prefix), line);
+        return line;
+    }
+}
@@ -0,0 +1,151 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.models.Device;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+
+import java.sql.Statement;
+
+import static it.salsi.pocket.Constant.PROPERTY_CLEAN_DATA_ENABLE;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("DatabaseManager purge Tests")
+class DatabaseManagerTest {
+
+    private static ConfigurableApplicationContext context;
+    private static SessionFixture fixture;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void start() throws Exception {
+        // own database: the purge runs over every user
+        context = EmbeddedH2.start("purge", "server.port=0", "server.clean-data.throttle-ms=0",
+                "server.clean-data.batch-size=1");
+        fixture = new SessionFixture(context);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        context.getBean(PropertiesManager.class).set(PROPERTY_CLEAN_DATA_ENABLE, true);
+    }
+
+    @AfterAll
+    static void stop() {
+        context.close();
+    }
+
+    @Test
+    @DisplayName("Should purge rows deleted before the oldest sync of the valid devices, children first")
+    void shouldPurgeBeforeCutoff() throws Exception {
+        final var userId = fixture.user("purge").getId();
+        // the invalidated device does not hold the cutoff back, the oldest valid one does
+        device(userId, Device.Status.ACTIVE, 1_000);
+        device(userId, Device.Status.ACTIVE, 2_000);
+        device(userId, Device.Status.INVALIDATED, 10);
+
+        final var parent = group(userId, null, true, 500);
+        final var child = group(userId, parent, true, 500);
+        final var groupField = groupField(userId, child, true, 500);
+        final var field = field(userId, child, true, 500);
+
+        final var live = group(userId, null, false, 500);
+        final var recent = field(userId, live, true, 1_500);
+        final var alive = field(userId, live, false, 100);
+
+        // a soft deleted folder still holding a live group stays until the group goes
+        final var kept = group(userId, null, true, 500);
+        final var keptChild = group(userId, kept, false, 500);
+
+        assertTrue(context.getBean(DatabaseManager.class).cleanOldData() >= 4);
+
+        assertFalse(exists("groups", parent));
+        assertFalse(exists("groups", child));
+        assertFalse(exists("group_fields", groupField));
+        assertFalse(exists("fields", field));
+
+        assertTrue(exists("groups", live));
+        assertTrue(exists("fields", recent));
+        assertTrue(exists("fields", alive));
+        assertTrue(exists("groups", kept));
+        assertTrue(exists("groups", keptChild));
+    }
+
+    @Test
+    @DisplayName("Should stop when the thread is interrupted")
+    void shouldStopWhenInterrupted() throws Exception {
+        final var userId = fixture.user("purge-interrupted").getId();
+        device(userId, Device.Status.ACTIVE, 1_000);
+        final var group = group(userId, null, true, 500);
+        final var field = field(userId, group, true, 500);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertEquals(0, context.getBean(DatabaseManager.class).cleanOldData());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+
+        assertTrue(exists("groups", group));
+        assertTrue(exists("fields", field));
+    }
+
+    private static void device(final long userId, final Device.Status status, final long timestampLastUpdate) {
+        insert("INSERT INTO `devices` (`uuid`, `status`, `user_id`, `public_key`, `private_key`, `timestamp_last_update`) "
+                        + "VALUES (RANDOM_UUID(), ?, ?, '', '', ?)",
+                status.ordinal(), userId, timestampLastUpdate);
+    }
+
+    private static long group(final long userId, final Long groupId, final boolean deleted, final long timestampLastUpdate) {
+        return insert("INSERT INTO `groups` (`deleted`, `icon`, `title`, `group_id`, `user_id`, `timestamp_last_update`) "
+                + "VALUES (?, '', 'g', ?, ?, ?)", deleted, groupId, userId, timestampLastUpdate);
+    }
+
+    private static long groupField(final long userId, final long groupId, final boolean deleted, final long timestampLastUpdate) {
+        return insert("INSERT INTO `group_fields` (`deleted`, `is_hidden`, `title`, `group_id`, `user_id`, `timestamp_last_update`) "
+                + "VALUES (?, FALSE, 'gf', ?, ?, ?)", deleted, groupId, userId, timestampLastUpdate);
+    }
+
+    private static long field(final long userId, final long groupId, final boolean deleted, final long timestampLastUpdate) {
+        return insert("INSERT INTO `fields` (`deleted`, `group_field_id`, `is_hidden`, `title`, `value`, `group_id`, `user_id`, `timestamp_last_update`) "
+                + "VALUES (?, 0, FALSE, 'f', 'v', ?, ?, ?)", deleted, groupId, userId, timestampLastUpdate);
+    }
+
+    private static long insert(final String sql, final Object... args) {
+        final var keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            final var statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            for (int i = 0; i < args.length; i++) {
+                statement.setObject(i + 1, args[i]);
+            }
+            return statement;
+        }, keyHolder);
+        return keyHolder.getKeyAs(Long.class);
+    }
+
+    private static boolean exists(final String table, final long id) {
+        return !jdbcTemplate.queryForList("SELECT `id` FROM `" + table + "` WHERE `id` = ?", Long.class, id).isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Field;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.List;
+
+import static it.salsi.pocket.services.IdempotencyStoreImpl.ENTRY_BYTES;
+import static it.salsi.pocket.services.IdempotencyStoreImpl.ROW_BYTES;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("IdempotencyStore Unit Tests")
+class IdempotencyStoreTest {
+
+    private static final String UUID = "12345678-1234-1234-1234-123456789012";
+    private static final byte[] HASH = {1, 2, 3};
+
+    private IdempotencyStoreImpl store;
+
+    @BeforeEach
+    void setUp() {
+        store = new IdempotencyStoreImpl(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(store, "maxBytes", 4L * (ENTRY_BYTES + 10 * ROW_BYTES));
+    }
+
+    @Test
+    @DisplayName("Should drop the oldest answers past the byte bound")
+    void shouldBoundBytes() {
+        for (int i = 0; i < 4; i++) {
+            completed("k" + i, 10);
+        }
+        assertEquals(4, store.size());
+        assertEquals(4L * (ENTRY_BYTES + 10 * ROW_BYTES), store.bytes());
+
+        completed("k4", 20);
+        assertEquals(3, store.size());
+        assertEquals(IdempotencyStore.State.NEW, store.claim(UUID, "k0", HASH).state());
+        assertEquals(IdempotencyStore.State.NEW, store.claim(UUID, "k1", HASH).state());
+        assertEquals(IdempotencyStore.State.DONE, store.claim(UUID, "k4", HASH).state());
+    }
+
+    @Test
+    @DisplayName("Should keep an answer larger than the bound alone")
+    void shouldKeepLargeAnswer() {
+        completed("k0", 10);
+        completed("k1", 1_000);
+        assertEquals(1, store.size());
+        assertEquals(IdempotencyStore.State.DONE, store.claim(UUID, "k1", HASH).state());
+
+        store.release(UUID, "k1");
+        assertEquals(0, store.bytes());
+    }
+
+    @Test
+    @DisplayName("Should refuse a key claimed with another body hash")
+    void shouldRejectOtherHash() {
+        assertEquals(IdempotencyStore.State.NEW, store.claim(UUID, "k", HASH).state());
+        assertEquals(IdempotencyStore.State.MISMATCH, store.claim(UUID, "k", new byte[]{1, 2, 4}).state());
+        assertEquals(IdempotencyStore.State.IN_PROGRESS, store.claim(UUID, "k", HASH.clone()).state());
+    }
+
+    private void completed(final String key, final int rows) {
+        assertEquals(IdempotencyStore.State.NEW, store.claim(UUID, key, HASH).state());
+        store.complete(UUID, key, new Container(0L, null, null, List.of(), List.of(),
+                Collections.nCopies(rows, new Field())));
+    }
+}
@@ -0,0 +1,122 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.controllers.SessionController;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.security.SessionMac;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static it.salsi.pocket.configs.SessionFixture.ADDRESS;
+import static it.salsi.pocket.configs.SessionFixture.token;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes in the same JVM sharing one H2 database, as two backends behind a load balancer share MariaDB
+ */
+@DisplayName("JdbcCacheManager Tests")
+class JdbcCacheManagerTest {
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+    private static SessionFixture fixture;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = EmbeddedH2.start("sessions", "server.port=0", "server.session-store=jdbc");
+        nodeB = EmbeddedH2.start("sessions", "server.port=0", "server.session-store=jdbc");
+        fixture = new SessionFixture(nodeA);
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    @DisplayName("Should use the jdbc store on both nodes")
+    void shouldUseJdbcStore() {
+        assertInstanceOf(JdbcCacheManagerImpl.class, nodeA.getBean(CacheManager.class));
+        assertInstanceOf(JdbcCacheManagerImpl.class, nodeB.getBean(CacheManager.class));
+    }
+
+    @Test
+    @DisplayName("Should persist and heartbeat on a node other than the one that logged in")
+    void shouldShareSessionAcrossNodes() throws Exception {
+        final var session = fixture.session("secret");
+        final var device = session.device();
+        final var a = nodeA.getBean(SessionController.class);
+        final var b = nodeB.getBean(SessionController.class);
+
+        // login on A
+        final var login = a.getData(device.getUuid(), session.token(0), ADDRESS);
+        assertEquals(200, login.getStatusCode().value());
+        final var timestamp = login.getBody().timestampLastUpdate();
+
+        // persist on B
+        final var body = "{\"groups\":[{\"id\":1,\"serverId\":0,\"title\":\"g\",\"icon\":\"\",\"deleted\":false}],\"groupFields\":[],\"fields\":[]}";
+        final var persist = b.persist(device.getUuid(), session.token(timestamp),
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), "application/json", ADDRESS);
+        assertEquals(200, persist.getStatusCode().value());
+        assertEquals(1, persist.getBody().groups().size());
+
+        // heartbeat on A sees the timestamp written by B
+        final var updated = persist.getBody().timestampLastUpdate();
+        final var message = device.getUuid() + "|" + device.getId() + "|" + updated;
+        final var heartbeat = a.macHeartbeat(device.getUuid(), updated,
+                SessionMac.sign(SessionMac.deriveKey("secret"), message));
+        assertEquals(200, heartbeat.getStatusCode().value());
+        assertNotEquals(0L, ((Container) heartbeat.getBody()).timestampLastUpdate());
+
+        // logout on B is seen by A
+        assertTrue(nodeB.getBean(CacheManager.class).rm(device.getUuid()));
+        assertTrue(nodeA.getBean(CacheManager.class).get(device.getUuid()).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should drop the old secret on every node after a new login")
+    void shouldReplaceSessionOnLogin() throws Exception {
+        final var first = fixture.session("first");
+        final var device = first.device();
+        final var a = nodeA.getBean(SessionController.class);
+        final var b = nodeB.getBean(SessionController.class);
+
+        assertEquals(200, a.getData(device.getUuid(), first.token(0), ADDRESS)
+                .getStatusCode().value());
+        // A now holds the session in its near-cache, the new login happens on B
+        assertTrue(nodeA.getBean(CacheManager.class).get(device.getUuid()).isPresent());
+        assertEquals(200, b.getData(device.getUuid(), token(first.rsaHelper(), device, "second", 0), ADDRESS)
+                .getStatusCode().value());
+
+        final var record = nodeA.getBean(CacheManager.class).get(device.getUuid());
+        assertTrue(record.isPresent());
+        assertEquals("second", record.get().getSecret());
+    }
+}
@@ -0,0 +1,144 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.DeviceRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.RSAHelper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static it.salsi.pocket.Constant.PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES;
+import static it.salsi.pocket.security.RSAHelper.ALGORITHM;
+import static it.salsi.pocket.security.RSAHelper.KEY_SIZE;
+import static it.salsi.pocket.services.CacheManager.CacheRecord;
+import static it.salsi.pocket.services.InvalidationBus.Topic.DEVICE;
+import static it.salsi.pocket.services.InvalidationBus.Topic.USER;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two nodes in the same JVM sharing one H2 database, each with its own local session store
+ */
+@DisplayName("JdbcInvalidationBus Tests")
+class JdbcInvalidationBusTest {
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = EmbeddedH2.start("invalidations", "server.port=0", "server.invalidation-bus=jdbc", "server.invalidation-poll-ms=50");
+        nodeB = EmbeddedH2.start("invalidations", "server.port=0", "server.invalidation-bus=jdbc", "server.invalidation-poll-ms=50");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    @DisplayName("Should refresh a property written by another node")
+    void shouldReloadProperty() throws Exception {
+        final var a = nodeA.getBean(PropertiesManager.class);
+        final var b = nodeB.getBean(PropertiesManager.class);
+        final var value = b.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES) + 7;
+
+        a.set(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES, value);
+
+        await(() -> b.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES) == value);
+    }
+
+    @Test
+    @DisplayName("Should drop sessions of a removed device or changed user on another node")
+    void shouldEvictSessions() throws Exception {
+        final var user = nodeA.getBean(UserRepository.class)
+                .save(new User("node", UUID.randomUUID() + "@pocket.local", "passwd"));
+        final var first = device(user);
+        final var second = device(user);
+        final var cacheManager = nodeB.getBean(CacheManager.class);
+        final var invalidationBus = nodeA.getBean(InvalidationBus.class);
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        assertTrue(cacheManager.add(new CacheRecord(first.getUuid(), "secret", first, rsaHelper, 0)));
+        assertTrue(cacheManager.add(new CacheRecord(second.getUuid(), "secret", second, rsaHelper, 0)));
+
+        invalidationBus.publish(DEVICE, first.getUuid());
+        await(() -> !cacheManager.has(first.getUuid()));
+        assertTrue(cacheManager.has(second.getUuid()));
+
+        invalidationBus.publish(USER, String.valueOf(user.getId()));
+        await(() -> !cacheManager.has(second.getUuid()));
+    }
+
+    @Test
+    @DisplayName("Should deliver a row committed after a higher one")
+    void shouldDeliverLateCommit() throws Exception {
+        final var user = nodeA.getBean(UserRepository.class)
+                .save(new User("late", UUID.randomUUID() + "@pocket.local", "passwd"));
+        final var late = device(user);
+        final var early = device(user);
+        final var cacheManager = nodeB.getBean(CacheManager.class);
+        final var rsaHelper = new RSAHelper(ALGORITHM, KEY_SIZE);
+        assertTrue(cacheManager.add(new CacheRecord(late.getUuid(), "secret", late, rsaHelper, 0)));
+        assertTrue(cacheManager.add(new CacheRecord(early.getUuid(), "secret", early, rsaHelper, 0)));
+
+        // the first insert takes the lower id but commits once B has polled past the second
+        try (final var connection = nodeA.getBean(DataSource.class).getConnection()) {
+            connection.setAutoCommit(false);
+            try (final var insert = connection.prepareStatement(
+                    "INSERT INTO invalidations (origin, topic, item_key, timestamp_creation) VALUES ('other', ?, ?, 0)")) {
+                insert.setString(1, DEVICE.name());
+                insert.setString(2, late.getUuid());
+                insert.executeUpdate();
+            }
+            nodeA.getBean(InvalidationBus.class).publish(DEVICE, early.getUuid());
+            await(() -> !cacheManager.has(early.getUuid()));
+            assertTrue(cacheManager.has(late.getUuid()));
+            connection.commit();
+        }
+        await(() -> !cacheManager.has(late.getUuid()));
+    }
+
+    private static Device device(final User user) {
+        final var device = new Device(user);
+        device.setUuid(UUID.randomUUID().toString());
+        device.setPublicKey("");
+        device.setPrivateKey("");
+        return nodeA.getBean(DeviceRepository.class).save(device);
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final var deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "not propagated in time");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import it.salsi.pocket.Constant;
+import it.salsi.pocket.models.Device;
+import it.salsi.pocket.models.Property;
+import it.salsi.pocket.models.User;
+import it.salsi.pocket.repositories.PropertyRepository;
+import it.salsi.pocket.repositories.UserRepository;
+import it.salsi.pocket.security.RSAHelper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static it.salsi.pocket.Constant.*;
+import static it.salsi.pocket.services.CacheManager.CacheRecord;
+import static it.salsi.pocket.services.InvalidationBus.InvalidationEvent;
+import static it.salsi.pocket.services.InvalidationBus.Topic.PROPERTY;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("PropertiesManager Unit Tests")
+class PropertiesManagerTest {
+
+    private static final String ADMIN = "admin@pocket.local";
+
+    @Mock
+    private PropertyRepository propertyRepository;
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private InvalidationBus invalidationBus;
+
+    private PropertiesManagerImpl propertiesManager;
+
+    private User admin;
+
+    @BeforeEach
+    void setUp() {
+        propertiesManager = new PropertiesManagerImpl(propertyRepository, userRepository, invalidationBus);
+        ReflectionTestUtils.setField(propertiesManager, "authUser", ADMIN);
+
+        admin = new User();
+        admin.setId(1L);
+        admin.setEmail(ADMIN);
+        when(userRepository.findByEmail(ADMIN)).thenReturn(Optional.of(admin));
+    }
+
+    @Test
+    @DisplayName("Should parse the stored values by their property type on reload")
+    void shouldParseTypedValues() {
+        when(propertyRepository.findAllByUserId(1L)).thenReturn(List.of(
+                property(PROPERTY_INVALIDATOR_ENABLE, "false"),
+                property(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES, " 25 ")
+        ));
+
+        propertiesManager.reload();
+
+        assertFalse(propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE));
+        assertEquals(25, propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES));
+        assertEquals(Optional.of(25), propertiesManager.get(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES));
+    }
+
+    @Test
+    @DisplayName("Should fall back to the MetaProperty default for a missing or invalid property")
+    void shouldFallBackToDefaults() {
+        when(propertyRepository.findAllByUserId(1L)).thenReturn(List.of(
+                property(PROPERTY_INVALIDATOR_MAX_LOGIN_DAYS, "thirty")
+        ));
+
+        propertiesManager.reload();
+
+        assertTrue(propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE));
+        assertFalse(propertiesManager.getBoolean(PROPERTY_CLEAN_DATA_ENABLE));
+        assertEquals(10, propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES));
+        assertEquals(30, propertiesManager.getInt(PROPERTY_INVALIDATOR_MAX_LOGIN_DAYS));
+        assertTrue(propertiesManager.get(PROPERTY_INVALIDATOR_ENABLE).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should refresh the snapshot on set and announce the change")
+    void shouldRefreshOnSet() throws Exception {
+        when(propertyRepository.findAllByUserId(1L)).thenReturn(List.of());
+
+        assertEquals(10, propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES));
+
+        propertiesManager.set(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES, 42);
+
+        assertEquals(42, propertiesManager.getInt(PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES));
+        verify(propertyRepository).save(argThat(p -> p.getUser() == admin && "42".equals(p.getValue())));
+        verify(invalidationBus).publish(PROPERTY, PROPERTY_INVALIDATOR_CACHE_MAX_MINUTES.value);
+        verify(propertyRepository, times(1)).findAllByUserId(1L);
+    }
+
+    @Test
+    @DisplayName("Should reload the snapshot when another node changes a property")
+    void shouldReloadOnInvalidation() {
+        when(propertyRepository.findAllByUserId(1L))
+                .thenReturn(List.of(property(PROPERTY_INVALIDATOR_ENABLE, "true")))
+                .thenReturn(List.of(property(PROPERTY_INVALIDATOR_ENABLE, "false")));
+
+        assertTrue(propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE));
+        assertTrue(propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE));
+
+        propertiesManager.onInvalidation(new InvalidationEvent(PROPERTY, PROPERTY_INVALIDATOR_ENABLE.value));
+
+        assertFalse(propertiesManager.getBoolean(PROPERTY_INVALIDATOR_ENABLE));
+        verify(propertyRepository, times(2)).findAllByUserId(1L);
+    }
+
+    @Test
+    @DisplayName("Should invalidate the cache with the default timeout when no property is stored")
+    void shouldInvalidateWithDefaults() {
+        when(propertyRepository.findAllByUserId(1L)).thenReturn(List.of());
+
+        final var cacheManager = new CacheManagerImpl(propertiesManager, new SimpleMeterRegistry());
+        final var now = Instant.now().getEpochSecond();
+        cacheManager.add(record("fresh", now - 5 * 60));
+        cacheManager.add(record("stale", now - 20 * 60));
+
+        cacheManager.invalidate();
+
+        assertTrue(cacheManager.has("fresh"));
+        assertFalse(cacheManager.has("stale"));
+    }
+
+    private Property property(final Constant key, final String value) {
+        final var ret = new Property();
+        ret.setUser(admin);
+        ret.setKey(key);
+        ret.setType(key.getMetaProperty().type());
+        ret.setValue(value);
+        return ret;
+    }
+
+    private static CacheRecord record(final String uuid, final long timestamp) {
+        return new CacheRecord(uuid, "secret", new Device(), mock(RSAHelper.class), timestamp);
+    }
+}
@@ -0,0 +1,139 @@
+/***************************************************************************
+ *
+ * Pocket web backend
+ * Copyright (C) 2018/2025 Antonio Salsi <passy.linux@zresa.it>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ ***************************************************************************/
+
+package it.salsi.pocket.services;
+
+import it.salsi.pocket.configs.EmbeddedH2;
+import it.salsi.pocket.configs.ReplicaRoutingDataSource;
+import it.salsi.pocket.configs.SessionFixture;
+import it.salsi.pocket.configs.SessionFixture.Session;
+import it.salsi.pocket.models.Container;
+import it.salsi.pocket.models.Group;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One node with two H2 databases, the replica is brought up to date by copying rows by hand
+ */
+@DisplayName("ReplicaRouter Tests")
+class ReplicaRouterTest {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica;MODE=MariaDB;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1;"
+            + "INIT=RUNSCRIPT FROM 'classpath:h2-schema.sql'";
+
+    private static ConfigurableApplicationContext node;
+    private static SessionFixture fixture;
+    private static JdbcTemplate primary;
+    private static JdbcTemplate replica;
+
+    @BeforeAll
+    static void startNode() {
+        node = EmbeddedH2.start("primary", "server.port=0", "server.replica.urls=" + REPLICA_URL,
+                "server.replica.username=sa", "server.replica.password=");
+        fixture = new SessionFixture(node);
+        primary = node.getBean(JdbcTemplate.class);
+        replica = new JdbcTemplate(node.getBean(ReplicaRoutingDataSource.class).getReplicas().getFirst());
+    }
+
+    @AfterAll
+    static void stopNode() {
+        node.close();
+    }
+
+    @Test
+    @DisplayName("Should read from the replica only once it reached the last write of the device")
+    void shouldReadYourWrites() throws Exception {
+        final var session = fixture.session("secret");
+        final var device = session.device();
+
+        persist(session, getData(session).timestampLastUpdate(), "first");
+
+        // replica without the device
+        assertEquals(List.of("first"), titles(getData(session)));
+
+        // replica caught up, its copy is told apart by the title
+        replicate("users", "id", device.getUser().getId());
+        replicate("devices", "id", device.getId());
+        replicate("groups", "user_id", device.getUser().getId());
+        replica.update("UPDATE groups SET title = 'replica' WHERE user_id = ?", device.getUser().getId());
+        final var fromReplica = getData(session);
+        assertEquals(List.of("replica"), titles(fromReplica));
+
+        // replica lagging behind a persist
+        Thread.sleep(1_100);
+        persist(session, fromReplica.timestampLastUpdate(), "second");
+        assertEquals(List.of("first", "second"), titles(getData(session)));
+    }
+
+    @Test
+    @DisplayName("Should read from the primary while the replica misses a write of another device of the user")
+    void shouldReadWritesOfOtherDevices() throws Exception {
+        final var first = fixture.session("secret");
+        final var second = fixture.session("secret", first.user());
+        final var userId = first.user().getId();
+
+        persist(first, getData(first).timestampLastUpdate(), "first");
+        final var login = getData(second).timestampLastUpdate();
+
+        replicate("users", "id", userId);
+        replicate("devices", "user_id", userId);
+        replicate("groups", "user_id", userId);
+        replica.update("UPDATE groups SET title = 'replica' WHERE user_id = ?", userId);
+        assertEquals(List.of("replica"), titles(getData(first)));
+
+        // the device reading wrote nothing since, the replica still lacks the row of the other one
+        persist(second, login, "second");
+        assertEquals(List.of("first", "second"), titles(getData(first)));
+    }
+
+    private static Container getData(final Session session) throws Exception {
+        final var response = fixture.getData(session, 0);
+        assertEquals(200, response.getStatusCode().value());
+        return response.getBody();
+    }
+
+    private static Container persist(final Session session, final long timestamp, final String title) throws Exception {
+        final var body = "{\"groups\":[{\"id\":1,\"serverId\":0,\"title\":\"" + title
+                + "\",\"icon\":\"\",\"deleted\":false}],\"groupFields\":[],\"fields\":[]}";
+        final var response = fixture.persist(session, timestamp, body);
+        assertEquals(200, response.getStatusCode().value());
+        return response.getBody();
+    }
+
+    private static List<String> titles(final Container container) {
+        return container.groups().stream().map(Group::getTitle).sorted().toList();
+    }
+
+    private static void replicate(final String table, final String column, final Object value) {
+        for (final var row : primary.queryForList("SELECT * FROM " + table + " WHERE " + column + " = ?", value)) {
+            replica.update("DELETE FROM " + table + " WHERE id = ?", row.get("id"));
+            replica.update("INSERT INTO " + table + " (" + String.join(", ", row.keySet()) + ") VALUES ("
+                    + String.join(", ", Collections.nCopies(row.size(), "?")) + ")", row.values().toArray());
+        }
+    }
+}
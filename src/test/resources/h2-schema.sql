@@ -0,0 +1,13 @@
+-- H2 (MODE=MariaDB) equivalent of scripts/pocket5.sql, used by EmbeddedH2
+CREATE TABLE IF NOT EXISTS "users" ("id" bigint generated by default as identity primary key, "email" varchar(256) not null unique, "name" varchar(256) not null, "passwd" varchar(256) not null, "status" tinyint not null, "timestamp_creation" bigint, "sync_version" bigint default 0 not null);
+CREATE TABLE IF NOT EXISTS "devices" ("id" bigint generated by default as identity primary key, "uuid" varchar(256) not null unique, "version" varchar(255), "status" tinyint not null, "user_id" bigint references "users"("id"), "note" clob, "address" varchar(255), "public_key" clob not null, "private_key" clob not null, "timestamp_last_login" bigint default 0 not null, "timestamp_last_update" bigint default 0 not null, "timestamp_creation" bigint default 0 not null);
+CREATE TABLE IF NOT EXISTS "groups" ("id" bigint generated by default as identity primary key, "deleted" boolean not null, "version" bigint default 0 not null, "icon" varchar(256) not null, "note" varchar(255), "title" varchar(256) not null, "group_id" bigint references "groups"("id"), "user_id" bigint references "users"("id"), "timestamp_last_update" bigint, "content_hash" bigint, "timestamp_creation" bigint);
+CREATE TABLE IF NOT EXISTS "group_fields" ("id" bigint generated by default as identity primary key, "deleted" boolean not null, "version" bigint default 0 not null, "is_hidden" boolean not null, "title" varchar(256) not null, "group_id" bigint references "groups"("id"), "user_id" bigint references "users"("id"), "timestamp_last_update" bigint, "content_hash" bigint, "timestamp_creation" bigint);
+CREATE TABLE IF NOT EXISTS "fields" ("id" bigint generated by default as identity primary key, "timestamp_last_update" bigint, "deleted" boolean not null, "version" bigint default 0 not null, "group_field_id" bigint not null, "is_hidden" boolean not null, "title" varchar(256) not null, "value" varchar(2048) not null, "group_id" bigint references "groups"("id"), "user_id" bigint references "users"("id"), "content_hash" bigint, "timestamp_creation" bigint);
+CREATE TABLE IF NOT EXISTS "properties" ("id" bigint generated by default as identity primary key, "_key" varchar(128) not null, "type" tinyint not null, "value" varchar(256), "user_id" bigint references "users"("id"));
+CREATE TABLE IF NOT EXISTS "sessions" ("uuid" varchar(256) primary key, "device_id" bigint not null, "secret" varchar(256) not null, "timestamp_last_update" bigint not null);
+CREATE TABLE IF NOT EXISTS "invalidations" ("id" bigint auto_increment primary key, "origin" varchar(36) not null, "topic" varchar(16) not null, "item_key" varchar(256) not null, "timestamp_creation" bigint not null);
+CREATE INDEX IF NOT EXISTS "groups_user_timestamp" ON "groups" ("user_id", "timestamp_last_update", "id");
+CREATE INDEX IF NOT EXISTS "group_fields_user_timestamp" ON "group_fields" ("user_id", "timestamp_last_update", "id");
+CREATE INDEX IF NOT EXISTS "fields_user_timestamp" ON "fields" ("user_id", "timestamp_last_update", "id");
+CREATE INDEX IF NOT EXISTS "groups_user_parent" ON "groups" ("user_id", "group_id");